@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.admin.management.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.felix.karaf.admin.AdminService;
+import org.apache.felix.karaf.admin.Instance;
+import org.apache.felix.karaf.management.SnapshotProvider;
+
+/**
+ * Snapshot section listing the state of each instance, keyed by instance name.
+ */
+public class InstancesSnapshotProvider implements SnapshotProvider {
+
+    private AdminService adminService;
+
+    public AdminService getAdminService() {
+        return adminService;
+    }
+
+    public void setAdminService(AdminService adminService) {
+        this.adminService = adminService;
+    }
+
+    public String getName() {
+        return "instances";
+    }
+
+    public boolean isMetric() {
+        return false;
+    }
+
+    public Map<String, String> getEntries() {
+        Map<String, String> entries = new HashMap<String, String>();
+        for (Instance instance : adminService.getInstances()) {
+            String state;
+            try {
+                state = instance.getState();
+            } catch (Exception e) {
+                state = "Error";
+            }
+            entries.put(instance.getName(), state);
+        }
+        return entries;
+    }
+
+}
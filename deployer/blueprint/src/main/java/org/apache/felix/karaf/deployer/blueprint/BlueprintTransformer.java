@@ -17,14 +17,16 @@
  */
 package org.apache.felix.karaf.deployer.blueprint;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.StringWriter;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
@@ -39,7 +41,7 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
+import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
@@ -51,22 +53,57 @@ import org.w3c.dom.NodeList;
 
 import org.osgi.framework.Constants;
 
+/**
+ * Transforms a blueprint xml file into a bundle.
+ *
+ * All methods are thread safe: the xsl stylesheet is compiled once and a new
+ * transformer is created from the compiled templates for each transformation.
+ */
 public class BlueprintTransformer {
 
-    static Transformer transformer;
+    static Templates templates;
     static DocumentBuilderFactory dbf;
     static TransformerFactory tf;
 
-
     public static void transform(URL url, OutputStream os) throws Exception {
-        // Build dom document
-        Document doc = parse(url);
-        // Heuristicly retrieve name and version
+        transform(getName(url), read(url), os);
+    }
+
+    /**
+     * Name of the blueprint file from which the symbolic name and version of the bundle are computed.
+     */
+    public static String getName(URL url) {
         String name = url.getPath();
         int idx = name.lastIndexOf('/');
         if (idx >= 0) {
             name = name.substring(idx + 1);
         }
+        return name;
+    }
+
+    /**
+     * Compute a key identifying the bundle generated for the given blueprint file.
+     *
+     * The key is a hash of the name and content of the file, which are the only
+     * inputs of the transformation.
+     */
+    public static String getKey(String name, byte[] data) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        md.update(name.getBytes("UTF-8"));
+        md.update((byte) 0);
+        md.update(data);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0x0f, 16));
+            sb.append(Character.forDigit(b & 0x0f, 16));
+        }
+        return sb.toString();
+    }
+
+    public static void transform(String name, byte[] data, OutputStream os) throws Exception {
+        // Build dom document
+        Document doc = parse(data);
+        // Heuristicly retrieve name and version
         String[] str = extractNameVersionType(name);
         // Create manifest
         Manifest m = new Manifest();
@@ -81,21 +118,25 @@ public class BlueprintTransformer {
         m.getMainAttributes().putValue(Constants.DYNAMICIMPORT_PACKAGE, "*");
         // Extract manifest entries from the DOM
         NodeList l = doc.getElementsByTagName("manifest");
+        // the node list is live, so copy it before removing the elements
+        List<Element> manifests = new ArrayList<Element>();
         if (l != null) {
             for (int i = 0; i < l.getLength(); i++) {
-                Element e = (Element) l.item(i);
-                String text = e.getTextContent();
-                Properties props = new Properties();
-                props.load(new ByteArrayInputStream(text.trim().getBytes()));
-                Enumeration en = props.propertyNames();
-                while (en.hasMoreElements()) {
-                    String k = (String) en.nextElement();
-                    String v = props.getProperty(k);
-                    m.getMainAttributes().putValue(k, v);
-                }
-                e.getParentNode().removeChild(e);
+                manifests.add((Element) l.item(i));
             }
         }
+        for (Element e : manifests) {
+            String text = e.getTextContent();
+            Properties props = new Properties();
+            props.load(new ByteArrayInputStream(text.trim().getBytes()));
+            Enumeration en = props.propertyNames();
+            while (en.hasMoreElements()) {
+                String k = (String) en.nextElement();
+                String v = props.getProperty(k);
+                m.getMainAttributes().putValue(k, v);
+            }
+            e.getParentNode().removeChild(e);
+        }
 
         JarOutputStream out = new JarOutputStream(os);
         ZipEntry e = new ZipEntry(JarFile.MANIFEST_NAME);
@@ -109,11 +150,13 @@ public class BlueprintTransformer {
         out.closeEntry();
         e = new ZipEntry("OSGI-INF/blueprint/" + name);
         out.putNextEntry(e);
-        // Copy the new DOM
-        if (tf == null) {
-            tf = TransformerFactory.newInstance();
+        if (manifests.isEmpty()) {
+            // The document has not been modified, copy the original file
+            out.write(data);
+        } else {
+            // Copy the new DOM
+            getTransformerFactory().newTransformer().transform(new DOMSource(doc), new StreamResult(out));
         }
-        tf.newTransformer().transform(new DOMSource(doc), new StreamResult(out));
         out.closeEntry();
         out.close();
     }
@@ -180,46 +223,41 @@ public class BlueprintTransformer {
     }
 
     public static Set<String> analyze(Source source) throws Exception {
-        if (transformer == null) {
-            if (tf == null) {
-                tf = TransformerFactory.newInstance();
-            }
-            Source s = new StreamSource(BlueprintTransformer.class.getResourceAsStream("extract.xsl"));
-            transformer = tf.newTransformer(s);
-        }
-
         Set<String> refers = new TreeSet<String>();
 
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        Result r = new StreamResult(bout);
-        transformer.transform(source, r);
-
-        ByteArrayInputStream bin = new ByteArrayInputStream(bout.toByteArray());
-        bout.close();
-
-        BufferedReader br = new BufferedReader(new InputStreamReader(bin));
-
-        String line = br.readLine();
-        while (line != null) {
-            line = line.trim();
-            if (line.length() > 0) {
-                String parts[] = line.split("\\s*,\\s*");
-                for (int i = 0; i < parts.length; i++) {
-                    int n = parts[i].lastIndexOf('.');
-                    if (n > 0) {
-                        String pkg = parts[i].substring(0, n);
-                        if (!pkg.startsWith("java.")) {
-                            refers.add(pkg);
-                        }
-                    }
+        StringWriter w = new StringWriter();
+        Result r = new StreamResult(w);
+        getTemplates().newTransformer().transform(source, r);
+
+        // The stylesheet outputs class names, or comma separated lists of class names
+        String[] parts = w.toString().split("[\\s,]+");
+        for (int i = 0; i < parts.length; i++) {
+            int n = parts[i].lastIndexOf('.');
+            if (n > 0) {
+                String pkg = parts[i].substring(0, n);
+                if (!pkg.startsWith("java.")) {
+                    refers.add(pkg);
                 }
             }
-            line = br.readLine();
         }
-        br.close();
         return refers;
     }
 
+    protected static synchronized TransformerFactory getTransformerFactory() {
+        if (tf == null) {
+            tf = TransformerFactory.newInstance();
+        }
+        return tf;
+    }
+
+    protected static synchronized Templates getTemplates() throws Exception {
+        if (templates == null) {
+            Source s = new StreamSource(BlueprintTransformer.class.getResourceAsStream("extract.xsl"));
+            templates = getTransformerFactory().newTemplates(s);
+        }
+        return templates;
+    }
+
     protected static String getImportPackages(Set<String> packages) {
         StringBuilder sb = new StringBuilder();
         for (String pkg : packages) {
@@ -232,12 +270,30 @@ public class BlueprintTransformer {
     }
 
     protected static Document parse(URL url) throws Exception {
+        return newDocumentBuilder().parse(url.toString());
+    }
+
+    protected static Document parse(byte[] data) throws Exception {
+        return newDocumentBuilder().parse(new ByteArrayInputStream(data));
+    }
+
+    protected static synchronized DocumentBuilder newDocumentBuilder() throws Exception {
         if (dbf == null) {
             dbf = DocumentBuilderFactory.newInstance();
             dbf.setNamespaceAware(true);
         }
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        return db.parse(url.toString());
+        return dbf.newDocumentBuilder();
+    }
+
+    protected static byte[] read(URL url) throws Exception {
+        InputStream is = url.openStream();
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            copyInputStream(is, os);
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
     }
 
     protected static void copyInputStream(InputStream in, OutputStream out) throws Exception {
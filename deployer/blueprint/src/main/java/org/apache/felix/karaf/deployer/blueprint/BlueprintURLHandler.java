@@ -27,6 +27,8 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,8 +44,20 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
 
 	private static String SYNTAX = "blueprint: bp-xml-uri";
 
+	private static final int MAX_CACHED_BUNDLES = 256;
+
 	private URL blueprintXmlURL;
 
+	private File cacheDirectory;
+
+    /**
+     * Directory where generated bundles are kept, so that unchanged blueprint files
+     * are not transformed again, or <code>null</code> to disable the cache.
+     */
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
     /**
      * Open the connection for the given URL.
      *
@@ -56,10 +70,11 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
 		if (url.getPath() == null || url.getPath().trim().length() == 0) {
 			throw new MalformedURLException ("Path can not be null or empty. Syntax: " + SYNTAX );
 		}
-		blueprintXmlURL = new URL(url.getPath());
+		URL blueprintXmlURL = new URL(url.getPath());
+		this.blueprintXmlURL = blueprintXmlURL;
 
 		logger.debug("Blueprint xml URL is: [" + blueprintXmlURL + "]");
-		return new Connection(url);
+		return new Connection(url, blueprintXmlURL);
 	}
 	
 	public URL getBlueprintXmlURL() {
@@ -68,8 +83,11 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
 
     public class Connection extends URLConnection {
 
-        public Connection(URL url) {
+        private final URL blueprintXmlURL;
+
+        public Connection(URL url, URL blueprintXmlURL) {
             super(url);
+            this.blueprintXmlURL = blueprintXmlURL;
         }
 
         @Override
@@ -79,10 +97,7 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
         @Override
         public InputStream getInputStream() throws IOException {
             try {
-                ByteArrayOutputStream os = new ByteArrayOutputStream();
-                BlueprintTransformer.transform(blueprintXmlURL, os);
-                os.close();
-                return new ByteArrayInputStream(os.toByteArray());
+                return getBundle(blueprintXmlURL);
             } catch (Exception e) {
                 logger.error("Error opening blueprint xml url", e);
                 throw (IOException) new IOException("Error opening blueprint xml url").initCause(e);
@@ -90,4 +105,70 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
         }
     }
 
+    /**
+     * Retrieve the bundle for the given blueprint file, from the cache if the file has
+     * already been transformed.
+     */
+    InputStream getBundle(URL blueprintXmlURL) throws Exception {
+        String name = BlueprintTransformer.getName(blueprintXmlURL);
+        byte[] data = BlueprintTransformer.read(blueprintXmlURL);
+        File cached = null;
+        if (cacheDirectory != null) {
+            cached = new File(cacheDirectory, BlueprintTransformer.getKey(name, data) + ".jar");
+            if (cached.isFile()) {
+                logger.debug("Using cached bundle " + cached + " for " + blueprintXmlURL);
+                cached.setLastModified(System.currentTimeMillis());
+                return new FileInputStream(cached);
+            }
+        }
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BlueprintTransformer.transform(name, data, os);
+        os.close();
+        byte[] bundle = os.toByteArray();
+        if (cached != null) {
+            try {
+                store(cached, bundle);
+            } catch (IOException e) {
+                logger.warn("Unable to cache generated bundle " + cached, e);
+            }
+        }
+        return new ByteArrayInputStream(bundle);
+    }
+
+    private void store(File file, byte[] bundle) throws IOException {
+        File dir = file.getParentFile();
+        dir.mkdirs();
+        // write to a temporary file first so that a partially written bundle is never used
+        File tmp = File.createTempFile("bundle", ".tmp", dir);
+        try {
+            FileOutputStream fos = new FileOutputStream(tmp);
+            try {
+                fos.write(bundle);
+            } finally {
+                fos.close();
+            }
+            if (!tmp.renameTo(file) && !file.isFile()) {
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+        } finally {
+            tmp.delete();
+        }
+        // evict the least recently used bundles
+        File[] files = dir.listFiles();
+        if (files != null && files.length > MAX_CACHED_BUNDLES) {
+            Arrays.sort(files, new Comparator<File>() {
+                public int compare(File f1, File f2) {
+                    long l1 = f1.lastModified();
+                    long l2 = f2.lastModified();
+                    return l1 < l2 ? -1 : l1 > l2 ? 1 : 0;
+                }
+            });
+            for (int i = 0; i < files.length - MAX_CACHED_BUNDLES; i++) {
+                if (!files[i].equals(file)) {
+                    files[i].delete();
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,125 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.deployer.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipException;
+
+/**
+ * What deployers need to know about an archive: whether it is a web application,
+ * whether it is already an OSGi bundle, and its main manifest attributes.
+ *
+ * Deployers are asked about every file of the deploy folder at each poll.  The archive
+ * is opened once, closed right away, and the result is cached until the size or the last
+ * modification date of the file changes, so unchanged files cost nothing.
+ */
+public final class ArchiveInfo {
+
+    private static final int MAX_CACHE_SIZE = 1024;
+
+    private static final FileCache<ArchiveInfo> CACHE = new FileCache<ArchiveInfo>(MAX_CACHE_SIZE);
+
+    private static final Attributes EMPTY = new Attributes();
+
+    private final boolean archive;
+    private final boolean war;
+    private final Attributes mainAttributes;
+
+    ArchiveInfo(boolean archive, boolean war, Attributes mainAttributes) {
+        this.archive = archive;
+        this.war = war;
+        this.mainAttributes = mainAttributes != null ? mainAttributes : EMPTY;
+    }
+
+    /**
+     * Is the file a zip archive.
+     */
+    public boolean isArchive() {
+        return archive;
+    }
+
+    /**
+     * Is the file a web application, i.e. does it contain a <code>WEB-INF/web.xml</code> entry.
+     */
+    public boolean isWar() {
+        return war;
+    }
+
+    /**
+     * Is the file an OSGi bundle, i.e. does its manifest define a symbolic name and a version.
+     */
+    public boolean isBundle() {
+        return getMainAttribute("Bundle-SymbolicName") != null
+                && getMainAttribute("Bundle-Version") != null;
+    }
+
+    /**
+     * Retrieve a main attribute of the manifest.
+     *
+     * @param name the attribute name, case insensitive
+     * @return the attribute value or <code>null</code> if it is not defined or if the archive has no manifest
+     */
+    public String getMainAttribute(String name) {
+        return mainAttributes.getValue(name);
+    }
+
+    /**
+     * Retrieve the informations about the given file.
+     *
+     * @param file the file to inspect
+     * @return the informations, with {@link #isArchive()} returning <code>false</code> if the file is not a zip archive
+     * @throws IOException if the file can not be read
+     */
+    public static ArchiveInfo get(File file) throws IOException {
+        ArchiveInfo info = CACHE.get(file);
+        if (info != null) {
+            return info;
+        }
+        long length = file.length();
+        long lastModified = file.lastModified();
+        info = inspect(file);
+        CACHE.put(file, length, lastModified, info);
+        return info;
+    }
+
+    static ArchiveInfo inspect(File file) throws IOException {
+        JarFile jar;
+        try {
+            jar = new JarFile(file, false);
+        } catch (ZipException e) {
+            return new ArchiveInfo(false, false, null);
+        }
+        try {
+            boolean war = jar.getEntry("WEB-INF/web.xml") != null;
+            Manifest manifest = jar.getManifest();
+            Attributes attributes = manifest != null ? new Attributes(manifest.getMainAttributes()) : null;
+            return new ArchiveInfo(true, war, attributes);
+        } finally {
+            jar.close();
+        }
+    }
+
+    static void clearCache() {
+        CACHE.clear();
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.deployer.util;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of informations computed from files, which are discarded when the size or the
+ * last modification date of a file changes.  Only the most recently used entries are kept.
+ */
+class FileCache<T> {
+
+    private final Map<String, Entry<T>> entries;
+
+    FileCache(final int maxSize) {
+        entries = new LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Retrieve the value cached for the given file.
+     *
+     * @return the value or <code>null</code> if none has been cached or if the file has changed
+     */
+    synchronized T get(File file) {
+        Entry<T> entry = entries.get(file.getAbsolutePath());
+        if (entry != null && entry.length == file.length() && entry.lastModified == file.lastModified()) {
+            return entry.value;
+        }
+        return null;
+    }
+
+    /**
+     * Cache a value computed from the given file.
+     *
+     * @param length the length of the file when the value was computed
+     * @param lastModified the modification date of the file when the value was computed
+     */
+    synchronized void put(File file, long length, long lastModified, T value) {
+        entries.put(file.getAbsolutePath(), new Entry<T>(length, lastModified, value));
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    private static class Entry<T> {
+
+        private final long length;
+        private final long lastModified;
+        private final T value;
+
+        Entry(long length, long lastModified, T value) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+
+    }
+
+}
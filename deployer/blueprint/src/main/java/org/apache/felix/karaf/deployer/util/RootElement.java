@@ -0,0 +1,166 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.deployer.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The name and namespace of the root element of an xml file.
+ *
+ * Deployers are asked about every xml file dropped in the deploy folder but only need
+ * the root element to know if they can handle it.  The file is parsed up to the root
+ * element only, and the result is cached until the size or the last modification date
+ * of the file changes, so that all deployers share a single parse.
+ */
+public final class RootElement {
+
+    private static final int MAX_CACHE_SIZE = 1024;
+
+    private static final SAXParserFactory FACTORY;
+
+    static {
+        FACTORY = SAXParserFactory.newInstance();
+        FACTORY.setNamespaceAware(true);
+    }
+
+    private static final FileCache<RootElement> CACHE = new FileCache<RootElement>(MAX_CACHE_SIZE);
+
+    private final String localName;
+    private final String namespaceURI;
+
+    RootElement(String localName, String namespaceURI) {
+        this.localName = localName;
+        this.namespaceURI = namespaceURI != null ? namespaceURI : "";
+    }
+
+    public String getLocalName() {
+        return localName;
+    }
+
+    /**
+     * The namespace of the root element, or an empty string if it has none.
+     */
+    public String getNamespaceURI() {
+        return namespaceURI;
+    }
+
+    /**
+     * Check the name and namespace of this element.
+     *
+     * @param localName the expected local name
+     * @param namespaceURI the expected namespace, <code>null</code> or an empty string for no namespace
+     */
+    public boolean is(String localName, String namespaceURI) {
+        return this.localName.equals(localName)
+                && this.namespaceURI.equals(namespaceURI != null ? namespaceURI : "");
+    }
+
+    public String toString() {
+        return namespaceURI.length() > 0 ? "{" + namespaceURI + "}" + localName : localName;
+    }
+
+    /**
+     * Retrieve the root element of the given xml file.
+     *
+     * @param file the xml file
+     * @return the root element
+     * @throws IOException if the file can not be read or is not well formed up to its root element
+     */
+    public static RootElement get(File file) throws IOException {
+        RootElement element = CACHE.get(file);
+        if (element != null) {
+            return element;
+        }
+        long length = file.length();
+        long lastModified = file.lastModified();
+        InputStream is = new BufferedInputStream(new FileInputStream(file));
+        try {
+            element = parse(is, file.toURI().toString());
+        } finally {
+            is.close();
+        }
+        CACHE.put(file, length, lastModified, element);
+        return element;
+    }
+
+    /**
+     * Parse the given stream up to its root element.
+     *
+     * @param is the xml stream, which is not closed
+     * @param systemId the location of the stream used to resolve relative uris, may be <code>null</code>
+     * @return the root element
+     * @throws IOException if the stream can not be read or is not well formed up to its root element
+     */
+    public static RootElement parse(InputStream is, String systemId) throws IOException {
+        RootElementHandler handler = new RootElementHandler();
+        InputSource source = new InputSource(is);
+        source.setSystemId(systemId);
+        try {
+            SAXParser parser;
+            synchronized (FACTORY) {
+                parser = FACTORY.newSAXParser();
+            }
+            parser.parse(source, handler);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            if (handler.element == null) {
+                throw (IOException) new IOException("Unable to parse xml: " + e.getMessage()).initCause(e);
+            }
+        }
+        if (handler.element == null) {
+            throw new IOException("No root element found");
+        }
+        return handler.element;
+    }
+
+    static void clearCache() {
+        CACHE.clear();
+    }
+
+    private static class RootElementHandler extends DefaultHandler {
+
+        private RootElement element;
+
+        public InputSource resolveEntity(String publicId, String systemId) {
+            // external dtds are not needed to read the root element, do not download them
+            return new InputSource(new StringReader(""));
+        }
+
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            element = new RootElement(localName, uri);
+            // abort the parsing, the rest of the document is not needed
+            throw new SAXException("Root element found");
+        }
+
+    }
+
+}
@@ -17,14 +17,22 @@
  */
 package org.apache.felix.karaf.deployer.blueprint;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.jar.Attributes;
 import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
 
 import javax.xml.transform.dom.DOMSource;
 
@@ -57,6 +65,122 @@ public class BlueprintDeploymentListenerTest extends TestCase {
         }
     }
 
+    public void testManifestElements() throws Exception {
+        String xml = "<blueprint xmlns='http://www.osgi.org/xmlns/blueprint/v1.0.0'>"
+                + "<manifest xmlns='http://karaf.apache.org/xmlns/deployer/blueprint/v1.0.0'>Foo=bar</manifest>"
+                + "<manifest xmlns='http://karaf.apache.org/xmlns/deployer/blueprint/v1.0.0'>Bar=baz</manifest>"
+                + "<bean class='org.acme.Foo'/>"
+                + "</blueprint>";
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BlueprintTransformer.transform("test-1.0.xml", xml.getBytes("UTF-8"), os);
+        JarInputStream jar = new JarInputStream(new ByteArrayInputStream(os.toByteArray()));
+        Attributes attributes = jar.getManifest().getMainAttributes();
+        assertEquals("test", attributes.getValue("Bundle-SymbolicName"));
+        assertEquals("1.0", attributes.getValue("Bundle-Version"));
+        assertEquals("org.acme", attributes.getValue("Import-Package"));
+        assertEquals("bar", attributes.getValue("Foo"));
+        assertEquals("baz", attributes.getValue("Bar"));
+        String content = readEntry(jar, "OSGI-INF/blueprint/test-1.0.xml");
+        assertTrue(content.indexOf("manifest") < 0);
+        assertTrue(content.indexOf("org.acme.Foo") > 0);
+    }
+
+    public void testUnmodifiedContentIsCopied() throws Exception {
+        byte[] xml = "<blueprint xmlns='http://www.osgi.org/xmlns/blueprint/v1.0.0'><bean class='org.acme.Foo'/></blueprint>".getBytes("UTF-8");
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BlueprintTransformer.transform("test.xml", xml, os);
+        JarInputStream jar = new JarInputStream(new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(new String(xml, "UTF-8"), readEntry(jar, "OSGI-INF/blueprint/test.xml"));
+    }
+
+    public void testConcurrentTransforms() throws Exception {
+        final URL url = getClass().getClassLoader().getResource("test.xml");
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 20; j++) {
+                            ByteArrayOutputStream os = new ByteArrayOutputStream();
+                            BlueprintTransformer.transform(url, os);
+                            JarInputStream jar = new JarInputStream(new ByteArrayInputStream(os.toByteArray()));
+                            assertEquals("org.apache.aries.blueprint.sample",
+                                         jar.getManifest().getMainAttributes().getValue("Import-Package"));
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    public void testCache() throws Exception {
+        File dir = File.createTempFile("bundles", "");
+        dir.delete();
+        File xml = new File(dir, "test.xml");
+        try {
+            dir.mkdirs();
+            write(xml, "<blueprint xmlns='http://www.osgi.org/xmlns/blueprint/v1.0.0'><bean class='org.acme.Foo'/></blueprint>");
+            File cache = new File(dir, "cache");
+            BlueprintURLHandler handler = new BlueprintURLHandler();
+            handler.setCacheDirectory(cache);
+
+            handler.getBundle(xml.toURL()).close();
+            File[] files = cache.listFiles();
+            assertEquals(1, files.length);
+            // a cached bundle is used as is, even if its content changed
+            write(files[0], "cached");
+            assertEquals("cached", read(handler.getBundle(xml.toURL())));
+
+            // a modified file is transformed again
+            write(xml, "<blueprint xmlns='http://www.osgi.org/xmlns/blueprint/v1.0.0'><bean class='org.acme.Bar'/></blueprint>");
+            JarInputStream jar = new JarInputStream(handler.getBundle(xml.toURL()));
+            assertEquals("org.acme", jar.getManifest().getMainAttributes().getValue("Import-Package"));
+            jar.close();
+            assertEquals(2, cache.listFiles().length);
+        } finally {
+            File[] files = new File(dir, "cache").listFiles();
+            for (int i = 0; files != null && i < files.length; i++) {
+                files[i].delete();
+            }
+            new File(dir, "cache").delete();
+            xml.delete();
+            dir.delete();
+        }
+    }
+
+    private String readEntry(JarInputStream jar, String name) throws Exception {
+        for (ZipEntry e = jar.getNextEntry(); e != null; e = jar.getNextEntry()) {
+            if (name.equals(e.getName())) {
+                return read(jar);
+            }
+        }
+        fail("Entry not found: " + name);
+        return null;
+    }
+
+    private String read(InputStream is) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BlueprintTransformer.copyInputStream(is, os);
+        return new String(os.toByteArray(), "UTF-8");
+    }
+
+    private void write(File f, String content) throws Exception {
+        OutputStream os = new FileOutputStream(f);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
     public void testVersions() {
         assertVersion("org.apache.servicemix.bundles.ant-1.7.0-1.0-m3-SNAPSHOT.jar",
                       "org.apache.servicemix.bundles.ant-1.7.0", "1.0.0.m3-SNAPSHOT", "jar");
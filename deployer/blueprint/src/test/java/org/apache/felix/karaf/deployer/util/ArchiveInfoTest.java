@@ -0,0 +1,97 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.deployer.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+public class ArchiveInfoTest extends TestCase {
+
+    private File file;
+
+    protected void setUp() throws Exception {
+        file = File.createTempFile("archive", ".jar");
+    }
+
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testWar() throws Exception {
+        writeJar(null, "WEB-INF/web.xml");
+        ArchiveInfo info = ArchiveInfo.get(file);
+        assertTrue(info.isArchive());
+        assertTrue(info.isWar());
+        assertFalse(info.isBundle());
+        assertNull(info.getMainAttribute("Bundle-SymbolicName"));
+    }
+
+    public void testBundle() throws Exception {
+        Manifest m = new Manifest();
+        m.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        m.getMainAttributes().putValue("Bundle-SymbolicName", "foo");
+        m.getMainAttributes().putValue("Bundle-Version", "1.0.0");
+        writeJar(m, "WEB-INF/web.xml");
+        ArchiveInfo info = ArchiveInfo.get(file);
+        assertTrue(info.isWar());
+        assertTrue(info.isBundle());
+        assertEquals("foo", info.getMainAttribute("bundle-symbolicname"));
+    }
+
+    public void testNotAnArchive() throws Exception {
+        OutputStream os = new FileOutputStream(file);
+        os.write("<features/>".getBytes());
+        os.close();
+        ArchiveInfo info = ArchiveInfo.get(file);
+        assertFalse(info.isArchive());
+        assertFalse(info.isWar());
+        assertFalse(info.isBundle());
+    }
+
+    public void testCache() throws Exception {
+        writeJar(null, "foo.txt");
+        ArchiveInfo i1 = ArchiveInfo.get(file);
+        assertFalse(i1.isWar());
+        assertSame(i1, ArchiveInfo.get(file));
+
+        writeJar(null, "WEB-INF/web.xml", "WEB-INF/classes/Foo.class");
+        file.setLastModified(file.lastModified() + 2000);
+        ArchiveInfo i2 = ArchiveInfo.get(file);
+        assertNotSame(i1, i2);
+        assertTrue(i2.isWar());
+    }
+
+    private void writeJar(Manifest manifest, String... entries) throws Exception {
+        OutputStream os = new FileOutputStream(file);
+        JarOutputStream jos = manifest != null ? new JarOutputStream(os, manifest) : new JarOutputStream(os);
+        for (String entry : entries) {
+            jos.putNextEntry(new ZipEntry(entry));
+            jos.write(entry.getBytes());
+            jos.closeEntry();
+        }
+        jos.close();
+    }
+
+}
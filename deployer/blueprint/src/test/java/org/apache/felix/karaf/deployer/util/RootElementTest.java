@@ -0,0 +1,106 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.deployer.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+public class RootElementTest extends TestCase {
+
+    public void testBlueprint() throws Exception {
+        File f = new File(getClass().getClassLoader().getResource("test.xml").toURI());
+        RootElement root = RootElement.get(f);
+        assertTrue(root.is("blueprint", "http://www.osgi.org/xmlns/blueprint/v1.0.0"));
+        assertFalse(root.is("blueprint", null));
+        assertFalse(root.is("beans", "http://www.osgi.org/xmlns/blueprint/v1.0.0"));
+    }
+
+    public void testNoNamespace() throws Exception {
+        RootElement root = parse("<?xml version='1.0'?>\n<!-- comment -->\n<features><feature name='foo'/></features>");
+        assertEquals("features", root.getLocalName());
+        assertEquals("", root.getNamespaceURI());
+        assertTrue(root.is("features", null));
+        assertTrue(root.is("features", ""));
+    }
+
+    public void testPrefixedNamespace() throws Exception {
+        RootElement root = parse("<bp:blueprint xmlns:bp='http://www.osgi.org/xmlns/blueprint/v1.0.0'/>");
+        assertTrue(root.is("blueprint", "http://www.osgi.org/xmlns/blueprint/v1.0.0"));
+    }
+
+    public void testOnlyRootElementIsParsed() throws Exception {
+        RootElement root = parse("<beans xmlns='http://www.springframework.org/schema/beans'><bean></beans>");
+        assertTrue(root.is("beans", "http://www.springframework.org/schema/beans"));
+    }
+
+    public void testExternalDtdIsNotLoaded() throws Exception {
+        RootElement root = parse("<!DOCTYPE beans PUBLIC '-//SPRING//DTD BEAN//EN' 'http://localhost:1/spring-beans.dtd'>\n<beans/>");
+        assertTrue(root.is("beans", null));
+    }
+
+    public void testInvalid() throws Exception {
+        try {
+            parse("not xml");
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            parse("");
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testCache() throws Exception {
+        File f = File.createTempFile("root", ".xml");
+        try {
+            write(f, "<features/>");
+            RootElement r1 = RootElement.get(f);
+            assertSame(r1, RootElement.get(f));
+
+            write(f, "<blueprint xmlns='http://www.osgi.org/xmlns/blueprint/v1.0.0'/>");
+            f.setLastModified(f.lastModified() + 2000);
+            RootElement r2 = RootElement.get(f);
+            assertNotSame(r1, r2);
+            assertTrue(r2.is("blueprint", "http://www.osgi.org/xmlns/blueprint/v1.0.0"));
+        } finally {
+            f.delete();
+        }
+    }
+
+    private RootElement parse(String xml) throws IOException {
+        return RootElement.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")), null);
+    }
+
+    private void write(File f, String content) throws IOException {
+        OutputStream os = new FileOutputStream(f);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+}
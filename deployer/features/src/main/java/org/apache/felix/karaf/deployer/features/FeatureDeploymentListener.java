@@ -21,18 +21,19 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.URISyntaxException;
+import java.net.URI;
 import java.net.URL;
 import java.util.*;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.felix.fileinstall.ArtifactUrlTransformer;
+import org.apache.felix.karaf.deployer.util.RootElement;
 import org.apache.felix.karaf.features.Feature;
 import org.apache.felix.karaf.features.FeaturesService;
 import org.apache.felix.karaf.features.Repository;
@@ -40,12 +41,14 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleListener;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 /**
  * A deployment listener able to hot deploy a feature descriptor
+ *
+ * Bundle events are collected for a short delay and processed in batches: all the
+ * features deployed by a batch of bundles are installed at once.  The feature
+ * repositories deployed by each bundle are kept in memory and saved in the bundle
+ * data area once per batch, so that they can be removed when the bundle is uninstalled.
  */
 public class FeatureDeploymentListener implements ArtifactUrlTransformer, BundleListener {
 
@@ -53,9 +56,19 @@ public class FeatureDeploymentListener implements ArtifactUrlTransformer, Bundle
 
     private static final Log LOGGER = LogFactory.getLog(FeatureDeploymentListener.class);
 
-    private DocumentBuilderFactory dbf;
+    private static final String INDEX_FILE = "FeatureDeploymentListener.cfg";
+
     private FeaturesService featuresService;
     private BundleContext bundleContext;
+    private long deployDelay = 500;
+
+    // feature repositories deployed by each bundle, keyed by symbolic name and version
+    private final Map<String, List<URI>> index = new HashMap<String, List<URI>>();
+    private boolean indexModified;
+
+    private final List<BundleEvent> pendingEvents = new ArrayList<BundleEvent>();
+    private boolean scheduled;
+    private ScheduledExecutorService executor;
 
     public void setFeaturesService(FeaturesService featuresService) {
         this.featuresService = featuresService;
@@ -73,26 +86,51 @@ public class FeatureDeploymentListener implements ArtifactUrlTransformer, Bundle
         this.bundleContext = bundleContext;
     }
 
+    /**
+     * Delay in milliseconds during which bundle events are collected before being processed,
+     * <code>0</code> to process each event synchronously
+     */
+    public void setDeployDelay(long deployDelay) {
+        this.deployDelay = deployDelay;
+    }
+
     public void init() throws Exception {
+        loadIndex();
+        if (deployDelay > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "feature deployer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
         bundleContext.addBundleListener(this);
+        // Process all the bundles already resolved as a single batch
+        List<BundleEvent> events = new ArrayList<BundleEvent>();
         for (Bundle bundle : bundleContext.getBundles()) {
             if (bundle.getState() == Bundle.RESOLVED || bundle.getState() == Bundle.STARTING
                     || bundle.getState() == Bundle.ACTIVE)
-            bundleChanged(new BundleEvent(BundleEvent.RESOLVED, bundle));
+            events.add(new BundleEvent(BundleEvent.RESOLVED, bundle));
         }
+        process(events);
     }
 
     public void destroy() throws Exception {
         bundleContext.removeBundleListener(this);
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+            executor = null;
+        }
+        // Process the events received since the last batch
+        processPendingEvents();
     }
 
     public boolean canHandle(File artifact) {
         try {
             if (artifact.isFile() && artifact.getName().endsWith(".xml")) {
-                Document doc = parse(artifact);
-                String name = doc.getDocumentElement().getLocalName();
-                String uri  = doc.getDocumentElement().getNamespaceURI();
-                if ("features".equals(name) && (uri == null || "".equals(uri))) {
+                if (RootElement.get(artifact).is("features", null)) {
                     return true;
                 }
             }
@@ -118,131 +156,223 @@ public class FeatureDeploymentListener implements ArtifactUrlTransformer, Bundle
     }
 
     public void bundleChanged(BundleEvent bundleEvent) {
-            Bundle bundle = bundleEvent.getBundle();
-            if (bundleEvent.getType() == BundleEvent.RESOLVED) {
+        int type = bundleEvent.getType();
+        if (type != BundleEvent.RESOLVED && type != BundleEvent.UNINSTALLED) {
+            return;
+        }
+        ScheduledExecutorService executor = this.executor;
+        if (executor == null) {
+            process(Collections.singletonList(bundleEvent));
+            return;
+        }
+        synchronized (pendingEvents) {
+            pendingEvents.add(bundleEvent);
+            if (!scheduled) {
+                scheduled = true;
                 try {
-                    List<URL> urls = new ArrayList<URL>();
-                    Enumeration featuresUrlEnumeration = bundle.findEntries("/META-INF/" + FEATURE_PATH + "/", "*.xml", false);
-                    while (featuresUrlEnumeration != null && featuresUrlEnumeration.hasMoreElements()) {
-                        URL url = (URL) featuresUrlEnumeration.nextElement();
-                        try {
-                            featuresService.addRepository(url.toURI());
-                            for (Repository repo : featuresService.listRepositories()) {
-                                if (repo.getURI().equals(url.toURI())) {
-                                    Set<Feature> features = new HashSet<Feature>(Arrays.asList(repo.getFeatures()));
-                                    featuresService.installFeatures(features, EnumSet.noneOf(FeaturesService.Option.class));
-                                }
-                            }
-                            urls.add(url);
-                        } catch (Exception e) {
-                            LOGGER.error("Unable to install features", e);
+                    executor.schedule(new Runnable() {
+                        public void run() {
+                            processPendingEvents();
                         }
+                    }, deployDelay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // the listener is being destroyed, events will be processed by destroy()
+                }
+            }
+        }
+    }
+
+    protected void processPendingEvents() {
+        List<BundleEvent> events;
+        synchronized (pendingEvents) {
+            events = new ArrayList<BundleEvent>(pendingEvents);
+            pendingEvents.clear();
+            scheduled = false;
+        }
+        if (!events.isEmpty()) {
+            process(events);
+        }
+    }
+
+    /**
+     * Process a batch of bundle events.
+     *
+     * The repositories of uninstalled bundles are removed and the repositories of resolved bundles
+     * are added, then all their features which are not installed yet are installed at once.
+     */
+    protected synchronized void process(List<BundleEvent> events) {
+        Map<URI, Repository> repositories = getRepositories();
+        // features to install, by bundle, in the order of the events
+        Map<String, Set<Feature>> toInstall = new LinkedHashMap<String, Set<Feature>>();
+        for (BundleEvent event : events) {
+            Bundle bundle = event.getBundle();
+            String prefix = bundle.getSymbolicName() + "-" + bundle.getVersion();
+            try {
+                if (event.getType() == BundleEvent.RESOLVED) {
+                    Set<Feature> features = deploy(bundle, prefix, repositories);
+                    if (!features.isEmpty()) {
+                        toInstall.put(prefix, features);
                     }
-                    synchronized (this) {
-                        File file = bundleContext.getDataFile("FeatureDeploymentListener.cfg");
-                        if (file != null) {
-                            Properties props = new Properties();
-                            if (file.exists()) {
-                                InputStream input = new FileInputStream(file);
-                                try {
-                                    props.load(input);
-                                } finally {
-                                    input.close();
-                                }
-                            }
-                            String prefix = bundle.getSymbolicName() + "-" + bundle.getVersion();
-                            props.put(prefix + ".count", Integer.toString(urls.size()));
-                            for (int i = 0; i < urls.size(); i++) {
-                                props.put(prefix + ".url." + i, urls.get(i).toExternalForm());
-                            }
-                            OutputStream output = new FileOutputStream(file);
-                            try {
-                                props.store(output, null);
-                            } finally {
-                                output.close();
-                            }
+                } else if (event.getType() == BundleEvent.UNINSTALLED) {
+                    toInstall.remove(prefix);
+                    undeploy(prefix, repositories);
+                }
+            } catch (Exception e) {
+                LOGGER.error("Unable to process deployed features for bundle: " + prefix, e);
+            }
+        }
+        install(toInstall);
+        saveIndex();
+    }
+
+    private Set<Feature> deploy(Bundle bundle, String prefix, Map<URI, Repository> repositories) throws Exception {
+        List<URI> uris = new ArrayList<URI>();
+        Set<Feature> features = new LinkedHashSet<Feature>();
+        Enumeration featuresUrlEnumeration = bundle.findEntries("/META-INF/" + FEATURE_PATH + "/", "*.xml", false);
+        while (featuresUrlEnumeration != null && featuresUrlEnumeration.hasMoreElements()) {
+            URL url = (URL) featuresUrlEnumeration.nextElement();
+            try {
+                URI uri = url.toURI();
+                Repository repo = repositories.get(uri);
+                if (repo == null) {
+                    featuresService.addRepository(uri);
+                    repositories.putAll(getRepositories());
+                    repo = repositories.get(uri);
+                }
+                if (repo != null) {
+                    for (Feature f : repo.getFeatures()) {
+                        if (!featuresService.isInstalled(f)) {
+                            features.add(f);
                         }
                     }
-                } catch (Exception e) {
-                    LOGGER.error("Unable to install deployed features for bundle: " + bundle.getSymbolicName() + " - " + bundle.getVersion(), e);
                 }
-            } else if (bundleEvent.getType() == BundleEvent.UNINSTALLED) {
+                uris.add(uri);
+            } catch (Exception e) {
+                LOGGER.error("Unable to install features", e);
+            }
+        }
+        List<URI> previous = uris.isEmpty() ? index.remove(prefix) : index.put(prefix, uris);
+        if (previous == null ? !uris.isEmpty() : !previous.equals(uris)) {
+            indexModified = true;
+        }
+        return features;
+    }
+
+    private void undeploy(String prefix, Map<URI, Repository> repositories) throws Exception {
+        List<URI> uris = index.remove(prefix);
+        if (uris == null) {
+            return;
+        }
+        indexModified = true;
+        for (URI uri : uris) {
+            Repository repo = repositories.remove(uri);
+            if (repo != null) {
                 try {
-                    synchronized (this) {
-                        File file = bundleContext.getDataFile("FeatureDeploymentListener.cfg");
-                        if (file != null) {
-                            Properties props = new Properties();
-                            if (file.exists()) {
-                                InputStream input = new FileInputStream(file);
-                                try {
-                                    props.load(input);
-                                } finally {
-                                    input.close();
-                                }
-                            }
-                            String prefix = bundle.getSymbolicName() + "-" + bundle.getVersion();
-                            String countStr = (String) props.get(prefix + ".count");
-                            if (countStr != null) {
-                                int count = Integer.parseInt(countStr);
-                                for (int i = 0; i < count; i++) {
-                                    URL url = new URL((String) props.get(prefix + ".url." + i));
-                                    for (Repository repo : featuresService.listRepositories()) {
-                                        try {
-                                            if (repo.getURI().equals(url.toURI())) {
-                                                for (Feature f : repo.getFeatures()) {
-                                                    try {
-                                                        featuresService.uninstallFeature(f.getName(), f.getVersion());
-                                                    } catch (Exception e) {
-                                                        LOGGER.error("Unable to uninstall feature: " + f.getName(), e);
-                                                    }
-                                                }
-                                            }
-                                        } catch (Exception e) {
-                                            LOGGER.error("Unable to uninstall features: " + url, e);
-                                        }
-                                    }
-                                    try {
-                                        featuresService.removeRepository(url.toURI());
-                                    } catch (URISyntaxException e) {
-                                        LOGGER.error("Unable to remove repository: " + url, e);
-                                    }
-                                }
-                            }
-                            for (Iterator<Object> it = props.keySet().iterator(); it.hasNext();) {
-                                if (it.next().toString().startsWith(prefix + ".")) {
-                                    it.remove();
-                                }
-                            }
-                            OutputStream output = new FileOutputStream(file);
-                            try {
-                                props.store(output, null);
-                            } finally {
-                                output.close();
-                            }
+                    for (Feature f : repo.getFeatures()) {
+                        try {
+                            featuresService.uninstallFeature(f.getName(), f.getVersion());
+                        } catch (Exception e) {
+                            LOGGER.error("Unable to uninstall feature: " + f.getName(), e);
                         }
                     }
                 } catch (Exception e) {
-                    LOGGER.error("Unable to uninstall deployed features for bundle: " + bundle.getSymbolicName() + " - " + bundle.getVersion(), e);
+                    LOGGER.error("Unable to uninstall features: " + uri, e);
                 }
             }
+            featuresService.removeRepository(uri);
+        }
     }
 
-    protected Document parse(File artifact) throws Exception {
-        if (dbf == null) {
-            dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
+    private void install(Map<String, Set<Feature>> toInstall) {
+        if (toInstall.isEmpty()) {
+            return;
+        }
+        Set<Feature> features = new LinkedHashSet<Feature>();
+        for (Set<Feature> f : toInstall.values()) {
+            features.addAll(f);
         }
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        db.setErrorHandler(new ErrorHandler() {
-            public void warning(SAXParseException exception) throws SAXException {
+        try {
+            featuresService.installFeatures(features, EnumSet.noneOf(FeaturesService.Option.class));
+        } catch (Exception e) {
+            if (toInstall.size() == 1) {
+                LOGGER.error("Unable to install features", e);
+                return;
             }
-            public void error(SAXParseException exception) throws SAXException {
+            // Install the features of each bundle separately so that a failure
+            // only affects the bundle which deployed the faulty feature
+            for (Map.Entry<String, Set<Feature>> entry : toInstall.entrySet()) {
+                try {
+                    featuresService.installFeatures(entry.getValue(), EnumSet.noneOf(FeaturesService.Option.class));
+                } catch (Exception e2) {
+                    LOGGER.error("Unable to install deployed features for bundle: " + entry.getKey(), e2);
+                }
             }
-            public void fatalError(SAXParseException exception) throws SAXException {
-                throw exception;
+        }
+    }
+
+    private Map<URI, Repository> getRepositories() {
+        Map<URI, Repository> repositories = new HashMap<URI, Repository>();
+        for (Repository repo : featuresService.listRepositories()) {
+            repositories.put(repo.getURI(), repo);
+        }
+        return repositories;
+    }
+
+    private void loadIndex() throws Exception {
+        File file = bundleContext.getDataFile(INDEX_FILE);
+        if (file == null || !file.exists()) {
+            return;
+        }
+        Properties props = new Properties();
+        InputStream input = new FileInputStream(file);
+        try {
+            props.load(input);
+        } finally {
+            input.close();
+        }
+        for (Object key : props.keySet()) {
+            String k = key.toString();
+            if (k.endsWith(".count")) {
+                String prefix = k.substring(0, k.length() - ".count".length());
+                int count = Integer.parseInt(props.getProperty(k));
+                List<URI> uris = new ArrayList<URI>();
+                for (int i = 0; i < count; i++) {
+                    uris.add(new URI(props.getProperty(prefix + ".url." + i)));
+                }
+                if (!uris.isEmpty()) {
+                    index.put(prefix, uris);
+                }
+            }
+        }
+    }
+
+    private void saveIndex() {
+        if (!indexModified) {
+            return;
+        }
+        File file = bundleContext.getDataFile(INDEX_FILE);
+        if (file == null) {
+            return;
+        }
+        try {
+            Properties props = new Properties();
+            for (Map.Entry<String, List<URI>> entry : index.entrySet()) {
+                List<URI> uris = entry.getValue();
+                props.put(entry.getKey() + ".count", Integer.toString(uris.size()));
+                for (int i = 0; i < uris.size(); i++) {
+                    props.put(entry.getKey() + ".url." + i, uris.get(i).toString());
+                }
+            }
+            OutputStream output = new FileOutputStream(file);
+            try {
+                props.store(output, null);
+            } finally {
+                output.close();
             }
-        });
-        return db.parse(artifact);
+            indexModified = false;
+        } catch (Exception e) {
+            LOGGER.error("Unable to save deployed features", e);
+        }
     }
 
 }
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.deployer.features;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+import org.apache.felix.karaf.features.Feature;
+import org.apache.felix.karaf.features.FeaturesService;
+import org.apache.felix.karaf.features.Repository;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.Version;
+
+public class FeatureDeploymentListenerTest extends TestCase {
+
+    private static final URI F1 = URI.create("file:/f1.xml");
+    private static final URI F2 = URI.create("file:/f2.xml");
+
+    private File dataFile;
+    private FeaturesService featuresService;
+    private Feature f1;
+    private Feature f2;
+    private Repository r1;
+    private Repository r2;
+
+    protected void setUp() throws Exception {
+        dataFile = File.createTempFile("features", ".cfg");
+        dataFile.delete();
+        // the order of the calls to the features service is checked
+        featuresService = EasyMock.createStrictMock(FeaturesService.class);
+        f1 = createFeature("f1");
+        f2 = createFeature("f2");
+        r1 = createRepository(F1, f1);
+        r2 = createRepository(F2, f2);
+    }
+
+    protected void tearDown() throws Exception {
+        dataFile.delete();
+    }
+
+    public void testBatch() throws Exception {
+        Bundle b1 = createBundle("b1", "file:/f1.xml");
+        Bundle b2 = createBundle("b2", "file:/f2.xml");
+        Bundle b3 = createBundle("b3");
+
+        EasyMock.expect(featuresService.listRepositories()).andReturn(new Repository[0]);
+        expectAddRepository(F1, new Repository[] { r1 });
+        EasyMock.expect(featuresService.isInstalled(f1)).andReturn(false);
+        expectAddRepository(F2, new Repository[] { r1, r2 });
+        EasyMock.expect(featuresService.isInstalled(f2)).andReturn(false);
+        expectInstallFeatures(f1, f2);
+        // Resolving again does not install anything nor rewrite the index
+        EasyMock.expect(featuresService.listRepositories()).andReturn(new Repository[] { r1, r2 });
+        EasyMock.expect(featuresService.isInstalled(f1)).andReturn(true);
+        // Uninstalling removes the features and the repository
+        EasyMock.expect(featuresService.listRepositories()).andReturn(new Repository[] { r1, r2 });
+        expectRemoveRepository(F1, f1);
+        EasyMock.replay(featuresService);
+
+        FeatureDeploymentListener listener = createListener(0, createBundleContext());
+        listener.process(Arrays.asList(new BundleEvent(BundleEvent.RESOLVED, b1),
+                                       new BundleEvent(BundleEvent.RESOLVED, b2),
+                                       new BundleEvent(BundleEvent.RESOLVED, b3)));
+        assertTrue(dataFile.exists());
+
+        dataFile.delete();
+        listener.process(Arrays.asList(new BundleEvent(BundleEvent.RESOLVED, b1)));
+        assertFalse(dataFile.exists());
+
+        listener.process(Arrays.asList(new BundleEvent(BundleEvent.UNINSTALLED, b1),
+                                       new BundleEvent(BundleEvent.UNINSTALLED, b3)));
+        assertTrue(dataFile.exists());
+        EasyMock.verify(featuresService);
+    }
+
+    public void testResolvedAndUninstalledInSameBatch() throws Exception {
+        Bundle b1 = createBundle("b1", "file:/f1.xml");
+
+        EasyMock.expect(featuresService.listRepositories()).andReturn(new Repository[0]);
+        expectAddRepository(F1, new Repository[] { r1 });
+        EasyMock.expect(featuresService.isInstalled(f1)).andReturn(false);
+        expectRemoveRepository(F1, f1);
+        EasyMock.replay(featuresService);
+
+        FeatureDeploymentListener listener = createListener(0, createBundleContext());
+        listener.process(Arrays.asList(new BundleEvent(BundleEvent.RESOLVED, b1),
+                                       new BundleEvent(BundleEvent.UNINSTALLED, b1)));
+        EasyMock.verify(featuresService);
+    }
+
+    public void testIndexIsReloaded() throws Exception {
+        Bundle b1 = createBundle("b1", "file:/f1.xml");
+
+        EasyMock.expect(featuresService.listRepositories()).andReturn(new Repository[0]);
+        expectAddRepository(F1, new Repository[] { r1 });
+        EasyMock.expect(featuresService.isInstalled(f1)).andReturn(false);
+        expectInstallFeatures(f1);
+        // the initial batch of resolved bundles is empty
+        EasyMock.expect(featuresService.listRepositories()).andReturn(new Repository[] { r1 });
+        EasyMock.expect(featuresService.listRepositories()).andReturn(new Repository[] { r1 });
+        expectRemoveRepository(F1, f1);
+        EasyMock.replay(featuresService);
+
+        FeatureDeploymentListener listener = createListener(0, createBundleContext());
+        listener.process(Arrays.asList(new BundleEvent(BundleEvent.RESOLVED, b1)));
+        listener.destroy();
+
+        // The bundle is uninstalled while the listener is stopped
+        listener = createListener(0, createBundleContext());
+        listener.init();
+        listener.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, b1));
+        EasyMock.verify(featuresService);
+    }
+
+    public void testDelayedEvents() throws Exception {
+        Bundle b1 = createBundle("b1", "file:/f1.xml");
+        Bundle b2 = createBundle("b2", "file:/f2.xml");
+        Bundle b3 = createBundle("b3");
+
+        // the initial batch of resolved bundles is empty
+        EasyMock.expect(featuresService.listRepositories()).andReturn(new Repository[0]);
+        EasyMock.expect(featuresService.listRepositories()).andReturn(new Repository[0]);
+        expectAddRepository(F1, new Repository[] { r1 });
+        EasyMock.expect(featuresService.isInstalled(f1)).andReturn(false);
+        expectAddRepository(F2, new Repository[] { r1, r2 });
+        EasyMock.expect(featuresService.isInstalled(f2)).andReturn(false);
+        expectInstallFeatures(f1, f2);
+        EasyMock.replay(featuresService);
+
+        FeatureDeploymentListener listener = createListener(100, createBundleContext());
+        listener.init();
+        listener.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, b1));
+        listener.bundleChanged(new BundleEvent(BundleEvent.STARTED, b3));
+        listener.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, b2));
+        Thread.sleep(500);
+        EasyMock.verify(featuresService);
+        listener.destroy();
+    }
+
+    /**
+     * The repositories are listed again after a repository has been added.
+     */
+    private void expectAddRepository(URI uri, Repository[] after) throws Exception {
+        featuresService.addRepository(uri);
+        EasyMock.expect(featuresService.listRepositories()).andReturn(after);
+    }
+
+    private void expectRemoveRepository(URI uri, Feature feature) throws Exception {
+        featuresService.uninstallFeature(feature.getName(), feature.getVersion());
+        featuresService.removeRepository(uri);
+    }
+
+    private void expectInstallFeatures(Feature... features) throws Exception {
+        featuresService.installFeatures(new HashSet<Feature>(Arrays.asList(features)),
+                                        EnumSet.noneOf(FeaturesService.Option.class));
+    }
+
+    private FeatureDeploymentListener createListener(long delay, BundleContext bundleContext) {
+        FeatureDeploymentListener listener = new FeatureDeploymentListener();
+        listener.setDeployDelay(delay);
+        listener.setFeaturesService(featuresService);
+        listener.setBundleContext(bundleContext);
+        return listener;
+    }
+
+    private Repository createRepository(URI uri, Feature feature) throws Exception {
+        Repository repository = EasyMock.createMock(Repository.class);
+        EasyMock.expect(repository.getURI()).andReturn(uri).anyTimes();
+        EasyMock.expect(repository.getFeatures()).andReturn(new Feature[] { feature }).anyTimes();
+        EasyMock.replay(repository);
+        return repository;
+    }
+
+    private Feature createFeature(String name) {
+        Feature feature = EasyMock.createMock(Feature.class);
+        EasyMock.expect(feature.getName()).andReturn(name).anyTimes();
+        EasyMock.expect(feature.getVersion()).andReturn("1.0").anyTimes();
+        EasyMock.replay(feature);
+        return feature;
+    }
+
+    /**
+     * A bundle context without any installed bundle, used by init() to process the bundles already resolved.
+     */
+    private BundleContext createBundleContext() {
+        BundleContext bundleContext = EasyMock.createMock(BundleContext.class);
+        EasyMock.expect(bundleContext.getDataFile((String) EasyMock.anyObject())).andReturn(dataFile).anyTimes();
+        EasyMock.expect(bundleContext.getBundles()).andReturn(new Bundle[0]).anyTimes();
+        bundleContext.addBundleListener((BundleListener) EasyMock.anyObject());
+        EasyMock.expectLastCall().anyTimes();
+        bundleContext.removeBundleListener((BundleListener) EasyMock.anyObject());
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.replay(bundleContext);
+        return bundleContext;
+    }
+
+    private Bundle createBundle(String symbolicName, final String... features) {
+        Bundle bundle = EasyMock.createMock(Bundle.class);
+        EasyMock.expect(bundle.getSymbolicName()).andReturn(symbolicName).anyTimes();
+        EasyMock.expect(bundle.getVersion()).andReturn(new Version(1, 0, 0)).anyTimes();
+        EasyMock.expect(bundle.getState()).andReturn(Bundle.RESOLVED).anyTimes();
+        EasyMock.expect(bundle.findEntries((String) EasyMock.anyObject(), (String) EasyMock.anyObject(),
+                                           EasyMock.anyBoolean())).andAnswer(new IAnswer<Enumeration>() {
+            public Enumeration answer() throws Throwable {
+                Vector<URL> urls = new Vector<URL>();
+                for (String f : features) {
+                    urls.add(new URL(f));
+                }
+                return urls.isEmpty() ? null : urls.elements();
+            }
+        }).anyTimes();
+        EasyMock.replay(bundle);
+        return bundle;
+    }
+
+}
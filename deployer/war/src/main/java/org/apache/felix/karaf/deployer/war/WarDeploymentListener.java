@@ -19,14 +19,11 @@ package org.apache.felix.karaf.deployer.war;
 
 import java.io.File;
 import java.net.URL;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.felix.fileinstall.ArtifactUrlTransformer;
+import org.apache.felix.karaf.deployer.util.ArchiveInfo;
 
 /**
  * A deployment listener that listens for war deployements.
@@ -37,19 +34,12 @@ public class WarDeploymentListener implements ArtifactUrlTransformer {
 
     public boolean canHandle(File artifact) {
         try {
-            JarFile jar = new JarFile(artifact);
-            JarEntry entry = jar.getJarEntry("WEB-INF/web.xml");
-            // Only handle WAR artifacts
-            if (entry == null) {
+            if (!artifact.isFile()) {
                 return false;
             }
-            // Only handle non OSGi bundles
-            Manifest m = jar.getManifest();
-            if (m.getMainAttributes().getValue(new Attributes.Name("Bundle-SymbolicName")) != null &&
-                m.getMainAttributes().getValue(new Attributes.Name("Bundle-Version")) != null) {
-                return false;
-            }
-            return true;
+            ArchiveInfo info = ArchiveInfo.get(artifact);
+            // Only handle WAR artifacts which are not OSGi bundles
+            return info.isWar() && !info.isBundle();
         } catch (Exception e) {
             return false;
         }
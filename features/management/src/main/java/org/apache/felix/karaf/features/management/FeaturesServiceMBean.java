@@ -36,6 +36,8 @@ public interface FeaturesServiceMBean {
 
     void uninstallFeature(String name, String version) throws Exception;
 
+    long getDroppedNotifications();
+
     String FEATURE_NAME = "Name";
 
     String FEATURE_VERSION = "Version";
@@ -113,4 +115,11 @@ public interface FeaturesServiceMBean {
      */
     String[] REPOSITORY_EVENT = { REPOSITORY_NAME, REPOSITORY_URI, REPOSITORY_EVENT_EVENT_TYPE };
 
+    /**
+     * The type of the event which is emitted when notifications are batched.
+     * Its user data is an array of the feature and repository events CompositeData,
+     * in the order they occured.
+     */
+    String FEATURES_CHANGED_TYPE = "org.apache.felix.karaf.features.featuresChanged";
+
 }
@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MBeanNotificationInfo;
 import javax.management.MBeanRegistration;
@@ -26,6 +27,7 @@ import javax.management.NotCompliantMBeanException;
 import javax.management.Notification;
 import javax.management.NotificationBroadcasterSupport;
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
 
 import org.apache.felix.karaf.features.Feature;
@@ -44,6 +46,12 @@ import org.osgi.framework.ServiceRegistration;
 
 /**
  * Implementation of {@link FeaturesServiceMBean}.
+ *
+ * Feature and repository events are queued and sent to the JMX listeners from a
+ * dedicated thread, so that installing features is not slowed down by remote
+ * clients.  When <code>batchNotifications</code> is enabled, events received within
+ * <code>batchDelay</code> milliseconds are grouped in a single
+ * {@link FeaturesServiceMBean#FEATURES_CHANGED_TYPE} notification.
  */
 public class FeaturesServiceMBeanImpl extends StandardEmitterMBean implements
     MBeanRegistration, FeaturesServiceMBean {
@@ -54,12 +62,22 @@ public class FeaturesServiceMBeanImpl extends StandardEmitterMBean implements
 
 	private ObjectName objectName;
 
-	private volatile long sequenceNumber = 0;
+	private final AtomicLong sequenceNumber = new AtomicLong();
 
 	private MBeanServer server;
 
     private FeaturesService featuresService;
 
+    private int notificationQueueSize = 1000;
+
+    private boolean batchNotifications;
+
+    private long batchDelay = 100;
+
+    private int maxBatchSize = 100;
+
+    private NotificationDispatcher dispatcher;
+
     public FeaturesServiceMBeanImpl() throws NotCompliantMBeanException {
         super(FeaturesServiceMBean.class, new NotificationBroadcasterSupport() {
             @Override
@@ -76,12 +94,30 @@ public class FeaturesServiceMBeanImpl extends StandardEmitterMBean implements
     }
 
     public void postRegister(Boolean registrationDone) {
+        if (!registrationDone.booleanValue()) {
+            return;
+        }
+        dispatcher = new NotificationDispatcher(notificationQueueSize,
+                                                batchNotifications ? batchDelay : 0,
+                                                batchNotifications ? maxBatchSize : notificationQueueSize) {
+            protected void dispatch(List<Notification> notifications) {
+                sendNotifications(notifications);
+            }
+        };
+        dispatcher.start("Karaf features notifications");
         registration = bundleContext.registerService(FeaturesListener.class.getName(),
             getFeaturesListener(), new Hashtable());
     }
 
     public void preDeregister() throws Exception {
-        registration.unregister();
+        if (registration != null) {
+            registration.unregister();
+            registration = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.stop(5000);
+            dispatcher = null;
+        }
     }
 
     public void postDeregister() {
@@ -156,33 +192,84 @@ public class FeaturesServiceMBeanImpl extends StandardEmitterMBean implements
         this.featuresService = featuresService;
     }
 
+    public void setNotificationQueueSize(int notificationQueueSize) {
+        this.notificationQueueSize = notificationQueueSize;
+    }
+
+    public void setBatchNotifications(boolean batchNotifications) {
+        this.batchNotifications = batchNotifications;
+    }
+
+    public void setBatchDelay(long batchDelay) {
+        this.batchDelay = batchDelay;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getDroppedNotifications() {
+        NotificationDispatcher d = dispatcher;
+        return d != null ? d.getDroppedCount() : 0;
+    }
+
     public FeaturesListener getFeaturesListener() {
         return new FeaturesListener() {
             public void featureEvent(FeatureEvent event) {
                 if (!event.isReplay()) {
-                    Notification notification = new Notification(FEATURE_EVENT_TYPE, objectName, sequenceNumber++);
+                    Notification notification = new Notification(FEATURE_EVENT_TYPE, objectName, 0);
                     notification.setUserData(new JmxFeatureEvent(event).asCompositeData());
-                    sendNotification(notification);
+                    enqueue(notification);
                 }
             }
             public void repositoryEvent(RepositoryEvent event) {
                 if (!event.isReplay()) {
-                    Notification notification = new Notification(REPOSITORY_EVENT_TYPE, objectName, sequenceNumber++);
+                    Notification notification = new Notification(REPOSITORY_EVENT_TYPE, objectName, 0);
                     notification.setUserData(new JmxRepositoryEvent(event).asCompositeData());
-                    sendNotification(notification);
+                    enqueue(notification);
                 }
             }
         };
     }
 
+    private void enqueue(Notification notification) {
+        NotificationDispatcher d = dispatcher;
+        if (d != null) {
+            d.offer(notification);
+        }
+    }
+
+    /**
+     * Send the queued notifications, either one by one or as a single batch.
+     * Sequence numbers are assigned here so that they follow the emission order.
+     */
+    void sendNotifications(List<Notification> notifications) {
+        if (batchNotifications) {
+            CompositeData[] events = new CompositeData[notifications.size()];
+            for (int i = 0; i < events.length; i++) {
+                events[i] = (CompositeData) notifications.get(i).getUserData();
+            }
+            Notification notification = new Notification(FEATURES_CHANGED_TYPE, objectName,
+                sequenceNumber.getAndIncrement(), events.length + " feature and repository events");
+            notification.setUserData(events);
+            sendNotification(notification);
+        } else {
+            for (Notification notification : notifications) {
+                notification.setSequenceNumber(sequenceNumber.getAndIncrement());
+                sendNotification(notification);
+            }
+        }
+    }
 
     private static MBeanNotificationInfo[] getBroadcastInfo() {
         String type = Notification.class.getCanonicalName();
-        MBeanNotificationInfo info1 = new MBeanNotificationInfo(new String[] {FEATURE_EVENT_EVENT_TYPE},
+        MBeanNotificationInfo info1 = new MBeanNotificationInfo(new String[] {FEATURE_EVENT_TYPE},
             type, "Some features notification");
-        MBeanNotificationInfo info2 = new MBeanNotificationInfo(new String[] {REPOSITORY_EVENT_EVENT_TYPE},
+        MBeanNotificationInfo info2 = new MBeanNotificationInfo(new String[] {REPOSITORY_EVENT_TYPE},
             type, "Some repository notification");
-        return new MBeanNotificationInfo[] {info1, info2};
+        MBeanNotificationInfo info3 = new MBeanNotificationInfo(new String[] {FEATURES_CHANGED_TYPE},
+            type, "Feature and repository events grouped in a single notification");
+        return new MBeanNotificationInfo[] {info1, info2, info3};
     }
 
 }
\ No newline at end of file
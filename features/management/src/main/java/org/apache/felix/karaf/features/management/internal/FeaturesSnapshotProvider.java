@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.felix.karaf.features.management.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.felix.karaf.features.Feature;
+import org.apache.felix.karaf.features.FeaturesService;
+import org.apache.felix.karaf.management.SnapshotProvider;
+
+/**
+ * Snapshot section listing the installed features as <code>name/version</code>.
+ */
+public class FeaturesSnapshotProvider implements SnapshotProvider {
+
+    private FeaturesService featuresService;
+
+    public FeaturesService getFeaturesService() {
+        return featuresService;
+    }
+
+    public void setFeaturesService(FeaturesService featuresService) {
+        this.featuresService = featuresService;
+    }
+
+    public String getName() {
+        return "features";
+    }
+
+    public boolean isMetric() {
+        return false;
+    }
+
+    public Map<String, String> getEntries() {
+        Map<String, String> entries = new HashMap<String, String>();
+        for (Feature feature : featuresService.listInstalledFeatures()) {
+            entries.put(feature.getName() + "/" + feature.getVersion(), null);
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.felix.karaf.features.management.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+
+/**
+ * Delivers notifications from a background thread, so that the thread producing
+ * events is never blocked by slow listeners.
+ *
+ * Pending notifications are kept in a bounded queue: when it is full, new
+ * notifications are dropped and counted.  The dispatching thread hands them
+ * over in groups of up to <code>maxBatchSize</code>, waiting up to
+ * <code>batchDelay</code> milliseconds for a group to fill when the delay is set.
+ */
+abstract class NotificationDispatcher {
+
+    private static final long POLL_TIMEOUT = 500;
+
+    private final BlockingQueue<Notification> queue;
+    private final long batchDelay;
+    private final int maxBatchSize;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Thread thread;
+
+    NotificationDispatcher(int capacity, long batchDelay, int maxBatchSize) {
+        this.queue = new ArrayBlockingQueue<Notification>(capacity);
+        this.batchDelay = batchDelay;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Deliver the given notifications, called from the dispatching thread.
+     */
+    protected abstract void dispatch(List<Notification> notifications);
+
+    /**
+     * Queue a notification for delivery.
+     *
+     * @return <code>false</code> if the queue is full and the notification has been dropped
+     */
+    public boolean offer(Notification notification) {
+        if (queue.offer(notification)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public synchronized void start(String name) {
+        if (thread == null) {
+            thread = new Thread(new Runnable() {
+                public void run() {
+                    NotificationDispatcher.this.run();
+                }
+            }, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop the dispatching thread and deliver the notifications still pending.
+     *
+     * If the thread does not end within the given timeout, it is interrupted and
+     * waited for once more.  When it is still dispatching after that, the pending
+     * notifications are left in the queue rather than delivered concurrently.
+     */
+    public synchronized void stop(long timeout) throws InterruptedException {
+        Thread t = thread;
+        if (t != null) {
+            thread = null;
+            t.join(timeout);
+            if (t.isAlive()) {
+                t.interrupt();
+                t.join(timeout);
+                if (t.isAlive()) {
+                    return;
+                }
+            }
+            List<Notification> pending = new ArrayList<Notification>();
+            while (queue.drainTo(pending, maxBatchSize) > 0) {
+                dispatch(pending);
+                pending = new ArrayList<Notification>();
+            }
+        }
+    }
+
+    private void run() {
+        Thread self = Thread.currentThread();
+        while (thread == self) {
+            List<Notification> batch = new ArrayList<Notification>();
+            try {
+                Notification first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                if (batchDelay > 0) {
+                    long deadline = System.currentTimeMillis() + batchDelay;
+                    long wait;
+                    while (batch.size() < maxBatchSize && (wait = deadline - System.currentTimeMillis()) > 0) {
+                        Notification next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                    }
+                } else {
+                    queue.drainTo(batch, maxBatchSize - 1);
+                }
+            } catch (InterruptedException e) {
+                // interrupted by stop(): deliver what has already been taken from the queue
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                dispatch(batch);
+            } catch (Throwable t) {
+                // a failing listener must not stop the delivery of later notifications
+                t.printStackTrace();
+            }
+        }
+    }
+
+}
@@ -42,6 +42,10 @@ public class StandardEmitterMBean extends StandardMBean implements NotificationE
     }
 
     public MBeanNotificationInfo[] getNotificationInfo() {
+        // called by the StandardMBean constructor before the emitter is set
+        if (emitter == null) {
+            return new MBeanNotificationInfo[0];
+        }
         return emitter.getNotificationInfo();
     }
 
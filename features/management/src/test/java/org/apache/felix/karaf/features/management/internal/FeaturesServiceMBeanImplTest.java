@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.felix.karaf.features.management.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+import junit.framework.TestCase;
+import org.apache.felix.karaf.features.management.FeaturesServiceMBean;
+
+public class FeaturesServiceMBeanImplTest extends TestCase {
+
+    private final List<Notification> received = new ArrayList<Notification>();
+
+    private ObjectName name;
+
+    protected void setUp() throws Exception {
+        name = new ObjectName("org.apache.felix.karaf:type=features,name=test");
+    }
+
+    public void testBatchedNotifications() throws Exception {
+        FeaturesServiceMBeanImpl mbean = createMBean(true);
+        mbean.sendNotifications(events(0, 3));
+        mbean.sendNotifications(events(3, 5));
+
+        assertEquals(2, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            Notification notification = received.get(i);
+            assertEquals(FeaturesServiceMBean.FEATURES_CHANGED_TYPE, notification.getType());
+            assertEquals(name, notification.getSource());
+            assertEquals(i, notification.getSequenceNumber());
+        }
+        CompositeData[] first = (CompositeData[]) received.get(0).getUserData();
+        CompositeData[] second = (CompositeData[]) received.get(1).getUserData();
+        assertEquals(3, first.length);
+        assertEquals(2, second.length);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, first[i].get("id"));
+        }
+        for (int i = 0; i < 2; i++) {
+            assertEquals(3 + i, second[i].get("id"));
+        }
+    }
+
+    public void testIndividualNotifications() throws Exception {
+        FeaturesServiceMBeanImpl mbean = createMBean(false);
+        mbean.sendNotifications(events(0, 3));
+        mbean.sendNotifications(events(3, 5));
+
+        assertEquals(5, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            Notification notification = received.get(i);
+            assertEquals(FeaturesServiceMBean.FEATURE_EVENT_TYPE, notification.getType());
+            assertEquals(i, ((CompositeData) notification.getUserData()).get("id"));
+            assertEquals(i, notification.getSequenceNumber());
+        }
+    }
+
+    private FeaturesServiceMBeanImpl createMBean(boolean batch) throws Exception {
+        FeaturesServiceMBeanImpl mbean = new FeaturesServiceMBeanImpl();
+        mbean.setBatchNotifications(batch);
+        mbean.preRegister(null, name);
+        mbean.addNotificationListener(new NotificationListener() {
+            public void handleNotification(Notification notification, Object handback) {
+                received.add(notification);
+            }
+        }, null, null);
+        return mbean;
+    }
+
+    private List<Notification> events(int from, int to) throws Exception {
+        CompositeType type = new CompositeType("event", "event", new String[] { "id" },
+                                               new String[] { "id" }, new OpenType[] { SimpleType.INTEGER });
+        List<Notification> notifications = new ArrayList<Notification>();
+        for (int i = from; i < to; i++) {
+            Notification notification = new Notification(FeaturesServiceMBean.FEATURE_EVENT_TYPE, name, 0);
+            notification.setUserData(new CompositeDataSupport(type, new String[] { "id" }, new Object[] { i }));
+            notifications.add(notification);
+        }
+        return notifications;
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.felix.karaf.features.management.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Notification;
+
+import junit.framework.TestCase;
+
+public class NotificationDispatcherTest extends TestCase {
+
+    private final List<List<Notification>> batches = Collections.synchronizedList(new ArrayList<List<Notification>>());
+
+    public void testDropWhenFull() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        NotificationDispatcher dispatcher = new NotificationDispatcher(2, 0, 10) {
+            protected void dispatch(List<Notification> notifications) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                batches.add(notifications);
+            }
+        };
+        dispatcher.start("test");
+        // the first notification blocks the dispatching thread
+        assertTrue(dispatcher.offer(notification(0)));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.offer(notification(1)));
+        assertTrue(dispatcher.offer(notification(2)));
+        assertFalse(dispatcher.offer(notification(3)));
+        assertEquals(1, dispatcher.getDroppedCount());
+        release.countDown();
+        dispatcher.stop(5000);
+
+        int count = 0;
+        for (List<Notification> batch : batches) {
+            count += batch.size();
+        }
+        assertEquals(3, count);
+    }
+
+    public void testBatching() throws Exception {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(100, 500, 3) {
+            protected void dispatch(List<Notification> notifications) {
+                batches.add(notifications);
+            }
+        };
+        dispatcher.start("test");
+        for (int i = 0; i < 5; i++) {
+            dispatcher.offer(notification(i));
+        }
+        dispatcher.stop(5000);
+
+        assertEquals(2, batches.size());
+        assertEquals(3, batches.get(0).size());
+        assertEquals(2, batches.get(1).size());
+        assertEquals("0", batches.get(0).get(0).getMessage());
+        assertEquals("4", batches.get(1).get(1).getMessage());
+    }
+
+    public void testStopInterruptsBlockedListener() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        NotificationDispatcher dispatcher = new NotificationDispatcher(10, 0, 1) {
+            protected void dispatch(List<Notification> notifications) {
+                batches.add(notifications);
+                if (blocked.getCount() > 0) {
+                    blocked.countDown();
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        // stop() gave up waiting
+                    }
+                }
+            }
+        };
+        dispatcher.start("test");
+        dispatcher.offer(notification(0));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        dispatcher.offer(notification(1));
+        dispatcher.stop(100);
+
+        // the pending notification is delivered once the thread has been interrupted
+        assertEquals(2, batches.size());
+        assertEquals("1", batches.get(1).get(0).getMessage());
+    }
+
+    public void testStopSkipsPendingWhileDispatching() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        NotificationDispatcher dispatcher = new NotificationDispatcher(10, 0, 1) {
+            protected void dispatch(List<Notification> notifications) {
+                batches.add(notifications);
+                blocked.countDown();
+                // a listener ignoring interruptions
+                while (true) {
+                    try {
+                        release.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                done.countDown();
+            }
+        };
+        dispatcher.start("test");
+        dispatcher.offer(notification(0));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        dispatcher.offer(notification(1));
+        dispatcher.stop(100);
+
+        // the pending notification is not delivered while the thread is still dispatching
+        assertEquals(1, batches.size());
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, batches.size());
+    }
+
+    private static Notification notification(int i) {
+        return new Notification("test", "source", 0, Integer.toString(i));
+    }
+
+}
@@ -18,6 +18,8 @@ package org.apache.felix.karaf.jaas.boot;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.security.auth.Subject;
 import javax.security.auth.callback.CallbackHandler;
@@ -26,6 +28,8 @@ import javax.security.auth.spi.LoginModule;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
 
 /**
  * An OSGi proxy login module that should be used instead of a plain reference to
@@ -41,11 +45,34 @@ public class ProxyLoginModule implements LoginModule {
     public static final String PROPERTY_BUNDLE = "org.apache.felix.karaf.jaas.bundle";
 
     private static BundleContext bundleContext = null;
-    
+
+    /**
+     * Login module classes already loaded, keyed by bundle id and class name.
+     */
+    private static final ConcurrentMap<String, Class> classes = new ConcurrentHashMap<String, Class>();
+
+    /**
+     * Forget the classes of bundles being updated, refreshed or uninstalled.
+     */
+    private static final SynchronousBundleListener listener = new SynchronousBundleListener() {
+        public void bundleChanged(BundleEvent event) {
+            if (event.getType() == BundleEvent.UNRESOLVED) {
+                String prefix = event.getBundle().getBundleId() + "/";
+                for (String key : classes.keySet()) {
+                    if (key.startsWith(prefix)) {
+                        classes.remove(key);
+                    }
+                }
+            }
+        }
+    };
+
     private LoginModule target = null;
 
     public static void init(BundleContext context) {
         bundleContext = context;
+        classes.clear();
+        context.addBundleListener(listener);
     }
 
     /* (non-Javadoc)
@@ -69,13 +96,27 @@ public class ProxyLoginModule implements LoginModule {
             throw new IllegalStateException("No bundle found for id " + bundleId);
         }
         try {
-            target = (LoginModule) bundle.loadClass(module).newInstance();
+            target = (LoginModule) loadClass(bundle, module).newInstance();
         } catch (Exception e) {
             throw new IllegalStateException("Can not load or create login module " + module + " for bundle " + bundleId, e);
         }
         target.initialize(subject, callbackHandler, sharedState, newOptions);
     }
 
+    /**
+     * Load the given class from the bundle, reusing the class loaded previously
+     * as long as the bundle has not been unresolved since.
+     */
+    private static Class loadClass(Bundle bundle, String name) throws ClassNotFoundException {
+        String key = bundle.getBundleId() + "/" + name;
+        Class clazz = classes.get(key);
+        if (clazz == null) {
+            clazz = bundle.loadClass(name);
+            classes.put(key, clazz);
+        }
+        return clazz;
+    }
+
     /* (non-Javadoc)
      * @see javax.security.auth.spi.LoginModule#login()
      */
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.jaas.config.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Watches files for changes from a single background thread and notifies
+ * a listener when the size or modification date of a file changes.
+ *
+ * The thread is only running while at least one file is watched.
+ */
+class FileWatcher {
+
+    private static final Log LOG = LogFactory.getLog(FileWatcher.class);
+
+    static final long INTERVAL = 2000;
+
+    private static final List<Watch> watches = new ArrayList<Watch>();
+    private static ScheduledExecutorService executor;
+
+    private FileWatcher() {
+    }
+
+    static synchronized void watch(File file, Runnable listener) {
+        watches.add(new Watch(file, listener));
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Karaf keystore watcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    check();
+                }
+            }, INTERVAL, INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    static synchronized void unwatch(Runnable listener) {
+        for (int i = watches.size() - 1; i >= 0; i--) {
+            if (watches.get(i).listener == listener) {
+                watches.remove(i);
+            }
+        }
+        if (watches.isEmpty() && executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    static synchronized ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    static void check() {
+        List<Watch> current;
+        synchronized (FileWatcher.class) {
+            current = new ArrayList<Watch>(watches);
+        }
+        for (Watch watch : current) {
+            if (watch.hasChanged()) {
+                try {
+                    watch.listener.run();
+                } catch (Throwable t) {
+                    LOG.warn("Error notifying change of " + watch.file, t);
+                }
+            }
+        }
+    }
+
+    private static class Watch {
+
+        final File file;
+        final Runnable listener;
+        private long lastModified;
+        private long length;
+
+        Watch(File file, Runnable listener) {
+            this.file = file;
+            this.listener = listener;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        boolean hasChanged() {
+            long m = file.lastModified();
+            long l = file.length();
+            if (m != lastModified || l != length) {
+                lastModified = m;
+                length = l;
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
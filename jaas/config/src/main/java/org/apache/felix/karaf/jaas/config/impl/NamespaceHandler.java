@@ -111,6 +111,8 @@ public class NamespaceHandler implements org.apache.aries.blueprint.NamespaceHan
     public ComponentMetadata parseKeystore(Element element, ParserContext context) {
         MutableBeanMetadata bean = context.createMetadata(MutableBeanMetadata.class);
         bean.setRuntimeClass(ResourceKeystoreInstance.class);
+        bean.setInitMethod("init");
+        bean.setDestroyMethod("destroy");
         // Parse name
         String name = element.getAttribute("name");
         bean.addProperty("name", createValue(context, name));
@@ -16,9 +16,7 @@
  */
 package org.apache.felix.karaf.jaas.config.impl;
 
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.security.auth.login.AppConfigurationEntry;
 import javax.security.auth.login.Configuration;
@@ -27,7 +25,14 @@ import org.apache.felix.karaf.jaas.config.JaasRealm;
 
 public class OsgiConfiguration extends Configuration {
 
-    private final List<JaasRealm> realms = new CopyOnWriteArrayList<JaasRealm>();
+    private final RankedRegistry<JaasRealm> realms = new RankedRegistry<JaasRealm>() {
+        protected String getName(JaasRealm realm) {
+            return realm.getName();
+        }
+        protected int getRank(JaasRealm realm) {
+            return realm.getRank();
+        }
+    };
 
     public void init() {
         Configuration.setConfiguration(this);
@@ -47,14 +52,7 @@ public class OsgiConfiguration extends Configuration {
     }
 
     public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
-        JaasRealm realm = null;
-        for (JaasRealm r : realms) {
-            if (r.getName().equals(name)) {
-                if (realm == null || r.getRank() > realm.getRank()) {
-                    realm = r;
-                }
-            }
-        }
+        JaasRealm realm = realms.get(name);
         if (realm != null) {
             return realm.getEntries();
         }
@@ -18,9 +18,9 @@ package org.apache.felix.karaf.jaas.config.impl;
 
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocketFactory;
@@ -32,10 +32,23 @@ import org.apache.felix.karaf.jaas.config.KeystoreManager;
 
 /**
  * Implementation of KeystoreManager
+ *
+ * SSL contexts are cached and shared between callers asking for the same parameters.
+ * A cached context is discarded when one of its keystores is replaced by another
+ * service or when its file changes.
  */
 public class OsgiKeystoreManager implements KeystoreManager {
 
-    private List<KeystoreInstance> keystores = new CopyOnWriteArrayList<KeystoreInstance>();
+    private final RankedRegistry<KeystoreInstance> keystores = new RankedRegistry<KeystoreInstance>() {
+        protected String getName(KeystoreInstance keystore) {
+            return keystore.getName();
+        }
+        protected int getRank(KeystoreInstance keystore) {
+            return keystore.getRank();
+        }
+    };
+
+    private final ConcurrentMap<String, CachedContext> contexts = new ConcurrentHashMap<String, CachedContext>();
 
     public void register(KeystoreInstance keystore, Map<String,?> properties) {
         keystores.add(keystore);
@@ -43,18 +56,15 @@ public class OsgiKeystoreManager implements KeystoreManager {
 
     public void unregister(KeystoreInstance keystore, Map<String,?> properties) {
         keystores.remove(keystore);
+        for (Map.Entry<String, CachedContext> entry : contexts.entrySet()) {
+            if (entry.getValue().uses(keystore)) {
+                contexts.remove(entry.getKey(), entry.getValue());
+            }
+        }
     }
 
     public KeystoreInstance getKeystore(String name) {
-        KeystoreInstance keystore = null;
-        for (KeystoreInstance ks : keystores) {
-            if (ks.getName().equals(name)) {
-                if (keystore == null || keystore.getRank() < ks.getRank()) {
-                    keystore = ks;
-                }
-            }
-        }
-        return keystore;
+        return keystores.get(name);
     }
 
     public SSLContext createSSLContext(String provider, String protocol, String algorithm, String keyStore, String keyAlias, String trustStore) throws GeneralSecurityException {
@@ -69,6 +79,14 @@ public class OsgiKeystoreManager implements KeystoreManager {
         if (trustInstance != null && trustInstance.isKeystoreLocked()) {
             throw new KeystoreIsLocked("Keystore '" + trustStore + "' is locked");
         }
+        String key = provider + "|" + protocol + "|" + algorithm + "|" + keyStore + "|" + keyAlias + "|" + trustStore;
+        CachedContext cached = contexts.get(key);
+        if (cached != null && cached.isValid(keyInstance, trustInstance)) {
+            return cached.context;
+        }
+        // read the versions first so that a change while building the context is not missed
+        long keyVersion = getVersion(keyInstance);
+        long trustVersion = getVersion(trustInstance);
         SSLContext context;
         if (provider == null) {
             context = SSLContext.getInstance(protocol);
@@ -77,6 +95,9 @@ public class OsgiKeystoreManager implements KeystoreManager {
         }
         context.init(keyInstance == null ? null : keyInstance.getKeyManager(algorithm, keyAlias),
                      trustInstance == null ? null : trustInstance.getTrustManager(algorithm), new SecureRandom());
+        if (isCacheable(keyInstance) && isCacheable(trustInstance)) {
+            contexts.put(key, new CachedContext(context, keyInstance, keyVersion, trustInstance, trustVersion));
+        }
         return context;
     }
 
@@ -89,4 +110,44 @@ public class OsgiKeystoreManager implements KeystoreManager {
         SSLContext context = createSSLContext(provider, protocol, algorithm, keyStore, keyAlias, trustStore);
         return context.getSocketFactory();
     }
+
+    /**
+     * Only keystores which tell when they change can be cached.
+     */
+    private static boolean isCacheable(KeystoreInstance keystore) {
+        return keystore == null || keystore instanceof ResourceKeystoreInstance;
+    }
+
+    private static long getVersion(KeystoreInstance keystore) {
+        return keystore instanceof ResourceKeystoreInstance ? ((ResourceKeystoreInstance) keystore).getVersion() : 0;
+    }
+
+    private static class CachedContext {
+
+        final SSLContext context;
+        final KeystoreInstance keyInstance;
+        final KeystoreInstance trustInstance;
+        final long keyVersion;
+        final long trustVersion;
+
+        CachedContext(SSLContext context, KeystoreInstance keyInstance, long keyVersion,
+                      KeystoreInstance trustInstance, long trustVersion) {
+            this.context = context;
+            this.keyInstance = keyInstance;
+            this.keyVersion = keyVersion;
+            this.trustInstance = trustInstance;
+            this.trustVersion = trustVersion;
+        }
+
+        boolean uses(KeystoreInstance keystore) {
+            return keyInstance == keystore || trustInstance == keystore;
+        }
+
+        boolean isValid(KeystoreInstance keyInstance, KeystoreInstance trustInstance) {
+            return this.keyInstance == keyInstance && this.trustInstance == trustInstance
+                    && keyVersion == getVersion(keyInstance) && trustVersion == getVersion(trustInstance);
+        }
+
+    }
+
 }
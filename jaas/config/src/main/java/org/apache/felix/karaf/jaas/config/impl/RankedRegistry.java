@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.jaas.config.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A set of named services where only the highest ranked service of each name is visible.
+ *
+ * Services are indexed by name when they are added or removed, so that lookups
+ * do not need any lock.  Among services with the same name and rank, the one
+ * registered first wins.
+ */
+abstract class RankedRegistry<T> {
+
+    private final List<T> services = new ArrayList<T>();
+    private final ConcurrentMap<String, T> index = new ConcurrentHashMap<String, T>();
+
+    protected abstract String getName(T service);
+
+    protected abstract int getRank(T service);
+
+    public synchronized void add(T service) {
+        services.add(service);
+        update(getName(service));
+    }
+
+    public synchronized void remove(T service) {
+        if (services.remove(service)) {
+            update(getName(service));
+        }
+    }
+
+    public synchronized void clear() {
+        services.clear();
+        index.clear();
+    }
+
+    public T get(String name) {
+        return name != null ? index.get(name) : null;
+    }
+
+    private void update(String name) {
+        if (name == null) {
+            return;
+        }
+        T best = null;
+        for (T service : services) {
+            if (name.equals(getName(service)) && (best == null || getRank(service) > getRank(best))) {
+                best = service;
+            }
+        }
+        if (best != null) {
+            index.put(name, best);
+        } else {
+            index.remove(name);
+        }
+    }
+
+}
@@ -47,7 +47,10 @@ import org.apache.felix.karaf.jaas.config.KeystoreInstance;
 import org.apache.felix.karaf.jaas.config.KeystoreIsLocked;
 
 /**
+ * A keystore loaded from an url.
  *
+ * When the url points to a file, the file is watched in the background and
+ * the keystore is loaded again on the next access after the file has changed.
  */
 public class ResourceKeystoreInstance implements KeystoreInstance {
 
@@ -65,7 +68,16 @@ public class ResourceKeystoreInstance implements KeystoreInstance {
     private List privateKeys = new ArrayList();
     private List trustCerts = new ArrayList();
     private KeyStore keystore;
-    private long keystoreReadDate = Long.MIN_VALUE;
+    private volatile boolean stale = true;
+    private volatile long version;
+
+    private final Runnable listener = new Runnable() {
+        public void run() {
+            LOG.debug("Keystore file " + keystoreFile + " has changed");
+            stale = true;
+            version++;
+        }
+    };
 
     /**
      * @return the keystoreName
@@ -240,15 +252,29 @@ public class ResourceKeystoreInstance implements KeystoreInstance {
         return (String[]) trustCerts.toArray(new String[trustCerts.size()]);
     }
 
+    public void init() {
+        if (keystoreFile != null) {
+            FileWatcher.watch(keystoreFile, listener);
+        }
+    }
+
+    public void destroy() {
+        FileWatcher.unwatch(listener);
+    }
+
+    /**
+     * A number changing each time the keystore file changes, so that
+     * objects built from this keystore can be discarded.
+     */
+    long getVersion() {
+        return version;
+    }
+
     // ==================== Internals =====================
 
-    private boolean loadKeystoreData() {
-        // Check to reload the data if needed
-        if (keystoreFile != null && keystoreReadDate >= keystoreFile.lastModified()) {
-            return true;
-        }
-        // If not a file, just not reload the data if it has already been loaded
-        if (keystoreFile == null && keystore != null) {
+    private synchronized boolean loadKeystoreData() {
+        // The data is only loaded again when the watcher has seen the file change
+        if (keystore != null && !stale) {
             return true;
         }
         // Check if the file is invalid
@@ -257,15 +283,18 @@ public class ResourceKeystoreInstance implements KeystoreInstance {
         }
         // Load the keystore data
         try {
-            keystoreReadDate = System.currentTimeMillis();
+            stale = false;
             privateKeys.clear();
             trustCerts.clear();
             if (keystore == null) {
                 keystore = KeyStore.getInstance(JKS);
             }
             InputStream in = new BufferedInputStream(path.openStream());
-            keystore.load(in, keystorePassword == null ? new char[0] : keystorePassword.toCharArray());
-            in.close();
+            try {
+                keystore.load(in, keystorePassword == null ? new char[0] : keystorePassword.toCharArray());
+            } finally {
+                in.close();
+            }
             Enumeration aliases = keystore.aliases();
             while (aliases.hasMoreElements()) {
                 String alias = (String) aliases.nextElement();
@@ -285,6 +314,7 @@ public class ResourceKeystoreInstance implements KeystoreInstance {
         } catch (CertificateException e) {
             LOG.error("Unable to open keystore with provided password", e);
         }
+        stale = true;
         return false;
     }
 
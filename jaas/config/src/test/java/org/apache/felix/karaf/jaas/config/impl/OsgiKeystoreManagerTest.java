@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.jaas.config.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+
+import junit.framework.TestCase;
+import org.apache.felix.karaf.jaas.config.KeystoreInstance;
+
+public class OsgiKeystoreManagerTest extends TestCase {
+
+    private static final String PASSWORD = "secret";
+
+    private File file;
+    private ResourceKeystoreInstance keystore;
+    private OsgiKeystoreManager manager;
+
+    protected void setUp() throws Exception {
+        file = File.createTempFile("keystore", ".jks");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            KeyStore ks = KeyStore.getInstance("JKS");
+            ks.load(null, PASSWORD.toCharArray());
+            ks.store(out, PASSWORD.toCharArray());
+        } finally {
+            out.close();
+        }
+        keystore = new ResourceKeystoreInstance();
+        keystore.setName("karaf");
+        keystore.setPath(file.toURI().toURL());
+        keystore.setKeystorePassword(PASSWORD);
+        keystore.setKeyPasswords("server=" + PASSWORD);
+        keystore.init();
+        manager = new OsgiKeystoreManager();
+        manager.register(keystore, null);
+    }
+
+    protected void tearDown() throws Exception {
+        keystore.destroy();
+        file.delete();
+    }
+
+    public void testSameParametersReturnCachedContext() throws Exception {
+        SSLContext context = createContext();
+        assertSame(context, createContext());
+        assertNotSame(context, manager.createSSLContext(null, "SSL", "SunX509", "karaf", "server", null));
+    }
+
+    public void testModifiedFileChangesVersion() throws Exception {
+        SSLContext context = createContext();
+        long version = keystore.getVersion();
+
+        FileWatcher.check();
+        assertEquals(version, keystore.getVersion());
+        assertSame(context, createContext());
+
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        FileWatcher.check();
+        assertTrue(keystore.getVersion() != version);
+        assertNotSame(context, createContext());
+    }
+
+    public void testResizedFileChangesVersion() throws Exception {
+        long version = keystore.getVersion();
+        long lastModified = file.lastModified();
+        OutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(0);
+        } finally {
+            out.close();
+        }
+        file.setLastModified(lastModified);
+        FileWatcher.check();
+        assertTrue(keystore.getVersion() != version);
+    }
+
+    public void testUnregisterDropsContexts() throws Exception {
+        SSLContext context = createContext();
+        manager.unregister(keystore, null);
+        manager.register(keystore, null);
+        assertNotSame(context, createContext());
+    }
+
+    public void testOtherKeystoresAreNotCached() throws Exception {
+        manager.register(new TestKeystoreInstance("other"), null);
+        SSLContext context = manager.createSSLContext(null, "TLS", "SunX509", "other", "server", null);
+        assertNotSame(context, manager.createSSLContext(null, "TLS", "SunX509", "other", "server", null));
+        // a cached keystore combined with one that is not cached
+        context = manager.createSSLContext(null, "TLS", "SunX509", "karaf", "server", "other");
+        assertNotSame(context, manager.createSSLContext(null, "TLS", "SunX509", "karaf", "server", "other"));
+    }
+
+    public void testUnwatchLastListenerStopsExecutor() throws Exception {
+        ScheduledExecutorService executor = FileWatcher.getExecutor();
+        assertNotNull(executor);
+        Runnable listener = new Runnable() {
+            public void run() {
+            }
+        };
+        FileWatcher.watch(file, listener);
+        assertSame(executor, FileWatcher.getExecutor());
+
+        FileWatcher.unwatch(listener);
+        assertSame(executor, FileWatcher.getExecutor());
+        keystore.destroy();
+        assertNull(FileWatcher.getExecutor());
+        assertTrue(executor.isShutdown());
+    }
+
+    private SSLContext createContext() throws Exception {
+        return manager.createSSLContext(null, "TLS", "SunX509", "karaf", "server", null);
+    }
+
+    private static class TestKeystoreInstance implements KeystoreInstance {
+
+        private final String name;
+
+        TestKeystoreInstance(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getRank() {
+            return 0;
+        }
+
+        public String[] listPrivateKeys() {
+            return new String[0];
+        }
+
+        public String[] listTrustCertificates() {
+            return new String[0];
+        }
+
+        public Certificate getCertificate(String alias) {
+            return null;
+        }
+
+        public String getCertificateAlias(Certificate cert) {
+            return null;
+        }
+
+        public Certificate[] getCertificateChain(String alias) {
+            return null;
+        }
+
+        public PrivateKey getPrivateKey(String alias) {
+            return null;
+        }
+
+        public boolean isKeystoreLocked() {
+            return false;
+        }
+
+        public boolean isKeyLocked(String keyAlias) {
+            return false;
+        }
+
+        public KeyManager[] getKeyManager(String algorithm, String keyAlias) {
+            return null;
+        }
+
+        public TrustManager[] getTrustManager(String algorithm) {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.jaas.config.impl;
+
+import junit.framework.TestCase;
+
+public class RankedRegistryTest extends TestCase {
+
+    private final RankedRegistry<Service> registry = new RankedRegistry<Service>() {
+        protected String getName(Service service) {
+            return service.name;
+        }
+        protected int getRank(Service service) {
+            return service.rank;
+        }
+    };
+
+    public void testHighestRankWins() {
+        Service low = new Service("karaf", 0);
+        Service high = new Service("karaf", 10);
+        Service other = new Service("other", 20);
+        registry.add(low);
+        registry.add(high);
+        registry.add(other);
+        assertSame(high, registry.get("karaf"));
+        assertSame(other, registry.get("other"));
+        assertNull(registry.get("unknown"));
+        assertNull(registry.get(null));
+    }
+
+    public void testFirstRegisteredWinsOnEqualRank() {
+        Service first = new Service("karaf", 5);
+        Service second = new Service("karaf", 5);
+        registry.add(first);
+        registry.add(second);
+        assertSame(first, registry.get("karaf"));
+    }
+
+    public void testNextBestAfterRemoval() {
+        Service low = new Service("karaf", 0);
+        Service high = new Service("karaf", 10);
+        Service middle = new Service("karaf", 5);
+        registry.add(low);
+        registry.add(high);
+        registry.add(middle);
+        assertSame(high, registry.get("karaf"));
+
+        registry.remove(high);
+        assertSame(middle, registry.get("karaf"));
+        registry.remove(middle);
+        assertSame(low, registry.get("karaf"));
+        registry.remove(low);
+        assertNull(registry.get("karaf"));
+    }
+
+    private static class Service {
+        private final String name;
+        private final int rank;
+
+        Service(String name, int rank) {
+            this.name = name;
+            this.rank = rank;
+        }
+    }
+
+}
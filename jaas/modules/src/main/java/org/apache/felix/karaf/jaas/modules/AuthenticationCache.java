@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.jaas.modules;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.Subject;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+
+/**
+ * Authenticates users against a JAAS realm and keeps the authenticated subjects for
+ * a short time, so that clients reconnecting often do not go through the whole login
+ * chain each time.
+ *
+ * Subjects are cached under a salted digest of the credentials, so that neither the
+ * passwords nor a plain hash of them are kept in memory.  A password change takes
+ * effect for cached credentials once their entry expires.
+ *
+ * Failed attempts are counted per source (usually the remote address): once a source
+ * reaches the maximum number of consecutive failures, all its attempts are rejected
+ * until the lockout period has elapsed since its last failure.
+ */
+public class AuthenticationCache implements AuthenticationCacheMBean {
+
+    /**
+     * Maximum number of sources whose failures are tracked before expired ones are purged.
+     */
+    private static final int MAX_TRACKED_SOURCES = 1024;
+
+    private String realm;
+    private long timeToLive = 60000;
+    private int maxEntries = 256;
+    private int maxFailures = 5;
+    private long lockoutPeriod = 30000;
+
+    private final byte[] salt = new byte[16];
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private final ConcurrentMap<String, Failures> failures = new ConcurrentHashMap<String, Failures>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong loginTime = new AtomicLong();
+    private final AtomicLong maxLoginTime = new AtomicLong();
+
+    public AuthenticationCache() {
+        new SecureRandom().nextBytes(salt);
+    }
+
+    public String getRealm() {
+        return realm;
+    }
+
+    public void setRealm(String realm) {
+        this.realm = realm;
+    }
+
+    /**
+     * Time in milliseconds an authenticated subject is kept, <code>0</code> to disable caching.
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Number of consecutive failures after which a source is locked out, <code>0</code> to disable throttling.
+     */
+    public int getMaxFailures() {
+        return maxFailures;
+    }
+
+    public void setMaxFailures(int maxFailures) {
+        this.maxFailures = maxFailures;
+    }
+
+    /**
+     * Time in milliseconds a source is locked out after its last failure.
+     */
+    public long getLockoutPeriod() {
+        return lockoutPeriod;
+    }
+
+    public void setLockoutPeriod(long lockoutPeriod) {
+        this.lockoutPeriod = lockoutPeriod;
+    }
+
+    /**
+     * Authenticate the given user.
+     *
+     * @param user the user name
+     * @param password the password
+     * @param source the origin of the attempt used for throttling, or <code>null</code> if unknown
+     * @return the authenticated subject, which is read-only if it comes from the cache
+     * @throws LoginException if the authentication failed or the source is locked out
+     */
+    public Subject login(String user, String password, String source) throws LoginException {
+        long now = System.currentTimeMillis();
+        if (isLockedOut(source, now)) {
+            throttled.incrementAndGet();
+            throw new LoginException("Too many failed login attempts");
+        }
+        String key = timeToLive > 0 && user != null && password != null ? getKey(user, password) : null;
+        if (key != null) {
+            Subject subject = get(key, now);
+            if (subject != null) {
+                hits.incrementAndGet();
+                return subject;
+            }
+        }
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        Subject subject;
+        try {
+            subject = doLogin(user, password);
+        } catch (LoginException e) {
+            failed.incrementAndGet();
+            recordFailure(source, System.currentTimeMillis());
+            throw e;
+        } finally {
+            recordLoginTime((System.nanoTime() - start) / 1000000);
+        }
+        if (source != null) {
+            failures.remove(source);
+        }
+        if (key != null) {
+            // the same subject is handed out to several clients
+            subject.setReadOnly();
+            synchronized (entries) {
+                entries.put(key, new Entry(subject, System.currentTimeMillis() + timeToLive));
+            }
+        }
+        return subject;
+    }
+
+    /**
+     * Perform the actual JAAS login.
+     */
+    protected Subject doLogin(final String user, final String password) throws LoginException {
+        LoginContext loginContext = new LoginContext(realm, new CallbackHandler() {
+            public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                for (int i = 0; i < callbacks.length; i++) {
+                    if (callbacks[i] instanceof NameCallback) {
+                        ((NameCallback) callbacks[i]).setName(user);
+                    } else if (callbacks[i] instanceof PasswordCallback) {
+                        ((PasswordCallback) callbacks[i]).setPassword(password != null ? password.toCharArray() : null);
+                    } else {
+                        throw new UnsupportedCallbackException(callbacks[i]);
+                    }
+                }
+            }
+        });
+        loginContext.login();
+        return loginContext.getSubject();
+    }
+
+    private Subject get(String key, long now) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiry <= now) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.subject;
+        }
+    }
+
+    private boolean isLockedOut(String source, long now) {
+        if (source == null || maxFailures <= 0) {
+            return false;
+        }
+        Failures f = failures.get(source);
+        return f != null && f.isLockedOut(now);
+    }
+
+    private void recordFailure(String source, long now) {
+        if (source == null || maxFailures <= 0) {
+            return;
+        }
+        Failures f = failures.get(source);
+        if (f == null) {
+            if (failures.size() >= MAX_TRACKED_SOURCES) {
+                purgeFailures(now);
+            }
+            f = new Failures();
+            Failures old = failures.putIfAbsent(source, f);
+            if (old != null) {
+                f = old;
+            }
+        }
+        f.add(now);
+    }
+
+    private void purgeFailures(long now) {
+        for (Iterator<Failures> it = failures.values().iterator(); it.hasNext();) {
+            if (it.next().isExpired(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private void recordLoginTime(long time) {
+        logins.incrementAndGet();
+        loginTime.addAndGet(time);
+        long max = maxLoginTime.get();
+        while (time > max && !maxLoginTime.compareAndSet(max, time)) {
+            max = maxLoginTime.get();
+        }
+    }
+
+    private String getKey(String user, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            digest.update(user.getBytes("UTF-8"));
+            digest.update((byte) 0);
+            digest.update(password.getBytes("UTF-8"));
+            byte[] hash = digest.digest();
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0x0f, 16));
+                sb.append(Character.forDigit(b & 0x0f, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getFailureCount() {
+        return failed.get();
+    }
+
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    public long getLoginCount() {
+        return logins.get();
+    }
+
+    public long getTotalLoginTime() {
+        return loginTime.get();
+    }
+
+    public double getAverageLoginTime() {
+        long count = logins.get();
+        return count > 0 ? (double) loginTime.get() / count : 0.0;
+    }
+
+    public long getMaxLoginTime() {
+        return maxLoginTime.get();
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        failures.clear();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        failed.set(0);
+        throttled.set(0);
+        logins.set(0);
+        loginTime.set(0);
+        maxLoginTime.set(0);
+    }
+
+    private static class Entry {
+
+        final Subject subject;
+        final long expiry;
+
+        Entry(Subject subject, long expiry) {
+            this.subject = subject;
+            this.expiry = expiry;
+        }
+
+    }
+
+    private class Failures {
+
+        private int count;
+        private long last;
+
+        synchronized void add(long now) {
+            if (isExpired(now)) {
+                count = 0;
+            }
+            count++;
+            last = now;
+        }
+
+        synchronized boolean isLockedOut(long now) {
+            return count >= maxFailures && !isExpired(now);
+        }
+
+        synchronized boolean isExpired(long now) {
+            return now - last >= lockoutPeriod;
+        }
+
+    }
+
+}
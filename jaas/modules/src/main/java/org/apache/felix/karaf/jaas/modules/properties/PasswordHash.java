@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.jaas.modules.properties;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * PBKDF2 (PKCS #5 v2.0) password hashes, using HMAC-SHA1 as pseudo random function.
+ *
+ * A hashed password has the form <code>{PBKDF2}iterations:salt:hash</code>, where the salt and
+ * the hash are hex encoded.  Hashes can be computed with
+ * <code>java org.apache.felix.karaf.jaas.modules.properties.PasswordHash password</code>.
+ */
+public class PasswordHash {
+
+    public static final String PREFIX = "{PBKDF2}";
+
+    public static final int DEFAULT_ITERATIONS = 10000;
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final int HASH_LENGTH = 20;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public static boolean isHashed(String password) {
+        return password != null && password.startsWith(PREFIX);
+    }
+
+    /**
+     * Hash the given password with a random salt.
+     */
+    public static String hash(char[] password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        synchronized (RANDOM) {
+            RANDOM.nextBytes(salt);
+        }
+        byte[] hash = pbkdf2(password, salt, DEFAULT_ITERATIONS, HASH_LENGTH);
+        return PREFIX + DEFAULT_ITERATIONS + ":" + toHex(salt) + ":" + toHex(hash);
+    }
+
+    /**
+     * Check a password against a hash.
+     *
+     * @param password the password to check
+     * @param hashed the hashed password
+     * @throws IllegalArgumentException if the hash is invalid
+     */
+    public static boolean verify(char[] password, String hashed) {
+        return new Verifier(hashed).verify(password);
+    }
+
+    /**
+     * Verifies passwords against a hash.
+     *
+     * Computing the hash of a password is intentionally slow, so the last successfully verified
+     * password is remembered to avoid computing the hash again when the same password is used
+     * repeatedly, e.g. by scripts.  Only a salted digest of that password is kept in memory.
+     */
+    public static class Verifier {
+
+        private final int iterations;
+        private final byte[] salt;
+        private final byte[] hash;
+        private final byte[] cacheSalt;
+        private volatile byte[] verified;
+
+        public Verifier(String hashed) {
+            if (!isHashed(hashed)) {
+                throw new IllegalArgumentException("Not a hashed password");
+            }
+            String[] parts = hashed.substring(PREFIX.length()).split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid hashed password");
+            }
+            this.iterations = Integer.parseInt(parts[0]);
+            this.salt = fromHex(parts[1]);
+            this.hash = fromHex(parts[2]);
+            this.cacheSalt = new byte[SALT_LENGTH];
+            synchronized (RANDOM) {
+                RANDOM.nextBytes(cacheSalt);
+            }
+        }
+
+        public boolean verify(char[] password) {
+            byte[] digest = digest(password);
+            byte[] v = verified;
+            if (v != null && PasswordHash.equals(v, digest)) {
+                return true;
+            }
+            if (PasswordHash.equals(hash, pbkdf2(password, salt, iterations, hash.length))) {
+                verified = digest;
+                return true;
+            }
+            return false;
+        }
+
+        private byte[] digest(char[] password) {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                md.update(cacheSalt);
+                md.update(toBytes(password));
+                return md.digest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+    static byte[] pbkdf2(char[] password, byte[] salt, int iterations, int length) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA1");
+            byte[] key = toBytes(password);
+            // HMAC accepts empty keys but SecretKeySpec does not
+            mac.init(new SecretKeySpec(key.length > 0 ? key : new byte[1], "HmacSHA1"));
+            int hLen = mac.getMacLength();
+            byte[] result = new byte[length];
+            for (int block = 1, offset = 0; offset < length; block++, offset += hLen) {
+                mac.update(salt);
+                mac.update(new byte[] { (byte) (block >>> 24), (byte) (block >>> 16), (byte) (block >>> 8), (byte) block });
+                byte[] u = mac.doFinal();
+                byte[] t = u.clone();
+                for (int i = 1; i < iterations; i++) {
+                    u = mac.doFinal(u);
+                    for (int j = 0; j < t.length; j++) {
+                        t[j] ^= u[j];
+                    }
+                }
+                System.arraycopy(t, 0, result, offset, Math.min(hLen, length - offset));
+            }
+            return result;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to compute password hash", e);
+        }
+    }
+
+    /**
+     * Compare two arrays in a time which does not depend on their content.
+     */
+    static boolean equals(byte[] a, byte[] b) {
+        int diff = a.length ^ b.length;
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            diff |= a[i] ^ b[i];
+        }
+        return diff == 0;
+    }
+
+    static boolean equals(char[] a, char[] b) {
+        int diff = a.length ^ b.length;
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            diff |= a[i] ^ b[i];
+        }
+        return diff == 0;
+    }
+
+    private static byte[] toBytes(char[] chars) {
+        try {
+            return new String(chars).getBytes("UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0x0f, 16));
+            sb.append(Character.forDigit(b & 0x0f, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] fromHex(String s) {
+        if (s.length() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid hex string: " + s);
+        }
+        byte[] bytes = new byte[s.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java " + PasswordHash.class.getName() + " password");
+            System.exit(1);
+        }
+        System.out.println(hash(args[0].toCharArray()));
+    }
+
+}
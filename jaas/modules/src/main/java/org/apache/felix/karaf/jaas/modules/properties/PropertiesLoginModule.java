@@ -21,7 +21,6 @@ import java.io.IOException;
 import java.security.Principal;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
 
 import javax.security.auth.Subject;
@@ -42,6 +41,8 @@ import org.apache.felix.karaf.jaas.modules.UserPrincipal;
 /**
  * JAAS Login module for user / password, based on two properties files.
  *
+ * Users are read through a {@link UserStore} shared by all modules using the same file,
+ * and passwords may be hashed with {@link PasswordHash}.
  */
 public class PropertiesLoginModule implements LoginModule {
 
@@ -68,14 +69,6 @@ public class PropertiesLoginModule implements LoginModule {
     }
 
     public boolean login() throws LoginException {
-        Properties users = new Properties();
-        File f = new File(usersFile);
-        try {
-            users.load(new java.io.FileInputStream(f));
-        } catch (IOException ioe) {
-            throw new LoginException("Unable to load user properties file " + f);
-        }
-
         Callback[] callbacks = new Callback[2];
 
         callbacks[0] = new NameCallback("Username: ");
@@ -93,29 +86,26 @@ public class PropertiesLoginModule implements LoginModule {
             tmpPassword = new char[0];
         }
 
-        String userInfos = null;
-
+        File f = new File(usersFile);
+        UserStore.User userInfos;
         try {
-            userInfos = (String) users.get(user);
-        } catch (NullPointerException e) {
-            //error handled in the next statement
+            userInfos = UserStore.getInstance(f).getUser(user);
+        } catch (IOException ioe) {
+            throw new LoginException("Unable to load user properties file " + f);
         }
         if (userInfos == null) {
             throw new FailedLoginException("User " + user + " does not exist");
         }
-        String[] infos = userInfos.split(",");
-        if (!new String(tmpPassword).equals(infos[0])) {
+        if (!userInfos.checkPassword(tmpPassword)) {
             throw new FailedLoginException("Password for " + user + " does not match");
         }
 
         principals = new HashSet<Principal>();
         principals.add(new UserPrincipal(user));
-        for (int i = 1; i < infos.length; i++) {
-            principals.add(new RolePrincipal(infos[i]));
+        for (String role : userInfos.getRoles()) {
+            principals.add(new RolePrincipal(role));
         }
 
-        users.clear();
-
         if (debug) {
             LOG.debug("Successfully logged in " + user);
         }
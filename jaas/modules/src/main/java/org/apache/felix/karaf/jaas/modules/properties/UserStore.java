@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.jaas.modules.properties;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The users defined in a properties file, shared by all the login modules using this file.
+ *
+ * Each line of the file has the form <code>user=password,role1,role2,...</code>, where the
+ * password is either in clear text or hashed with {@link PasswordHash}.  The file is parsed
+ * once and parsed again only when its size or modification date changes.
+ */
+public class UserStore {
+
+    private static final Log LOG = LogFactory.getLog(UserStore.class);
+
+    private static final ConcurrentMap<String, UserStore> STORES = new ConcurrentHashMap<String, UserStore>();
+
+    private final File file;
+    private volatile Users users;
+
+    UserStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Retrieve the store for the given file.
+     */
+    public static UserStore getInstance(File file) {
+        String path = file.getAbsolutePath();
+        UserStore store = STORES.get(path);
+        if (store == null) {
+            store = new UserStore(file);
+            UserStore existing = STORES.putIfAbsent(path, store);
+            if (existing != null) {
+                store = existing;
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Retrieve a user.
+     *
+     * @param name the user name
+     * @return the user or <code>null</code> if there is no such user
+     * @throws IOException if the file can not be read
+     */
+    public User getUser(String name) throws IOException {
+        if (name == null) {
+            return null;
+        }
+        return getUsers().users.get(name);
+    }
+
+    private Users getUsers() throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Users u = users;
+        if (u == null || u.length != length || u.lastModified != lastModified) {
+            synchronized (this) {
+                u = users;
+                if (u == null || u.length != length || u.lastModified != lastModified) {
+                    u = load(length, lastModified);
+                    users = u;
+                }
+            }
+        }
+        return u;
+    }
+
+    private Users load(long length, long lastModified) throws IOException {
+        Properties props = new Properties();
+        InputStream is = new FileInputStream(file);
+        try {
+            props.load(is);
+        } finally {
+            is.close();
+        }
+        Map<String, User> users = new HashMap<String, User>();
+        for (Map.Entry<Object, Object> entry : props.entrySet()) {
+            String name = (String) entry.getKey();
+            String[] infos = ((String) entry.getValue()).split(",");
+            String[] roles = new String[infos.length - 1];
+            for (int i = 0; i < roles.length; i++) {
+                roles[i] = infos[i + 1].trim();
+            }
+            users.put(name, new User(name, infos[0], roles));
+        }
+        return new Users(length, lastModified, Collections.unmodifiableMap(users));
+    }
+
+    private static class Users {
+
+        private final long length;
+        private final long lastModified;
+        private final Map<String, User> users;
+
+        Users(long length, long lastModified, Map<String, User> users) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.users = users;
+        }
+
+    }
+
+    /**
+     * A user with its password and roles.
+     */
+    public static class User {
+
+        private final String name;
+        private final String password;
+        private final String[] roles;
+        private final boolean hashed;
+        private final PasswordHash.Verifier verifier;
+
+        User(String name, String password, String[] roles) {
+            this.name = name;
+            this.password = password;
+            this.roles = roles;
+            this.hashed = PasswordHash.isHashed(password);
+            PasswordHash.Verifier verifier = null;
+            if (hashed) {
+                try {
+                    verifier = new PasswordHash.Verifier(password);
+                } catch (IllegalArgumentException e) {
+                    LOG.warn("Invalid password hash for user " + name);
+                }
+            }
+            this.verifier = verifier;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String[] getRoles() {
+            return roles.clone();
+        }
+
+        /**
+         * Check the given password against the password of this user.
+         */
+        public boolean checkPassword(char[] password) {
+            if (hashed) {
+                return verifier != null && verifier.verify(password);
+            }
+            return PasswordHash.equals(this.password.toCharArray(), password);
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.jaas.modules;
+
+import javax.security.auth.Subject;
+import javax.security.auth.login.LoginException;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link org.apache.felix.karaf.jaas.modules.AuthenticationCache}
+ */
+public class AuthenticationCacheTest extends TestCase {
+
+    private int logins;
+
+    private AuthenticationCache createCache() {
+        return new AuthenticationCache() {
+            protected Subject doLogin(String user, String password) throws LoginException {
+                logins++;
+                if (!"karaf".equals(user) || !"secret".equals(password)) {
+                    throw new LoginException("Bad credentials");
+                }
+                Subject subject = new Subject();
+                subject.getPrincipals().add(new UserPrincipal(user));
+                return subject;
+            }
+        };
+    }
+
+    public void testCache() throws Exception {
+        AuthenticationCache cache = createCache();
+        Subject s1 = cache.login("karaf", "secret", "host1");
+        Subject s2 = cache.login("karaf", "secret", "host2");
+        assertSame(s1, s2);
+        assertTrue(s1.isReadOnly());
+        assertEquals(1, logins);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getLoginCount());
+        assertEquals(1, cache.getSize());
+
+        try {
+            cache.login("karaf", "wrong", "host1");
+            fail("Expected a LoginException");
+        } catch (LoginException e) {
+            // expected
+        }
+        assertEquals(2, logins);
+        assertEquals(1, cache.getFailureCount());
+
+        cache.clear();
+        assertNotSame(s1, cache.login("karaf", "secret", "host1"));
+        assertEquals(3, logins);
+    }
+
+    public void testExpiry() throws Exception {
+        AuthenticationCache cache = createCache();
+        cache.setTimeToLive(1);
+        cache.login("karaf", "secret", null);
+        Thread.sleep(10);
+        cache.login("karaf", "secret", null);
+        assertEquals(2, logins);
+
+        cache.setTimeToLive(0);
+        cache.login("karaf", "secret", null);
+        cache.login("karaf", "secret", null);
+        assertEquals(4, logins);
+        assertEquals(0, cache.getHitCount());
+    }
+
+    public void testThrottling() throws Exception {
+        AuthenticationCache cache = createCache();
+        cache.setMaxFailures(2);
+        cache.setLockoutPeriod(60000);
+        Subject subject = cache.login("karaf", "secret", "host1");
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.login("karaf", "wrong", "host1");
+                fail("Expected a LoginException");
+            } catch (LoginException e) {
+                // expected
+            }
+        }
+        assertEquals(3, logins);
+        try {
+            // rejected without even checking the cache
+            cache.login("karaf", "secret", "host1");
+            fail("Expected a LoginException");
+        } catch (LoginException e) {
+            // expected
+        }
+        assertEquals(3, logins);
+        assertEquals(1, cache.getThrottledCount());
+
+        // other sources are not affected
+        assertSame(subject, cache.login("karaf", "secret", "host2"));
+
+        cache.setLockoutPeriod(0);
+        assertSame(subject, cache.login("karaf", "secret", "host1"));
+    }
+
+}
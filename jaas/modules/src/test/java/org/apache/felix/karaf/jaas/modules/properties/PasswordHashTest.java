@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.jaas.modules.properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link org.apache.felix.karaf.jaas.modules.properties.PasswordHash}
+ */
+public class PasswordHashTest extends TestCase {
+
+    /*
+     * Test vectors from RFC 6070
+     */
+    public void testPbkdf2() {
+        assertEquals("0c60c80f961f0e71f3a9b524af6012062fe037a6",
+                     hex(PasswordHash.pbkdf2("password".toCharArray(), "salt".getBytes(), 1, 20)));
+        assertEquals("ea6c014dc72d6f8ccd1ed92ace1d41f0d8de8957",
+                     hex(PasswordHash.pbkdf2("password".toCharArray(), "salt".getBytes(), 2, 20)));
+        assertEquals("3d2eec4fe41c849b80c8d83662c0e44a8b291a964cf2f07038",
+                     hex(PasswordHash.pbkdf2("passwordPASSWORDpassword".toCharArray(),
+                                             "saltSALTsaltSALTsaltSALTsaltSALTsalt".getBytes(), 4096, 25)));
+    }
+
+    public void testHashAndVerify() {
+        String hash = PasswordHash.hash("secret".toCharArray());
+        assertTrue(PasswordHash.isHashed(hash));
+        assertTrue(hash.startsWith("{PBKDF2}" + PasswordHash.DEFAULT_ITERATIONS + ":"));
+        assertTrue(PasswordHash.verify("secret".toCharArray(), hash));
+        assertFalse(PasswordHash.verify("Secret".toCharArray(), hash));
+        assertFalse(PasswordHash.verify(new char[0], hash));
+        // hashes are salted
+        assertFalse(hash.equals(PasswordHash.hash("secret".toCharArray())));
+    }
+
+    public void testVerifier() {
+        PasswordHash.Verifier verifier = new PasswordHash.Verifier(PasswordHash.hash("secret".toCharArray()));
+        assertTrue(verifier.verify("secret".toCharArray()));
+        // second check uses the cached digest
+        assertTrue(verifier.verify("secret".toCharArray()));
+        assertFalse(verifier.verify("other".toCharArray()));
+        assertTrue(verifier.verify("secret".toCharArray()));
+    }
+
+    public void testInvalidHash() {
+        try {
+            new PasswordHash.Verifier("{PBKDF2}foo");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0x0f, 16));
+            sb.append(Character.forDigit(b & 0x0f, 16));
+        }
+        return sb.toString();
+    }
+
+}
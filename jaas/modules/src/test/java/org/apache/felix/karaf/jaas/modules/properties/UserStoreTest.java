@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.jaas.modules.properties;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link org.apache.felix.karaf.jaas.modules.properties.UserStore}
+ */
+public class UserStoreTest extends TestCase {
+
+    private File file;
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("users", ".properties");
+    }
+
+    public void tearDown() {
+        file.delete();
+    }
+
+    public void testUsers() throws Exception {
+        write("karaf=karaf,admin, manager\nguest=guest\n");
+        UserStore store = UserStore.getInstance(file);
+        assertSame(store, UserStore.getInstance(new File(file.getAbsolutePath())));
+
+        UserStore.User karaf = store.getUser("karaf");
+        assertEquals("karaf", karaf.getName());
+        assertEquals(Arrays.asList("admin", "manager"), Arrays.asList(karaf.getRoles()));
+        assertTrue(karaf.checkPassword("karaf".toCharArray()));
+        assertFalse(karaf.checkPassword("karaf2".toCharArray()));
+        assertFalse(karaf.checkPassword(new char[0]));
+
+        assertEquals(0, store.getUser("guest").getRoles().length);
+        assertNull(store.getUser("unknown"));
+        assertNull(store.getUser(null));
+    }
+
+    public void testReload() throws Exception {
+        write("karaf=karaf,admin\n");
+        UserStore store = UserStore.getInstance(file);
+        UserStore.User karaf = store.getUser("karaf");
+        assertSame(karaf, store.getUser("karaf"));
+
+        write("karaf=newpassword,admin\n");
+        file.setLastModified(file.lastModified() + 2000);
+        UserStore.User reloaded = store.getUser("karaf");
+        assertNotSame(karaf, reloaded);
+        assertTrue(reloaded.checkPassword("newpassword".toCharArray()));
+    }
+
+    public void testHashedPasswords() throws Exception {
+        write("karaf=" + PasswordHash.hash("secret".toCharArray()) + ",admin\n"
+                + "broken={PBKDF2}invalid,admin\n");
+        UserStore store = UserStore.getInstance(file);
+        assertTrue(store.getUser("karaf").checkPassword("secret".toCharArray()));
+        assertFalse(store.getUser("karaf").checkPassword("karaf".toCharArray()));
+        assertFalse(store.getUser("broken").checkPassword("{PBKDF2}invalid".toCharArray()));
+    }
+
+    public void testMissingFile() throws Exception {
+        file.delete();
+        try {
+            UserStore.getInstance(file).getUser("karaf");
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void write(String content) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("ISO-8859-1"));
+        } finally {
+            os.close();
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Implementation of {@link BulkAttributeReaderMBean}.
+ */
+public class BulkAttributeReader implements BulkAttributeReaderMBean, MBeanRegistration {
+
+    private MBeanServer server;
+
+    public Map getAttributes(String pattern, String[] attributes) throws Exception {
+        Map<ObjectName, AttributeList> result = new HashMap<ObjectName, AttributeList>();
+        for (Object o : server.queryNames(new ObjectName(pattern), null)) {
+            ObjectName name = (ObjectName) o;
+            try {
+                String[] names = attributes != null ? attributes : getReadableAttributes(name);
+                result.put(name, server.getAttributes(name, names));
+            } catch (InstanceNotFoundException e) {
+                // unregistered meanwhile
+            }
+        }
+        return result;
+    }
+
+    private String[] getReadableAttributes(ObjectName name) throws Exception {
+        List<String> names = new ArrayList<String>();
+        for (MBeanAttributeInfo info : server.getMBeanInfo(name).getAttributes()) {
+            if (info.isReadable()) {
+                names.add(info.getName());
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        this.server = server;
+        return name;
+    }
+
+    public void postRegister(Boolean registrationDone) {
+    }
+
+    public void preDeregister() throws Exception {
+    }
+
+    public void postDeregister() {
+        this.server = null;
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.util.Map;
+
+/**
+ * Reads attributes of several MBeans in a single round trip, so that monitoring
+ * tools do not need one remote call per MBean.
+ */
+public interface BulkAttributeReaderMBean {
+
+    /**
+     * Read the given attributes of all the MBeans matching a pattern.
+     * MBeans which go away while being read are left out.
+     *
+     * @param pattern an object name pattern
+     * @param attributes the attributes to read, or <code>null</code> to read all readable attributes
+     * @return the attributes read, keyed by object name
+     */
+    Map getAttributes(String pattern, String[] attributes) throws Exception;
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Snapshot section listing the state of each bundle, keyed by bundle id.
+ */
+public class BundleSnapshotProvider implements SnapshotProvider {
+
+    private BundleContext bundleContext;
+
+    public BundleContext getBundleContext() {
+        return bundleContext;
+    }
+
+    public void setBundleContext(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
+    public String getName() {
+        return "bundles";
+    }
+
+    public boolean isMetric() {
+        return false;
+    }
+
+    public Map<String, String> getEntries() {
+        Map<String, String> entries = new HashMap<String, String>();
+        for (Bundle bundle : bundleContext.getBundles()) {
+            Object version = bundle.getHeaders().get("Bundle-Version");
+            entries.put(Long.toString(bundle.getBundleId()),
+                        getState(bundle) + " " + bundle.getSymbolicName() + (version != null ? "/" + version : ""));
+        }
+        return entries;
+    }
+
+    static String getState(Bundle bundle) {
+        switch (bundle.getState()) {
+            case Bundle.INSTALLED:   return "INSTALLED";
+            case Bundle.RESOLVED:    return "RESOLVED";
+            case Bundle.STARTING:    return "STARTING";
+            case Bundle.ACTIVE:      return "ACTIVE";
+            case Bundle.STOPPING:    return "STOPPING";
+            case Bundle.UNINSTALLED: return "UNINSTALLED";
+            default:                 return "UNKNOWN";
+        }
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
+import java.security.AccessController;
+import java.security.Principal;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMRuntimeException;
+import javax.management.MBeanServer;
+import javax.management.NotCompliantMBeanException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import javax.management.remote.JMXAuthenticator;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.MBeanServerForwarder;
+import javax.security.auth.Subject;
+
+/**
+ * Enforces limits on the connections to a JMX connector server and keeps
+ * statistics about them.
+ *
+ * New connections are counted when they authenticate: past the maximum number
+ * of connections, authentication is refused.  Each connection gets its own
+ * subject carrying a {@link ConnectionPrincipal}, which is how requests and
+ * connection notifications are matched back to the connection.
+ *
+ * Requests go through a {@link MBeanServerForwarder} which counts them and, when a
+ * maximum number of concurrent requests is set, makes them wait for a free slot.
+ */
+public class ConnectionManager extends StandardMBean implements ConnectionManagerMBean, NotificationListener {
+
+    static final CompositeType CONNECTION_TYPE;
+    static final TabularType CONNECTION_TABLE;
+
+    static {
+        CONNECTION_TYPE = createConnectionType();
+        CONNECTION_TABLE = createConnectionTableType();
+    }
+
+    private int maxConnections;
+    private int maxConcurrentRequests;
+    private long requestTimeout = 30000;
+
+    private final ConcurrentMap<String, Connection> connections = new ConcurrentHashMap<String, Connection>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong totalConnections = new AtomicLong();
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicLong totalRequests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private Semaphore permits;
+
+    public ConnectionManager() throws NotCompliantMBeanException {
+        super(ConnectionManagerMBean.class);
+    }
+
+    /**
+     * Maximum number of open connections, <code>0</code> for no limit.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Maximum number of requests processed at the same time, <code>0</code> for no limit.
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.permits = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests, true) : null;
+    }
+
+    /**
+     * Time in milliseconds a request waits for a free slot before being rejected.
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Wrap the authenticator of the connector server so that connections are
+     * counted and limited.
+     *
+     * @param authenticator the authenticator to delegate to, may be <code>null</code>
+     */
+    public JMXAuthenticator wrap(final JMXAuthenticator authenticator) {
+        return new JMXAuthenticator() {
+            public Subject authenticate(Object credentials) {
+                return ConnectionManager.this.authenticate(authenticator, credentials);
+            }
+        };
+    }
+
+    Subject authenticate(JMXAuthenticator authenticator, Object credentials) {
+        if (maxConnections > 0 && connections.size() >= maxConnections) {
+            rejectedConnections.incrementAndGet();
+            throw new SecurityException("Too many JMX connections");
+        }
+        Subject subject = authenticator != null ? authenticator.authenticate(credentials) : null;
+        String user = credentials instanceof String[] && ((String[]) credentials).length > 0
+                            ? ((String[]) credentials)[0] : null;
+        Connection connection = new Connection("jmx-connection-" + sequence.incrementAndGet(), user, getClientHost());
+        synchronized (connections) {
+            if (maxConnections > 0 && connections.size() >= maxConnections) {
+                rejectedConnections.incrementAndGet();
+                throw new SecurityException("Too many JMX connections");
+            }
+            connections.put(connection.principal.getName(), connection);
+        }
+        totalConnections.incrementAndGet();
+        // the subject may be shared, so give each connection its own copy
+        Set<Principal> principals = new HashSet<Principal>();
+        Set<Object> publicCredentials = new HashSet<Object>();
+        Set<Object> privateCredentials = new HashSet<Object>();
+        if (subject != null) {
+            principals.addAll(subject.getPrincipals());
+            publicCredentials.addAll(subject.getPublicCredentials());
+            privateCredentials.addAll(subject.getPrivateCredentials());
+        }
+        principals.add(connection.principal);
+        return new Subject(true, principals, publicCredentials, privateCredentials);
+    }
+
+    /**
+     * Listens to the connection notifications of the connector server to forget closed connections.
+     */
+    public void handleNotification(Notification notification, Object handback) {
+        if (notification instanceof JMXConnectionNotification) {
+            String type = notification.getType();
+            if (JMXConnectionNotification.CLOSED.equals(type) || JMXConnectionNotification.FAILED.equals(type)) {
+                String id = ((JMXConnectionNotification) notification).getConnectionId();
+                // connection ids have the form "protocol:client-address principal1;principal2 ..."
+                for (String token : id.split(" ")) {
+                    for (String name : token.split(";")) {
+                        if (connections.remove(name) != null) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a forwarder to install on the connector server, which counts and limits requests.
+     */
+    public MBeanServerForwarder newForwarder() {
+        return (MBeanServerForwarder) Proxy.newProxyInstance(MBeanServerForwarder.class.getClassLoader(),
+                new Class[] { MBeanServerForwarder.class }, new Forwarder());
+    }
+
+    Object invoke(MBeanServer server, Method method, Object[] args) throws Throwable {
+        Connection connection = getCurrentConnection();
+        if (connection != null) {
+            connection.requests.incrementAndGet();
+            connection.lastRequest = System.currentTimeMillis();
+        }
+        totalRequests.incrementAndGet();
+        Semaphore p = permits;
+        if (p != null && !p.tryAcquire(requestTimeout, TimeUnit.MILLISECONDS)) {
+            rejectedRequests.incrementAndGet();
+            throw new JMRuntimeException("Too many concurrent JMX requests");
+        }
+        activeRequests.incrementAndGet();
+        try {
+            return method.invoke(server, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            activeRequests.decrementAndGet();
+            if (p != null) {
+                p.release();
+            }
+        }
+    }
+
+    private Connection getCurrentConnection() {
+        Subject subject = Subject.getSubject(AccessController.getContext());
+        if (subject != null) {
+            for (ConnectionPrincipal principal : subject.getPrincipals(ConnectionPrincipal.class)) {
+                return connections.get(principal.getName());
+            }
+        }
+        return null;
+    }
+
+    private static String getClientHost() {
+        try {
+            return RemoteServer.getClientHost();
+        } catch (ServerNotActiveException e) {
+            return null;
+        }
+    }
+
+    public int getActiveConnections() {
+        return connections.size();
+    }
+
+    public long getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public long getRejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    public TabularData getConnections() {
+        long now = System.currentTimeMillis();
+        TabularDataSupport table = new TabularDataSupport(CONNECTION_TABLE);
+        for (Map.Entry<String, Connection> entry : connections.entrySet()) {
+            Connection c = entry.getValue();
+            long requests = c.requests.get();
+            long age = Math.max(1, now - c.opened);
+            Object[] itemValues = new Object[] {
+                    entry.getKey(), c.user, c.host, c.opened, requests,
+                    requests * 1000.0 / age, now - c.lastRequest };
+            try {
+                table.put(new CompositeDataSupport(CONNECTION_TYPE, CONNECTION, itemValues));
+            } catch (OpenDataException e) {
+                throw new IllegalStateException("Cannot create connection open data", e);
+            }
+        }
+        return table;
+    }
+
+    private static CompositeType createConnectionType() {
+        try {
+            String desc = "This type describes a JMX connection";
+            OpenType[] itemTypes = new OpenType[] {
+                    SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.LONG,
+                    SimpleType.LONG, SimpleType.DOUBLE, SimpleType.LONG };
+            String[] descriptions = new String[] {
+                    "The id of the connection.",
+                    "The user name the connection has been opened with.",
+                    "The client host.",
+                    "The time the connection has been opened at, in milliseconds since the epoch.",
+                    "The number of requests made on this connection.",
+                    "The average number of requests per second since the connection has been opened.",
+                    "The time in milliseconds since the last request." };
+            return new CompositeType("Connection", desc, CONNECTION, descriptions, itemTypes);
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build connection type", e);
+        }
+    }
+
+    private static TabularType createConnectionTableType() {
+        try {
+            return new TabularType("Connections", "Table of JMX connections", CONNECTION_TYPE,
+                    new String[] { CONNECTION_ID });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build connection table type", e);
+        }
+    }
+
+    /**
+     * Identifies the connection a subject has been created for.
+     */
+    public static class ConnectionPrincipal implements Principal {
+
+        private final String name;
+
+        public ConnectionPrincipal(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String toString() {
+            return "ConnectionPrincipal[" + name + "]";
+        }
+
+    }
+
+    private static class Connection {
+
+        final ConnectionPrincipal principal;
+        final String user;
+        final String host;
+        final long opened;
+        final AtomicLong requests = new AtomicLong();
+        volatile long lastRequest;
+
+        Connection(String id, String user, String host) {
+            this.principal = new ConnectionPrincipal(id);
+            this.user = user;
+            this.host = host;
+            this.opened = System.currentTimeMillis();
+            this.lastRequest = opened;
+        }
+
+    }
+
+    private class Forwarder implements InvocationHandler {
+
+        private MBeanServer server;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getMBeanServer") && method.getParameterTypes().length == 0) {
+                return server;
+            } else if (name.equals("setMBeanServer") && method.getParameterTypes().length == 1) {
+                server = (MBeanServer) args[0];
+                return null;
+            } else if (name.equals("equals") && method.getParameterTypes().length == 1) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode") && method.getParameterTypes().length == 0) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("toString") && method.getParameterTypes().length == 0) {
+                return "MBeanServerForwarder[" + server + "]";
+            }
+            return ConnectionManager.this.invoke(server, method, args);
+        }
+
+    }
+
+}
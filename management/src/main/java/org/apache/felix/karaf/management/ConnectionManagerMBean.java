@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * Limits and statistics of the connections to the JMX connector.
+ */
+public interface ConnectionManagerMBean {
+
+    String CONNECTION_ID = "Id";
+    String CONNECTION_USER = "User";
+    String CONNECTION_HOST = "Host";
+    String CONNECTION_OPENED = "Opened";
+    String CONNECTION_REQUESTS = "Requests";
+    String CONNECTION_REQUEST_RATE = "RequestRate";
+    String CONNECTION_IDLE_TIME = "IdleTime";
+
+    String[] CONNECTION = { CONNECTION_ID, CONNECTION_USER, CONNECTION_HOST, CONNECTION_OPENED,
+                            CONNECTION_REQUESTS, CONNECTION_REQUEST_RATE, CONNECTION_IDLE_TIME };
+
+    // Attributes
+    int getMaxConnections();
+    int getActiveConnections();
+    long getTotalConnections();
+    long getRejectedConnections();
+    int getMaxConcurrentRequests();
+    int getActiveRequests();
+    long getTotalRequests();
+    long getRejectedRequests();
+    TabularData getConnections();
+
+}
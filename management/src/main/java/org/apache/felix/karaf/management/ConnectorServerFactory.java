@@ -17,23 +17,32 @@
 package org.apache.felix.karaf.management;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 import javax.management.JMException;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import javax.management.remote.JMXAuthenticator;
 import javax.management.remote.JMXConnectorServer;
 import javax.management.remote.JMXConnectorServerFactory;
 import javax.management.remote.JMXServiceURL;
 
 public class ConnectorServerFactory {
 
+    /**
+     * Environment property of the JDK RMI connector closing connections idle for this long, in milliseconds.
+     */
+    static final String SERVER_CONNECTION_TIMEOUT = "jmx.remote.x.server.connection.timeout";
+
     private MBeanServer server;
     private String serviceUrl;
     private Map environment;
     private ObjectName objectName;
     private boolean threaded = false;
     private boolean daemon = false;
+    private long idleTimeout = 0;
+    private ConnectionManager connectionManager;
     private JMXConnectorServer connectorServer;
 
     public MBeanServer getServer() {
@@ -84,12 +93,50 @@ public class ConnectorServerFactory {
         this.daemon = daemon;
     }
 
+    /**
+     * Time in milliseconds after which idle connections are closed, <code>0</code> to keep the connector default.
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public ConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    public void setConnectionManager(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    JMXConnectorServer getConnectorServer() {
+        return connectorServer;
+    }
+
     public void init() throws Exception {
         if (this.server == null) {
             throw new IllegalArgumentException("server must be set");
         }
         JMXServiceURL url = new JMXServiceURL(this.serviceUrl);
-        this.connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(url, this.environment, this.server);
+        Map env = new HashMap();
+        if (this.environment != null) {
+            env.putAll(this.environment);
+        }
+        if (this.idleTimeout > 0) {
+            env.put(SERVER_CONNECTION_TIMEOUT, Long.valueOf(this.idleTimeout));
+        }
+        if (this.connectionManager != null) {
+            JMXAuthenticator authenticator = (JMXAuthenticator) env.get(JMXConnectorServer.AUTHENTICATOR);
+            env.put(JMXConnectorServer.AUTHENTICATOR, this.connectionManager.wrap(authenticator));
+        }
+        this.connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(url, env, this.server);
+        if (this.connectionManager != null) {
+            this.connectorServer.setMBeanServerForwarder(this.connectionManager.newForwarder());
+            this.connectorServer.addNotificationListener(this.connectionManager, null, null);
+        }
         if (this.objectName != null) {
             this.server.registerMBean(this.connectorServer, this.objectName);
         }
@@ -16,28 +16,39 @@
  */
 package org.apache.felix.karaf.management;
 
-import java.io.IOException;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
 
 import javax.management.remote.JMXAuthenticator;
 import javax.security.auth.Subject;
-import javax.security.auth.callback.Callback;
-import javax.security.auth.callback.CallbackHandler;
-import javax.security.auth.callback.NameCallback;
-import javax.security.auth.callback.PasswordCallback;
-import javax.security.auth.callback.UnsupportedCallbackException;
-import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 
+import org.apache.felix.karaf.jaas.modules.AuthenticationCache;
+
+/**
+ * Authenticates JMX connections against a JAAS realm.
+ *
+ * Authenticated subjects are cached for a short time and failed attempts are throttled
+ * per client host, see {@link AuthenticationCache}.
+ */
 public class JaasAuthenticator implements JMXAuthenticator {
 
-    private String realm;
+    private AuthenticationCache cache = new AuthenticationCache();
 
     public String getRealm() {
-        return realm;
+        return cache.getRealm();
     }
 
     public void setRealm(String realm) {
-        this.realm = realm;
+        cache.setRealm(realm);
+    }
+
+    public AuthenticationCache getCache() {
+        return cache;
+    }
+
+    public void setCache(AuthenticationCache cache) {
+        this.cache = cache;
     }
 
     public Subject authenticate(Object credentials) throws SecurityException {
@@ -50,23 +61,18 @@ public class JaasAuthenticator implements JMXAuthenticator {
             throw new IllegalArgumentException("Expected String[2] but length was " + params.length);
         }
         try {
-            LoginContext loginContext = new LoginContext(realm, new CallbackHandler() {
-                public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
-                    for (int i = 0; i < callbacks.length; i++) {
-                        if (callbacks[i] instanceof NameCallback) {
-                            ((NameCallback) callbacks[i]).setName(params[0]);
-                        } else if (callbacks[i] instanceof PasswordCallback) {
-                            ((PasswordCallback) callbacks[i]).setPassword((params[1].toCharArray()));
-                        } else {
-                            throw new UnsupportedCallbackException(callbacks[i]);
-                        }
-                    }
-                }
-            });
-            loginContext.login();
-            return loginContext.getSubject();
+            return cache.login(params[0], params[1], getClientHost());
         } catch (LoginException e) {
             throw new SecurityException("Authentication failed", e);
         }
     }
+
+    private static String getClientHost() {
+        try {
+            return RemoteServer.getClientHost();
+        } catch (ServerNotActiveException e) {
+            // not called from a RMI connection
+            return null;
+        }
+    }
 }
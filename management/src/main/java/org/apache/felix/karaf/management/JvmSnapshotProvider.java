@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Snapshot section with the main figures of the JVM.
+ */
+public class JvmSnapshotProvider implements SnapshotProvider {
+
+    public String getName() {
+        return "jvm";
+    }
+
+    public boolean isMetric() {
+        return true;
+    }
+
+    public Map<String, String> getEntries() {
+        Map<String, String> entries = new HashMap<String, String>();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        entries.put("heap.used", Long.toString(heap.getUsed()));
+        entries.put("heap.max", Long.toString(heap.getMax()));
+        entries.put("nonheap.used", Long.toString(nonHeap.getUsed()));
+        entries.put("threads", Integer.toString(ManagementFactory.getThreadMXBean().getThreadCount()));
+        entries.put("threads.peak", Integer.toString(ManagementFactory.getThreadMXBean().getPeakThreadCount()));
+        entries.put("classes", Integer.toString(ManagementFactory.getClassLoadingMXBean().getLoadedClassCount()));
+        entries.put("uptime", Long.toString(ManagementFactory.getRuntimeMXBean().getUptime()));
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+        entries.put("gc.count", Long.toString(gcCount));
+        entries.put("gc.time", Long.toString(gcTime));
+        return entries;
+    }
+
+}
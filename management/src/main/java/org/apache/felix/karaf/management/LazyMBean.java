@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.NotCompliantMBeanException;
+import javax.management.NotificationBroadcaster;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.RuntimeOperationsException;
+import javax.management.StandardMBean;
+
+import org.osgi.service.blueprint.container.BlueprintContainer;
+
+/**
+ * A MBean standing for a blueprint component which is only created when the MBean
+ * is first accessed.
+ *
+ * Until then, the MBean information is built from the management interface alone.
+ * The component should be declared with <code>activation="lazy"</code> and is
+ * retrieved from the blueprint container by id, which is best given using an
+ * <code>idref</code> so that blueprint does not create it when wiring this bean.
+ */
+public class LazyMBean implements DynamicMBean, NotificationEmitter, MBeanRegistration {
+
+    private BlueprintContainer blueprintContainer;
+    private String componentId;
+    private Class mbeanInterface;
+
+    private volatile MBeanInfo info;
+    private volatile DynamicMBean target;
+    private Object instance;
+    private MBeanServer server;
+    private ObjectName name;
+
+    public LazyMBean() {
+    }
+
+    public LazyMBean(BlueprintContainer blueprintContainer, String componentId, Class mbeanInterface) {
+        this.blueprintContainer = blueprintContainer;
+        this.componentId = componentId;
+        this.mbeanInterface = mbeanInterface;
+    }
+
+    public void setBlueprintContainer(BlueprintContainer blueprintContainer) {
+        this.blueprintContainer = blueprintContainer;
+    }
+
+    public void setComponentId(String componentId) {
+        this.componentId = componentId;
+    }
+
+    public void setMbeanInterface(Class mbeanInterface) {
+        this.mbeanInterface = mbeanInterface;
+    }
+
+    /**
+     * Whether the underlying component has been created.
+     */
+    public boolean isCreated() {
+        return target != null;
+    }
+
+    /**
+     * Retrieve the underlying component, creating it if needed.
+     */
+    protected synchronized DynamicMBean getTarget() throws MBeanException {
+        if (target == null) {
+            try {
+                Object object = createInstance();
+                DynamicMBean mbean = object instanceof DynamicMBean
+                                        ? (DynamicMBean) object : new StandardMBean(object, mbeanInterface);
+                if (object instanceof MBeanRegistration && server != null) {
+                    ((MBeanRegistration) object).preRegister(server, name);
+                    ((MBeanRegistration) object).postRegister(Boolean.TRUE);
+                }
+                instance = object;
+                target = mbean;
+            } catch (MBeanException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new MBeanException(e, "Unable to create MBean " + componentId);
+            }
+        }
+        return target;
+    }
+
+    protected Object createInstance() throws Exception {
+        return blueprintContainer.getComponentInstance(componentId);
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        DynamicMBean t = target;
+        if (t != null) {
+            return t.getMBeanInfo();
+        }
+        if (info == null) {
+            info = createInfo(mbeanInterface);
+        }
+        return info;
+    }
+
+    /**
+     * Build the MBean information of a standard MBean from its interface only.
+     */
+    static MBeanInfo createInfo(Class mbeanInterface) {
+        Object stub = Proxy.newProxyInstance(mbeanInterface.getClassLoader(), new Class[] { mbeanInterface },
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    throw new UnsupportedOperationException();
+                }
+            });
+        try {
+            return new StandardMBean(stub, mbeanInterface).getMBeanInfo();
+        } catch (NotCompliantMBeanException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        return getTarget().getAttribute(attribute);
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+        getTarget().setAttribute(attribute);
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        try {
+            return getTarget().getAttributes(attributes);
+        } catch (MBeanException e) {
+            throw new RuntimeOperationsException(new IllegalStateException(e.getMessage()), e.getMessage());
+        }
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        try {
+            return getTarget().setAttributes(attributes);
+        } catch (MBeanException e) {
+            throw new RuntimeOperationsException(new IllegalStateException(e.getMessage()), e.getMessage());
+        }
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+        return getTarget().invoke(actionName, params, signature);
+    }
+
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+        getBroadcaster().addNotificationListener(listener, filter, handback);
+    }
+
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+        getBroadcaster().removeNotificationListener(listener);
+    }
+
+    public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws ListenerNotFoundException {
+        NotificationBroadcaster broadcaster = getBroadcaster();
+        if (broadcaster instanceof NotificationEmitter) {
+            ((NotificationEmitter) broadcaster).removeNotificationListener(listener, filter, handback);
+        } else {
+            broadcaster.removeNotificationListener(listener);
+        }
+    }
+
+    public MBeanNotificationInfo[] getNotificationInfo() {
+        return getMBeanInfo().getNotifications();
+    }
+
+    private NotificationBroadcaster getBroadcaster() {
+        try {
+            getTarget();
+        } catch (MBeanException e) {
+            throw new RuntimeOperationsException(new IllegalStateException(e.getMessage()), e.getMessage());
+        }
+        Object o = instance;
+        if (o instanceof NotificationBroadcaster) {
+            return (NotificationBroadcaster) o;
+        }
+        if (target instanceof NotificationBroadcaster) {
+            return (NotificationBroadcaster) target;
+        }
+        throw new RuntimeOperationsException(new IllegalArgumentException("MBean " + name + " does not emit notifications"));
+    }
+
+    public synchronized ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        this.server = server;
+        this.name = name;
+        return name;
+    }
+
+    public void postRegister(Boolean registrationDone) {
+    }
+
+    public synchronized void preDeregister() throws Exception {
+        if (instance instanceof MBeanRegistration) {
+            ((MBeanRegistration) instance).preDeregister();
+        }
+    }
+
+    public synchronized void postDeregister() {
+        if (instance instanceof MBeanRegistration) {
+            ((MBeanRegistration) instance).postDeregister();
+        }
+        instance = null;
+        target = null;
+        server = null;
+    }
+
+}
@@ -16,23 +16,57 @@
  */
 package org.apache.felix.karaf.management;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
+import javax.management.InstanceNotFoundException;
 import javax.management.JMException;
 import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
+/**
+ * Registers a set of MBeans in a MBeanServer.
+ *
+ * Object names are resolved once.  Each MBean is tracked individually, so that
+ * binding the same server again, or adding and removing single MBeans, only
+ * registers or unregisters the MBeans concerned.  Use {@link LazyMBean} for
+ * MBeans that should only be created when first accessed.
+ */
 public class MBeanRegistrer {
 
     private MBeanServer mbeanServer;
 
-    private Map<Object, String> mbeans;
+    private Map<Object, String> mbeans = Collections.emptyMap();
+
+    /**
+     * Object names resolved from the configured names.
+     */
+    private final Map<Object, ObjectName> names = new HashMap<Object, ObjectName>();
+
+    /**
+     * MBeans currently registered in the server.
+     */
+    private final Map<Object, ObjectName> registered = new HashMap<Object, ObjectName>();
 
-    public void setMbeans(Map<Object, String> mbeans) {
-        this.mbeans = mbeans;
+    public synchronized void setMbeans(Map<Object, String> mbeans) throws JMException {
+        Map<Object, String> old = this.mbeans;
+        this.mbeans = mbeans != null ? mbeans : Collections.<Object, String>emptyMap();
+        for (Object mbean : old.keySet()) {
+            if (!this.mbeans.containsKey(mbean) || !this.mbeans.get(mbean).equals(old.get(mbean))) {
+                doUnregister(mbean);
+                names.remove(mbean);
+            }
+        }
+        registerMBeans();
     }
 
-    public void registerMBeanServer(MBeanServer mbeanServer) throws JMException {
+    public synchronized void setMbeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    public synchronized void registerMBeanServer(MBeanServer mbeanServer) throws JMException {
         if (this.mbeanServer != mbeanServer) {
             unregisterMBeans();
         }
@@ -40,39 +74,90 @@ public class MBeanRegistrer {
         registerMBeans();
     }
 
-    public void unregisterMBeanServer(MBeanServer mbeanServer) throws JMException {
+    public synchronized void unregisterMBeanServer(MBeanServer mbeanServer) throws JMException {
         unregisterMBeans();
         this.mbeanServer = null;
     }
 
+    /**
+     * Add a single MBean, registering it right away if a server is bound.
+     */
+    public synchronized void registerMBean(Object mbean, String name) throws JMException {
+        Map<Object, String> m = new HashMap<Object, String>(mbeans);
+        m.put(mbean, name);
+        setMbeans(m);
+    }
+
+    /**
+     * Remove a single MBean, unregistering it if needed.
+     */
+    public synchronized void unregisterMBean(Object mbean) throws JMException {
+        if (mbeans.containsKey(mbean)) {
+            Map<Object, String> m = new HashMap<Object, String>(mbeans);
+            m.remove(mbean);
+            setMbeans(m);
+        }
+    }
+
     public void init() throws Exception {
         registerMBeans();
     }
 
-    protected void registerMBeans() throws JMException {
-        if (mbeanServer != null && mbeans != null) {
-            for (Map.Entry<Object, String> entry : mbeans.entrySet()) {
-                String value = parseProperty(entry.getValue());
-                mbeanServer.registerMBean(entry.getKey(), new ObjectName(value));
+    public void destroy() throws Exception {
+        unregisterMBeans();
+    }
+
+    protected synchronized void registerMBeans() throws JMException {
+        if (mbeanServer != null) {
+            for (Object mbean : mbeans.keySet()) {
+                if (!registered.containsKey(mbean)) {
+                    ObjectName name = getObjectName(mbean);
+                    mbeanServer.registerMBean(mbean, name);
+                    registered.put(mbean, name);
+                }
             }
         }
     }
 
-    protected void unregisterMBeans() throws JMException {
-        if (mbeanServer != null && mbeans != null) {
-            for (Map.Entry<Object, String> entry : mbeans.entrySet()) {
-                String value = parseProperty(entry.getValue());
-                mbeanServer.unregisterMBean(new ObjectName(value));
+    protected synchronized void unregisterMBeans() throws JMException {
+        for (Object mbean : registered.keySet().toArray()) {
+            doUnregister(mbean);
+        }
+    }
+
+    private void doUnregister(Object mbean) throws JMException {
+        ObjectName name = registered.remove(mbean);
+        if (name != null && mbeanServer != null) {
+            try {
+                mbeanServer.unregisterMBean(name);
+            } catch (InstanceNotFoundException e) {
+                // already gone
             }
         }
     }
 
+    private ObjectName getObjectName(Object mbean) throws MalformedObjectNameException {
+        ObjectName name = names.get(mbean);
+        if (name == null) {
+            name = new ObjectName(parseProperty(mbeans.get(mbean)));
+            names.put(mbean, name);
+        }
+        return name;
+    }
+
     protected String parseProperty(String raw) {
-        if (raw.indexOf("${") > -1 && raw.indexOf("}", raw.indexOf("${")) > -1) {
-            String var = raw.substring(raw.indexOf("${") + 2, raw.indexOf("}"));
-            String val = System.getProperty(var);
+        int start = raw.indexOf("${");
+        while (start >= 0) {
+            int end = raw.indexOf("}", start);
+            if (end < 0) {
+                break;
+            }
+            String val = System.getProperty(raw.substring(start + 2, end));
             if (val != null) {
-                raw = raw.replace("${" + var + "}", val);
+                raw = raw.substring(0, start) + val + raw.substring(end + 1);
+                start = raw.indexOf("${", start + val.length());
+            } else {
+                start = raw.indexOf("${", end);
             }
         }
         return raw;
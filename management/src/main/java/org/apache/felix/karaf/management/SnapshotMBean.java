@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import javax.management.openmbean.CompositeData;
+
+/**
+ * A compact view of the whole container, so that monitoring agents can fetch
+ * bundle states, features, instances and metrics in a single call.
+ *
+ * The snapshot contains a <code>version</code> item, a <code>timestamp</code> item and
+ * one array of <code>key=value</code> strings per section.  The version changes when
+ * the content of a non metric section changes.
+ */
+public interface SnapshotMBean {
+
+    String VERSION = "version";
+    String TIMESTAMP = "timestamp";
+
+    // Attributes
+    long getVersion();
+    CompositeData getSnapshot();
+
+    // Operations
+
+    /**
+     * Retrieve the snapshot only if its version is different from the given one.
+     *
+     * @param version the version of the last snapshot known by the caller
+     * @return the current snapshot, or <code>null</code> if its version has not changed
+     */
+    CompositeData getSnapshotIfChanged(long version);
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+/**
+ * Implementation of {@link SnapshotMBean} collecting the sections of all the
+ * available {@link SnapshotProvider}s.
+ */
+public class SnapshotMBeanImpl extends StandardMBean implements SnapshotMBean {
+
+    private List<SnapshotProvider> providers = Collections.emptyList();
+    private Map<String, Map<String, String>> lastState;
+    // Start from the current time so that a version known from a previous run never matches
+    private long version = System.currentTimeMillis();
+
+    public SnapshotMBeanImpl() throws NotCompliantMBeanException {
+        super(SnapshotMBean.class);
+    }
+
+    public List<SnapshotProvider> getProviders() {
+        return providers;
+    }
+
+    public void setProviders(List<SnapshotProvider> providers) {
+        this.providers = providers;
+    }
+
+    public synchronized long getVersion() {
+        update(collect(false));
+        return version;
+    }
+
+    public CompositeData getSnapshot() {
+        return getSnapshotIfChanged(-1);
+    }
+
+    public synchronized CompositeData getSnapshotIfChanged(long knownVersion) {
+        Map<String, Map<String, String>> sections = collect(true);
+        update(sections);
+        if (knownVersion == version) {
+            return null;
+        }
+        return toCompositeData(sections);
+    }
+
+    /**
+     * Collect the sections of all providers, sorted by name.
+     */
+    private Map<String, Map<String, String>> collect(boolean metrics) {
+        Map<String, Map<String, String>> sections = new TreeMap<String, Map<String, String>>();
+        for (SnapshotProvider provider : new ArrayList<SnapshotProvider>(providers)) {
+            if (provider.isMetric() && !metrics) {
+                continue;
+            }
+            Map<String, String> entries;
+            try {
+                entries = new TreeMap<String, String>(provider.getEntries());
+            } catch (Exception e) {
+                entries = Collections.singletonMap("error", String.valueOf(e.getMessage()));
+            }
+            sections.put(provider.getName(), entries);
+        }
+        return sections;
+    }
+
+    /**
+     * Bump the version if the non metric sections have changed since the last call.
+     */
+    private void update(Map<String, Map<String, String>> sections) {
+        Map<String, Map<String, String>> state = new TreeMap<String, Map<String, String>>();
+        for (SnapshotProvider provider : new ArrayList<SnapshotProvider>(providers)) {
+            String name = provider.getName();
+            if (!provider.isMetric() && sections.containsKey(name)) {
+                state.put(name, sections.get(name));
+            }
+        }
+        if (!state.equals(lastState)) {
+            lastState = state;
+            version++;
+        }
+    }
+
+    private CompositeData toCompositeData(Map<String, Map<String, String>> sections) {
+        try {
+            int size = sections.size() + 2;
+            String[] names = new String[size];
+            OpenType[] types = new OpenType[size];
+            Object[] values = new Object[size];
+            names[0] = VERSION;
+            types[0] = SimpleType.LONG;
+            values[0] = version;
+            names[1] = TIMESTAMP;
+            types[1] = SimpleType.LONG;
+            values[1] = System.currentTimeMillis();
+            ArrayType stringArray = new ArrayType(1, SimpleType.STRING);
+            int i = 2;
+            for (Map.Entry<String, Map<String, String>> section : sections.entrySet()) {
+                List<String> entries = new ArrayList<String>(section.getValue().size());
+                for (Map.Entry<String, String> entry : section.getValue().entrySet()) {
+                    entries.add(entry.getValue() != null ? entry.getKey() + "=" + entry.getValue() : entry.getKey());
+                }
+                names[i] = section.getKey();
+                types[i] = stringArray;
+                values[i] = entries.toArray(new String[entries.size()]);
+                i++;
+            }
+            CompositeType type = new CompositeType("Snapshot", "Snapshot of the container", names, names, types);
+            return new CompositeDataSupport(type, names, values);
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build snapshot", e);
+        }
+    }
+
+}
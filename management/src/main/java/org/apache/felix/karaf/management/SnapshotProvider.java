@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.util.Map;
+
+/**
+ * Contributes one section to the container snapshot exposed by {@link SnapshotMBean}.
+ *
+ * Providers are registered as OSGi services and picked up by the management bundle.
+ */
+public interface SnapshotProvider {
+
+    /**
+     * The name of the section, which must be a valid item name of a composite type.
+     */
+    String getName();
+
+    /**
+     * Whether this section holds metrics, which change all the time and therefore
+     * do not change the version of the snapshot.
+     */
+    boolean isMetric();
+
+    /**
+     * The entries of the section, kept short as they are sent to monitoring clients
+     * as <code>key=value</code> strings, or only <code>key</code> if the value is <code>null</code>.
+     */
+    Map<String, String> getEntries() throws Exception;
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.AttributeList;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.remote.JMXAuthenticator;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import javax.security.auth.Subject;
+
+import junit.framework.TestCase;
+
+public class ConnectionManagerTest extends TestCase {
+
+    private MBeanServer server;
+    private ConnectorServerFactory factory;
+    private ConnectionManager manager;
+
+    protected void setUp() throws Exception {
+        server = MBeanServerFactory.newMBeanServer();
+        manager = new ConnectionManager();
+        manager.setMaxConnections(1);
+        manager.setMaxConcurrentRequests(2);
+        server.registerMBean(manager, new ObjectName("org.apache.felix.karaf:type=connector,name=test"));
+        server.registerMBean(new BulkAttributeReader(), new ObjectName("org.apache.felix.karaf:type=bulk,name=test"));
+
+        Map<String, Object> env = new HashMap<String, Object>();
+        env.put("jmx.remote.authenticator", new JMXAuthenticator() {
+            public Subject authenticate(Object credentials) {
+                String[] params = (String[]) credentials;
+                if (!"karaf".equals(params[1])) {
+                    throw new SecurityException("Authentication failed");
+                }
+                return new Subject();
+            }
+        });
+        factory = new ConnectorServerFactory();
+        factory.setServer(server);
+        factory.setServiceUrl("service:jmx:rmi://localhost");
+        factory.setEnvironment(env);
+        factory.setConnectionManager(manager);
+        factory.init();
+    }
+
+    protected void tearDown() throws Exception {
+        factory.destroy();
+    }
+
+    public void testConnectionLimit() throws Exception {
+        JMXConnector c1 = connect("karaf");
+        MBeanServerConnection mbsc = c1.getMBeanServerConnection();
+        mbsc.getMBeanCount();
+        mbsc.getDefaultDomain();
+        assertEquals(1, manager.getActiveConnections());
+        assertTrue(manager.getTotalRequests() >= 2);
+
+        CompositeData connection = (CompositeData) manager.getConnections().values().iterator().next();
+        assertEquals("karaf", connection.get(ConnectionManagerMBean.CONNECTION_USER));
+        assertTrue(((Long) connection.get(ConnectionManagerMBean.CONNECTION_REQUESTS)) >= 2);
+
+        try {
+            connect("karaf");
+            fail("Expected a SecurityException");
+        } catch (SecurityException e) {
+            // expected
+        }
+        assertEquals(1, manager.getRejectedConnections());
+
+        c1.close();
+        for (int i = 0; i < 50 && manager.getActiveConnections() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, manager.getActiveConnections());
+
+        JMXConnector c2 = connect("karaf");
+        assertEquals(1, manager.getActiveConnections());
+        c2.close();
+    }
+
+    public void testBulkRead() throws Exception {
+        JMXConnector c = connect("karaf");
+        try {
+            Map result = (Map) c.getMBeanServerConnection().invoke(
+                    new ObjectName("org.apache.felix.karaf:type=bulk,name=test"), "getAttributes",
+                    new Object[] { "org.apache.felix.karaf:type=connector,*", new String[] { "ActiveConnections" } },
+                    new String[] { String.class.getName(), String[].class.getName() });
+            assertEquals(1, result.size());
+            AttributeList list = (AttributeList) result.values().iterator().next();
+            assertEquals(1, list.size());
+        } finally {
+            c.close();
+        }
+    }
+
+    private JMXConnector connect(String password) throws Exception {
+        JMXServiceURL url = factory.getConnectorServer().getAddress();
+        return JMXConnectorFactory.connect(url,
+                Collections.singletonMap(JMXConnector.CREDENTIALS, new String[] { "karaf", password }));
+    }
+
+}
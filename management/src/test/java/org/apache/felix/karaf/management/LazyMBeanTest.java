@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+public class LazyMBeanTest extends TestCase {
+
+    public void testLazyCreation() throws Exception {
+        final int[] created = new int[1];
+        LazyMBean lazy = new LazyMBean(null, "impl", TestMBean.class) {
+            protected Object createInstance() {
+                created[0]++;
+                return new Test();
+            }
+        };
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = new ObjectName("org.apache.felix.karaf:type=test,name=lazy");
+        MBeanRegistrer registrer = new MBeanRegistrer();
+        Map<Object, String> mbeans = new HashMap<Object, String>();
+        mbeans.put(lazy, name.toString());
+        registrer.setMbeans(mbeans);
+        registrer.registerMBeanServer(server);
+        // binding the same server again does not register the MBeans twice
+        registrer.registerMBeanServer(server);
+
+        assertTrue(server.isRegistered(name));
+        assertEquals(1, server.getMBeanInfo(name).getAttributes().length);
+        assertEquals(0, created[0]);
+        assertFalse(lazy.isCreated());
+
+        assertEquals("value", server.getAttribute(name, "Value"));
+        assertEquals(Integer.valueOf(3), server.invoke(name, "add", new Object[] { 1, 2 },
+                                                       new String[] { "int", "int" }));
+        assertEquals(1, created[0]);
+
+        registrer.unregisterMBeanServer(server);
+        assertFalse(server.isRegistered(name));
+    }
+
+    public void testIncrementalRegistration() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MBeanRegistrer registrer = new MBeanRegistrer();
+        registrer.registerMBeanServer(server);
+        Test t1 = new Test();
+        Test t2 = new Test();
+        registrer.registerMBean(t1, "org.apache.felix.karaf:type=test,name=1");
+        registrer.registerMBean(t2, "org.apache.felix.karaf:type=test,name=2");
+        assertTrue(server.isRegistered(new ObjectName("org.apache.felix.karaf:type=test,name=1")));
+        registrer.unregisterMBean(t1);
+        assertFalse(server.isRegistered(new ObjectName("org.apache.felix.karaf:type=test,name=1")));
+        assertTrue(server.isRegistered(new ObjectName("org.apache.felix.karaf:type=test,name=2")));
+        registrer.unregisterMBeanServer(server);
+        assertFalse(server.isRegistered(new ObjectName("org.apache.felix.karaf:type=test,name=2")));
+    }
+
+    public static interface TestMBean {
+        String getValue();
+        int add(int a, int b);
+    }
+
+    public static class Test implements TestMBean {
+        public String getValue() {
+            return "value";
+        }
+        public int add(int a, int b) {
+            return a + b;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.management;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.openmbean.CompositeData;
+
+import junit.framework.TestCase;
+
+public class SnapshotMBeanImplTest extends TestCase {
+
+    public void testVersions() throws Exception {
+        TestProvider state = new TestProvider("bundles", false);
+        TestProvider metric = new TestProvider("jvm", true);
+        state.entries.put("1", "ACTIVE");
+        metric.entries.put("threads", "10");
+        SnapshotMBeanImpl snapshot = new SnapshotMBeanImpl();
+        snapshot.setProviders(Arrays.<SnapshotProvider>asList(state, metric));
+
+        CompositeData data = snapshot.getSnapshot();
+        long version = (Long) data.get(SnapshotMBean.VERSION);
+        assertEquals(version, snapshot.getVersion());
+        assertEquals(Arrays.asList("1=ACTIVE"), Arrays.asList((String[]) data.get("bundles")));
+        assertEquals(Arrays.asList("threads=10"), Arrays.asList((String[]) data.get("jvm")));
+
+        // metrics do not change the version
+        metric.entries.put("threads", "11");
+        assertNull(snapshot.getSnapshotIfChanged(version));
+        assertEquals(version, snapshot.getVersion());
+
+        state.entries.put("2", null);
+        data = snapshot.getSnapshotIfChanged(version);
+        assertNotNull(data);
+        assertEquals(version + 1, ((Long) data.get(SnapshotMBean.VERSION)).longValue());
+        assertEquals(Arrays.asList("1=ACTIVE", "2"), Arrays.asList((String[]) data.get("bundles")));
+        assertEquals(Arrays.asList("threads=11"), Arrays.asList((String[]) data.get("jvm")));
+        assertNull(snapshot.getSnapshotIfChanged(version + 1));
+    }
+
+    public void testVersionFromPreviousRun() throws Exception {
+        TestProvider state = new TestProvider("bundles", false);
+        state.entries.put("1", "ACTIVE");
+        SnapshotMBeanImpl previous = new SnapshotMBeanImpl();
+        previous.setProviders(Arrays.<SnapshotProvider>asList(state));
+        long version = previous.getVersion();
+
+        Thread.sleep(10);
+        SnapshotMBeanImpl snapshot = new SnapshotMBeanImpl();
+        snapshot.setProviders(Arrays.<SnapshotProvider>asList(state));
+        assertTrue(snapshot.getVersion() > version);
+        assertNotNull(snapshot.getSnapshotIfChanged(version));
+    }
+
+    public void testFailingProvider() throws Exception {
+        TestProvider provider = new TestProvider("features", false) {
+            public Map<String, String> getEntries() throws Exception {
+                throw new Exception("failure");
+            }
+        };
+        SnapshotMBeanImpl snapshot = new SnapshotMBeanImpl();
+        snapshot.setProviders(Arrays.<SnapshotProvider>asList(provider, new JvmSnapshotProvider()));
+        CompositeData data = snapshot.getSnapshot();
+        assertEquals(Arrays.asList("error=failure"), Arrays.asList((String[]) data.get("features")));
+        assertTrue(((String[]) data.get("jvm")).length > 0);
+    }
+
+    private static class TestProvider implements SnapshotProvider {
+
+        final String name;
+        final boolean metric;
+        final Map<String, String> entries = new HashMap<String, String>();
+
+        TestProvider(String name, boolean metric) {
+            this.name = name;
+            this.metric = metric;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isMetric() {
+            return metric;
+        }
+
+        public Map<String, String> getEntries() throws Exception {
+            return entries;
+        }
+
+    }
+
+}
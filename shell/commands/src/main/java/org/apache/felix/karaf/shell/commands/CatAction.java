@@ -19,9 +19,10 @@ package org.apache.felix.karaf.shell.commands;
 import java.io.IOException;
 import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.File;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.net.URL;
 import java.net.URI;
 import java.net.MalformedURLException;
@@ -31,6 +32,7 @@ import org.apache.felix.karaf.shell.console.OsgiCommandSupport;
 import org.apache.felix.gogo.commands.Argument;
 import org.apache.felix.gogo.commands.Option;
 import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.karaf.shell.commands.utils.Streams;
 
 /**
  * Concatenate and print files and/or URLs.
@@ -53,31 +55,31 @@ public class CatAction extends OsgiCommandSupport {
         //
         if (paths.size() == 1 && "-".equals(paths.get(0))) {
             log.info("Printing STDIN");
-            cat(new BufferedReader(new InputStreamReader(System.in)));
+            cat(System.in);
         }
         else {
             for (String filename : paths) {
-                BufferedReader reader;
+                InputStream is;
 
                 // First try a URL
                 try {
                     URL url = new URL(filename);
                     log.info("Printing URL: " + url);
-                    reader = new BufferedReader(new InputStreamReader(url.openStream()));
+                    is = url.openStream();
                 }
                 catch (MalformedURLException ignore) {
                     // They try a file
                     File file = new File(filename);
                     log.info("Printing file: " + file);
-                    reader = new BufferedReader(new FileReader(file));
+                    is = new FileInputStream(file);
                 }
 
                 try {
-                    cat(reader);
+                    cat(is);
                 }
                 finally {
                     try {
-                        reader.close();
+                        is.close();
                     } catch (IOException e) {
                         // Ignore
                     }
@@ -88,16 +90,29 @@ public class CatAction extends OsgiCommandSupport {
         return null;
     }
 
-    private void cat(final BufferedReader reader) throws IOException
+    private void cat(final InputStream is) throws IOException
     {
+        if (!displayLineNumbers) {
+            // no need to decode the content, copy it in bulk
+            Streams.copy(is, System.out);
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is), Streams.BUFFER_SIZE);
+        PrintStream out = Streams.buffered(System.out);
         String line;
         int lineno = 1;
 
-        while ((line = reader.readLine()) != null) {
-            if (displayLineNumbers) {
-                System.out.print(String.format("%6d  ", lineno++));
+        while (true) {
+            if (!reader.ready()) {
+                out.flush();
+            }
+            if ((line = reader.readLine()) == null) {
+                break;
             }
-            System.out.println(line);
+            out.print(String.format("%6d  ", lineno++));
+            out.println(line);
         }
+        out.flush();
     }
 }
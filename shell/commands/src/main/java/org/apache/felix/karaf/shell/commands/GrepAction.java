@@ -21,8 +21,7 @@ package org.apache.felix.karaf.shell.commands;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.PrintStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,6 +29,7 @@ import org.apache.felix.karaf.shell.console.OsgiCommandSupport;
 import org.apache.felix.gogo.commands.Argument;
 import org.apache.felix.gogo.commands.Option;
 import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.karaf.shell.commands.utils.Streams;
 import org.fusesource.jansi.Ansi;
 
 
@@ -81,6 +81,13 @@ public class GrepAction extends OsgiCommandSupport {
     private int context = 0;
 
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private boolean highlight;
+    private String highlightStart;
+    private String highlightEnd;
+    private final StringBuilder sb = new StringBuilder();
+
     protected Object doExecute() throws Exception {
         if (after < 0) {
             after = context;
@@ -88,100 +95,113 @@ public class GrepAction extends OsgiCommandSupport {
         if (before < 0) {
             before = context;
         }
-        List<String> lines = new ArrayList<String>();
 
         String regexp = regex;
         if (wordRegexp) {
-            regexp = "\\b" + regexp + "\\b";
+            regexp = "\\b(?:" + regexp + ")\\b";
         }
-        if (lineRegexp) {
-            regexp = "^" + regexp + "$";
-        } else {
-            regexp = ".*" + regexp + ".*";
-        }
-        Pattern p;
-        Pattern p2;
-        if (ignoreCase) {
-            p = Pattern.compile(regexp, Pattern.CASE_INSENSITIVE);
-            p2 = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
-        } else {
-            p = Pattern.compile(regexp);
-            p2 = Pattern.compile(regex);
+        Pattern p = Pattern.compile(regexp, ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+        highlight = !count && !invertMatch && color != ColorOption.never;
+        if (highlight) {
+            highlightStart = Ansi.ansi().bg(Ansi.Color.YELLOW).fg(Ansi.Color.BLACK).toString();
+            highlightEnd = Ansi.ansi().reset().toString();
         }
+        PrintStream out = Streams.buffered(System.out);
         try {
-            boolean firstPrint = true;
+            BufferedReader r = new BufferedReader(new InputStreamReader(System.in), BUFFER_SIZE);
+            // ring buffer of the lines preceding the next match
+            String[] beforeLines = new String[Math.max(before, 0)];
+            int beforeStart = 0;
+            int beforeSize = 0;
+            int afterLeft = 0;
+            int lastPrinted = 0;
             int nb = 0;
-            int lineno = 1;
+            int lineno = 0;
+            Matcher m = p.matcher("");
             String line;
-            int lineMatch = 0;
-            BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
-            while ((line = r.readLine()) != null) {
-                if (line.length() == 1 && line.charAt(0) == '\n') {
+            while (true) {
+                // push the output to the next stage before waiting for more input
+                if (!r.ready()) {
+                    out.flush();
+                }
+                if ((line = r.readLine()) == null) {
                     break;
                 }
-                if (p.matcher(line).matches() ^ invertMatch) {
-
-                    Matcher matcher2 = p2.matcher(line);
-                    StringBuffer sb = new StringBuffer();
-                    while (matcher2.find()) {
-                        if (!invertMatch && color != ColorOption.never) {
-                            matcher2.appendReplacement(sb, Ansi.ansi()
-                                .bg(Ansi.Color.YELLOW)
-                                .fg(Ansi.Color.BLACK)
-                                .a(matcher2.group())
-                                .reset().toString());
-                        } else {
-                            matcher2.appendReplacement(sb, matcher2.group());
-                        }
-                        nb++;
+                lineno++;
+                m.reset(line);
+                boolean found = lineRegexp ? m.matches() : m.find();
+                if (found ^ invertMatch) {
+                    nb++;
+                    if (count) {
+                        continue;
                     }
-                    matcher2.appendTail(sb);
-                    if (!count && lineNumber) {
-                        lines.add(String.format("%6d  ", lineno) + sb.toString());
-                    } else {
-                        lines.add(sb.toString());
+                    int first = lineno - beforeSize;
+                    if (lastPrinted > 0 && first > lastPrinted + 1 && before + after > 0) {
+                        out.println("--");
                     }
-					lineMatch = lines.size();
-                } else {
-                    if (lineMatch != 0 & lineMatch + after + before <= lines.size()) {
-                        if (!count) {
-                            if (!firstPrint && before + after > 0) {
-                                System.out.println("--");
-                            } else {
-                                firstPrint = false;
-                            }
-                            for (int i = 0; i < lineMatch + after; i++) {
-                                System.out.println(lines.get(i));
-                            }
-                        }
-                        while (lines.size() > before) {
-                            lines.remove(0);
-                        }
-                        lineMatch = 0;
+                    for (int i = 0; i < beforeSize; i++) {
+                        print(out, first + i, beforeLines[(beforeStart + i) % beforeLines.length], null);
                     }
-                    lines.add(line);
-                    while (lineMatch == 0 && lines.size() > before) {
-                        lines.remove(0);
+                    beforeStart = 0;
+                    beforeSize = 0;
+                    print(out, lineno, line, found ? m : null);
+                    lastPrinted = lineno;
+                    afterLeft = after;
+                } else if (!count) {
+                    if (afterLeft > 0) {
+                        print(out, lineno, line, null);
+                        lastPrinted = lineno;
+                        afterLeft--;
+                    } else if (beforeLines.length > 0) {
+                        if (beforeSize < beforeLines.length) {
+                            beforeLines[(beforeStart + beforeSize++) % beforeLines.length] = line;
+                        } else {
+                            beforeLines[beforeStart] = line;
+                            beforeStart = (beforeStart + 1) % beforeLines.length;
+                        }
                     }
                 }
-                lineno++;
-            }
-            if (!count && lineMatch > 0) {
-                if (!firstPrint && before + after > 0) {
-                    System.out.println("--");
-                } else {
-                    firstPrint = false;
-                }
-                for (int i = 0; i < lineMatch + after && i < lines.size(); i++) {
-                    System.out.println(lines.get(i));
-                }
             }
             if (count) {
-                System.out.println(nb);
+                out.println(nb);
             }
         } catch (IOException e) {
+        } finally {
+            out.flush();
         }
         return null;
     }
 
+    /**
+     * Print a line, highlighting the matches if a matcher positioned on the first match is given
+     */
+    private void print(PrintStream out, int lineno, String line, Matcher m) {
+        if (!lineNumber && (m == null || !highlight)) {
+            out.println(line);
+            return;
+        }
+        sb.setLength(0);
+        if (lineNumber) {
+            String no = Integer.toString(lineno);
+            for (int i = no.length(); i < 6; i++) {
+                sb.append(' ');
+            }
+            sb.append(no).append("  ");
+        }
+        if (m != null && highlight) {
+            int last = 0;
+            do {
+                if (m.end() > m.start()) {
+                    sb.append(line, last, m.start());
+                    sb.append(highlightStart).append(line, m.start(), m.end()).append(highlightEnd);
+                    last = m.end();
+                }
+            } while (m.find());
+            sb.append(line, last, line.length());
+        } else {
+            sb.append(line);
+        }
+        out.println(sb);
+    }
+
 }
@@ -19,34 +19,51 @@
 package org.apache.felix.karaf.shell.commands;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.felix.gogo.commands.Argument;
 import org.apache.felix.gogo.commands.Command;
 import org.apache.felix.gogo.commands.Option;
+import org.apache.felix.karaf.shell.commands.utils.Streams;
 import org.apache.felix.karaf.shell.console.OsgiCommandSupport;
 
 /**
  * Sort lines of text
  *
+ * Lines are sorted in memory until the estimated memory used exceeds the buffer size,
+ * at which point the sorted lines are written to a temporary file.  The temporary
+ * files are then merged to produce the output.
+ *
  * @version $Rev: 722776 $ $Date: 2008-12-03 05:59:59 +0100 (Wed, 03 Dec 2008) $
  */
 @Command(scope = "shell", name = "sort", description = "Write sorted concatenation of all files to standard output.")
 public class SortAction extends OsgiCommandSupport {
 
+    /**
+     * Maximum number of temporary files merged at once
+     */
+    private static final int MAX_MERGE = 64;
+
+    private static final String ENCODING = "UTF-8";
+
     @Option(name = "-f", aliases = { "-ignore-case" }, description = "fold lower case to upper case characters", required = false, multiValued = false)
     private boolean caseInsensitive;
 
@@ -68,71 +85,283 @@ public class SortAction extends OsgiCommandSupport {
     @Option(name = "-n", aliases = { "--numeric-sort" }, description = "compare according to string numerical value", required = false, multiValued = false)
     private boolean numeric;
 
+    @Option(name = "-S", aliases = { "--buffer-size" }, description = "use SIZE bytes of memory before sorting through temporary files (suffixes k, m and g are supported)", required = false, multiValued = false)
+    private String bufferSize = "32m";
+
+    @Option(name = "-T", aliases = { "--temporary-directory" }, description = "use DIR for temporary files instead of java.io.tmpdir", required = false, multiValued = false)
+    private String tmpDir;
+
     @Argument(index = 0, name = "files", description = "A list of files separated by whitespaces", required = false, multiValued = true)
     private List<String> paths;
 
+    private SortComparator comparator;
+    private long maxMemory;
+    private final List<Line> lines = new ArrayList<Line>();
+    private long memory;
+    private final List<File> runs = new ArrayList<File>();
+
 
     public Object doExecute() throws Exception {
-        if (paths != null && paths.size() > 0) {
-            List<String> lines = new ArrayList<String>();
-            for (String filename : paths) {
-                BufferedReader reader;
-
-                // First try a URL
-                try {
-                    URL url = new URL(filename);
-                    log.info("Printing URL: " + url);
-                    reader = new BufferedReader(new InputStreamReader(url.openStream()));
-                }
-                catch (MalformedURLException ignore) {
-                    // They try a file
-                    File file = new File(filename);
-                    log.info("Printing file: " + file);
-                    reader = new BufferedReader(new FileReader(file));
-                }
+        char sep = (separator == null || separator.length() == 0) ? '\0' : separator.charAt(0);
+        comparator = new SortComparator(caseInsensitive, reverse, ignoreBlanks, numeric, sep, sortFields);
+        maxMemory = parseSize(bufferSize);
+        try {
+            if (paths != null && paths.size() > 0) {
+                for (String filename : paths) {
+                    BufferedReader reader;
+
+                    // First try a URL
+                    try {
+                        URL url = new URL(filename);
+                        log.info("Printing URL: " + url);
+                        reader = new BufferedReader(new InputStreamReader(url.openStream()));
+                    }
+                    catch (MalformedURLException ignore) {
+                        // They try a file
+                        File file = new File(filename);
+                        log.info("Printing file: " + file);
+                        reader = new BufferedReader(new FileReader(file));
+                    }
 
-                try {
-                    read(reader, lines);
-                }
-                finally {
                     try {
-                        reader.close();
-                    } catch (IOException e) {
-                        // Ignore
+                        read(reader);
+                    }
+                    finally {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            // Ignore
+                        }
                     }
                 }
             }
-            sort(lines, System.out);
-        }
-        else {
-            sort(System.in, System.out);
+            else {
+                read(new BufferedReader(new InputStreamReader(System.in)));
+            }
+            PrintStream out = Streams.buffered(System.out);
+            write(out);
+            out.flush();
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+            lines.clear();
         }
         return null;
     }
 
-    protected void read(BufferedReader r, List<String> lines) throws Exception {
+    static long parseSize(String size) {
+        size = size.trim().toLowerCase();
+        long unit = 1;
+        if (size.endsWith("k")) {
+            unit = 1024;
+        } else if (size.endsWith("m")) {
+            unit = 1024 * 1024;
+        } else if (size.endsWith("g")) {
+            unit = 1024 * 1024 * 1024;
+        }
+        if (unit > 1) {
+            size = size.substring(0, size.length() - 1);
+        }
+        long value = Long.parseLong(size) * unit;
+        if (value <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size: " + size);
+        }
+        return value;
+    }
+
+    protected File getTemporaryDirectory() {
+        return tmpDir != null ? new File(tmpDir) : null;
+    }
+
+    protected void read(BufferedReader r) throws Exception {
         for (String s = r.readLine(); s != null; s = r.readLine()) {
-            lines.add(s);
+            Line line = comparator.createLine(s);
+            lines.add(line);
+            memory += line.size();
+            if (memory > maxMemory) {
+                runs.add(spill());
+            }
         }
     }
 
-    protected void sort(InputStream input, PrintStream out) throws Exception {
-        List<String> strings = new ArrayList<String>();
-        BufferedReader r = new BufferedReader(new InputStreamReader(input));
-        read(r, strings);
-        sort(strings, out);
+    /**
+     * Sort the lines held in memory and write them to a new temporary file
+     */
+    protected File spill() throws IOException {
+        Collections.sort(lines, comparator.getLineComparator());
+        File file = File.createTempFile("sort", ".tmp", getTemporaryDirectory());
+        boolean written = false;
+        Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ENCODING), 64 * 1024);
+        try {
+            for (Line line : lines) {
+                w.write(line.value);
+                w.write('\n');
+            }
+            written = true;
+        } finally {
+            w.close();
+            if (!written) {
+                file.delete();
+            }
+        }
+        lines.clear();
+        memory = 0;
+        return file;
     }
 
-    protected void sort(List<String> strings, PrintStream out) throws Exception {
-        char sep = (separator == null || separator.length() == 0) ? '\0' : separator.charAt(0);
-        Collections.sort(strings, new SortComparator(caseInsensitive, reverse, ignoreBlanks, numeric, sep, sortFields));
-        String last = null;
-        for (String s : strings) {
-            if (last == null) {
-                last = s;
-            } else if (!unique || !s.equals(last)) {
-                out.println(s);
+    protected void write(PrintStream out) throws Exception {
+        if (runs.isEmpty()) {
+            Collections.sort(lines, comparator.getLineComparator());
+            LineWriter writer = new LineWriter(out);
+            for (Line line : lines) {
+                writer.write(line.value);
             }
+            return;
+        }
+        if (!lines.isEmpty()) {
+            runs.add(spill());
+        }
+        // Reduce the number of runs so that the number of open files stays bounded.
+        // The first runs are merged together and replaced by the result, so that the
+        // relative order of equal lines is preserved.
+        while (runs.size() > MAX_MERGE) {
+            List<File> group = runs.subList(0, MAX_MERGE);
+            File file = File.createTempFile("sort", ".tmp", getTemporaryDirectory());
+            boolean merged = false;
+            final Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ENCODING), 64 * 1024);
+            try {
+                merge(group, new Output() {
+                    public void write(String line) throws IOException {
+                        w.write(line);
+                        w.write('\n');
+                    }
+                });
+                merged = true;
+            } finally {
+                w.close();
+                if (!merged) {
+                    file.delete();
+                }
+            }
+            for (File run : group) {
+                run.delete();
+            }
+            group.clear();
+            runs.add(0, file);
+        }
+        merge(runs, new LineWriter(out));
+    }
+
+    /**
+     * K-way merge of sorted temporary files
+     */
+    protected void merge(List<File> files, Output output) throws IOException {
+        final Comparator<Line> lc = comparator.getLineComparator();
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(files.size(), new Comparator<Run>() {
+            public int compare(Run r1, Run r2) {
+                int res = lc.compare(r1.current, r2.current);
+                return res != 0 ? res : r1.index - r2.index;
+            }
+        });
+        List<Run> opened = new ArrayList<Run>();
+        try {
+            for (File file : files) {
+                Run run = new Run(file, opened.size());
+                opened.add(run);
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                output.write(run.current.value);
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+        } finally {
+            for (Run run : opened) {
+                run.close();
+            }
+        }
+    }
+
+    protected interface Output {
+        void write(String line) throws IOException;
+    }
+
+    /**
+     * Writes the sorted lines, filtering duplicates if needed
+     */
+    protected class LineWriter implements Output {
+        private final PrintStream out;
+        private String last;
+
+        public LineWriter(PrintStream out) {
+            this.out = out;
+        }
+
+        public void write(String line) {
+            if (!unique || last == null || !line.equals(last)) {
+                out.println(line);
+            }
+            last = line;
+        }
+    }
+
+    /**
+     * A sorted temporary file being merged
+     */
+    protected class Run {
+        private final BufferedReader reader;
+        private final int index;
+        private Line current;
+
+        public Run(File file, int index) throws IOException {
+            this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING), 64 * 1024);
+            this.index = index;
+        }
+
+        public boolean next() throws IOException {
+            String s = reader.readLine();
+            current = s != null ? comparator.createLine(s) : null;
+            return s != null;
+        }
+
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * A line with its sort keys, computed once
+     */
+    public static class Line {
+        final String value;
+        final int[] bounds;
+        final double[] numbers;
+
+        Line(String value, int[] bounds, double[] numbers) {
+            this.value = value;
+            this.bounds = bounds;
+            this.numbers = numbers;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Rough estimate of the memory used by this line
+         */
+        long size() {
+            return 64 + 2L * value.length() + 4L * bounds.length + (numbers != null ? 8L * numbers.length : 0);
         }
     }
 
@@ -176,19 +405,40 @@ public class SortAction extends OsgiCommandSupport {
         }
 
         public int compare(String o1, String o2) {
-            int res = 0;
+            return compare(createLine(o1), createLine(o2));
+        }
 
-            List<Integer> fi1 = getFieldIndexes(o1);
-            List<Integer> fi2 = getFieldIndexes(o2);
-            for (Key key : sortKeys) {
-                int[] k1 = getSortKey(o1, fi1, key);
-                int[] k2 = getSortKey(o2, fi2, key);
+        /**
+         * Extract the sort keys of the given line
+         */
+        public Line createLine(String str) {
+            List<Integer> fields = getFieldIndexes(str);
+            int[] bounds = new int[sortKeys.size() * 2];
+            double[] numbers = null;
+            for (int i = 0; i < sortKeys.size(); i++) {
+                Key key = sortKeys.get(i);
+                int[] k = getSortKey(str, fields, key);
+                bounds[i * 2] = k[0];
+                bounds[i * 2 + 1] = k[1];
                 if (key.numeric) {
-                    Double d1 = getDouble(o1, k1[0], k1[1]);
-                    Double d2 = getDouble(o2, k2[0], k2[1]);
-                    res = d1.compareTo(d2);
+                    if (numbers == null) {
+                        numbers = new double[sortKeys.size()];
+                    }
+                    numbers[i] = getDouble(str, k[0], k[1]);
+                }
+            }
+            return new Line(str, bounds, numbers);
+        }
+
+        public int compare(Line l1, Line l2) {
+            int res = 0;
+            for (int i = 0; i < sortKeys.size(); i++) {
+                Key key = sortKeys.get(i);
+                if (key.numeric) {
+                    res = Double.compare(l1.numbers[i], l2.numbers[i]);
                 } else {
-                    res = compareRegion(o1, k1[0], k1[1], o2, k2[0], k2[1], key.caseInsensitive);
+                    res = compareRegion(l1.value, l1.bounds[i * 2], l1.bounds[i * 2 + 1],
+                                        l2.value, l2.bounds[i * 2], l2.bounds[i * 2 + 1], key.caseInsensitive);
                 }
                 if (res != 0) {
                     if (key.reverse) {
@@ -200,15 +450,25 @@ public class SortAction extends OsgiCommandSupport {
             return res;
         }
 
-        protected Double getDouble(String s, int start, int end) {
+        public Comparator<Line> getLineComparator() {
+            return new Comparator<Line>() {
+                public int compare(Line l1, Line l2) {
+                    return SortComparator.this.compare(l1, l2);
+                }
+            };
+        }
+
+        protected double getDouble(String s, int start, int end) {
             Matcher m = fpPattern.matcher(s.substring(start, end));
-            m.find();
-            return new Double(s.substring(0, m.end(1)));
+            if (!m.lookingAt()) {
+                // not a number
+                return 0;
+            }
+            return Double.parseDouble(m.group(1));
         }
 
         protected int compareRegion(String s1, int start1, int end1, String s2, int start2, int end2, boolean caseInsensitive) {
-            int n1 = end1, n2 = end2;
-            for (int i1 = start1, i2 = start2; i1 < end1 && i2 < n2; i1++, i2++) {
+            for (int i1 = start1, i2 = start2; i1 < end1 && i2 < end2; i1++, i2++) {
                 char c1 = s1.charAt(i1);
                 char c2 = s2.charAt(i2);
                 if (c1 != c2) {
@@ -227,13 +487,13 @@ public class SortAction extends OsgiCommandSupport {
                     }
                 }
             }
-            return n1 - n2;
+            return (end1 - start1) - (end2 - start2);
         }
 
         protected int[] getSortKey(String str, List<Integer> fields, Key key) {
             int start;
             int end;
-            if (key.startField * 2 < fields.size()) {
+            if (key.startField * 2 <= fields.size()) {
                 start = fields.get((key.startField - 1) * 2);
                 if (key.ignoreBlanksStart) {
                     while (start < fields.get((key.startField - 1) * 2 + 1) && Character.isWhitespace(str.charAt(start))) {
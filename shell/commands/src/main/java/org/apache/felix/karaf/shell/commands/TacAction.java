@@ -16,16 +16,15 @@
  */
 package org.apache.felix.karaf.shell.commands;
 
-import java.io.StringWriter;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.File;
-import java.io.OutputStream;
 import java.io.BufferedWriter;
-import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.felix.karaf.shell.console.OsgiCommandSupport;
 import org.apache.felix.gogo.commands.Command;
@@ -44,30 +43,36 @@ public class TacAction extends OsgiCommandSupport {
     private File file;
 
     protected Object doExecute() throws Exception {
-        StringWriter sw = new StringWriter();
-        Writer[] writers;
-        if (file != null) {
-            writers = new Writer[] { sw, new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file))) };
-        } else {
-            writers = new Writer[] { sw };
-        }
-        BufferedReader rdr = new BufferedReader(new InputStreamReader(System.in));
-        String s = rdr.readLine();
-        boolean first = true;
-        while (s != null)
-        {
-            for (Writer w : writers) {
-                if (!first) {
-                    w.write("\n");
+        // lines are split while reading, whatever their terminator, and joined
+        // with a single '\n' without a trailing one
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        Writer w = file != null ? new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file))) : null;
+        List<String> lines = new ArrayList<String>();
+        int length = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (w != null) {
+                    if (!lines.isEmpty()) {
+                        w.write('\n');
+                    }
+                    w.write(line);
                 }
-                w.write(s);
+                lines.add(line);
+                length += line.length() + 1;
+            }
+        } finally {
+            if (w != null) {
+                w.close();
             }
-            first = false;
-            s = rdr.readLine();
         }
-        for (Writer w : writers) {
-            w.close();
+        StringBuilder content = new StringBuilder(Math.max(length - 1, 0));
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) {
+                content.append('\n');
+            }
+            content.append(lines.get(i));
         }
-        return sw.toString();
+        return content.toString();
     }
 }
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.commands.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Helpers to move data between the stages of a pipeline in bulk.
+ *
+ * Each write to the standard output of a command in a pipeline is a separate
+ * transfer to the next stage, which wakes it up.  Commands should rather write
+ * large chunks and only flush when they are about to wait for more input, so
+ * that interactive pipelines (e.g. <code>log:tail | grep</code>) still see
+ * their output as soon as it is available.
+ */
+public final class Streams {
+
+    public static final int BUFFER_SIZE = 8 * 1024;
+
+    private Streams() {
+    }
+
+    /**
+     * Wrap the given stream in a buffered, non auto-flushing, print stream.
+     * The returned stream must be flushed by the caller.
+     */
+    public static PrintStream buffered(OutputStream out) {
+        return new PrintStream(new BufferedOutputStream(out, BUFFER_SIZE), false);
+    }
+
+    /**
+     * Copy the input to the output in chunks, flushing the output each time
+     * reading the input may block.  The streams are not closed.
+     */
+    public static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        for (;;) {
+            if (in.available() == 0) {
+                out.flush();
+            }
+            int len = in.read(buf);
+            if (len < 0) {
+                break;
+            }
+            out.write(buf, 0, len);
+        }
+        out.flush();
+    }
+
+}
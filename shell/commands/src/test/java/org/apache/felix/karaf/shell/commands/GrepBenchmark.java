@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.commands;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.felix.gogo.commands.basic.DefaultActionPreparator;
+
+/**
+ * Measures the throughput of shell:grep over synthetic log data.
+ *
+ * Run with: <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.apache.felix.karaf.shell.commands.GrepBenchmark</code>
+ */
+public class GrepBenchmark {
+
+    private static final int SIZE = 64 * 1024 * 1024;
+    private static final int ITERATIONS = 5;
+
+    private static final String[] LEVELS = { "DEBUG", "INFO ", "INFO ", "INFO ", "WARN ", "ERROR" };
+    private static final String[] LOGGERS = {
+        "org.apache.felix.karaf.features.internal.FeaturesServiceImpl",
+        "org.apache.felix.karaf.shell.ssh.ShellFactoryImpl",
+        "org.apache.aries.blueprint.container.BlueprintContainerImpl",
+        "org.ops4j.pax.web.service.internal.Activator"
+    };
+
+    private static final String[][] RUNS = {
+        { "ERROR" },
+        { "-c", "ERROR" },
+        { "-i", "exception" },
+        { "-v", "INFO" },
+        { "-C", "3", "ERROR" },
+        { "-n", "-w", "Blueprint\\w+" },
+        { "--color", "always", "Feature" },
+    };
+
+    public static void main(String[] args) throws Exception {
+        byte[] data = generate(SIZE);
+        PrintStream out = System.out;
+        InputStream in = System.in;
+        PrintStream nul = new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        try {
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (String[] run : RUNS) {
+                    System.setOut(nul);
+                    System.setIn(new ByteArrayInputStream(data));
+                    List<Object> params = new ArrayList<Object>(Arrays.asList((Object[]) run));
+                    if (!params.contains("--color")) {
+                        params.add(0, "never");
+                        params.add(0, "--color");
+                    }
+                    GrepAction grep = new GrepAction();
+                    new DefaultActionPreparator().prepare(grep, null, params);
+                    long t0 = System.nanoTime();
+                    grep.doExecute();
+                    long t1 = System.nanoTime();
+                    out.println(String.format("%-32s %8.1f MB/s", Arrays.toString(run),
+                                              data.length / (1024.0 * 1024.0) / ((t1 - t0) / 1e9)));
+                }
+                out.println();
+            }
+        } finally {
+            System.setOut(out);
+            System.setIn(in);
+        }
+    }
+
+    private static byte[] generate(int size) {
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder(size + 256);
+        long time = 1262304000000L;
+        while (sb.length() < size) {
+            time += random.nextInt(100);
+            String level = LEVELS[random.nextInt(LEVELS.length)];
+            sb.append(String.format("%tF %<tT,%<tL | ", time));
+            sb.append(level).append(" | ");
+            sb.append("Thread-").append(random.nextInt(32)).append(" | ");
+            sb.append(LOGGERS[random.nextInt(LOGGERS.length)]).append(" | ");
+            if ("ERROR".equals(level)) {
+                sb.append("Unexpected Exception while processing request ").append(random.nextInt());
+            } else {
+                sb.append("Processed bundle ").append(random.nextInt(200)).append(" in ")
+                  .append(random.nextInt(1000)).append(" ms");
+            }
+            sb.append('\n');
+        }
+        return sb.toString().getBytes();
+    }
+
+}
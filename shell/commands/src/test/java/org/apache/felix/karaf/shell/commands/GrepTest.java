@@ -19,11 +19,16 @@
 package org.apache.felix.karaf.shell.commands;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.TestCase;
 import org.apache.felix.gogo.commands.basic.DefaultActionPreparator;
+import org.fusesource.jansi.Ansi;
 
 public class GrepTest extends TestCase {
 
@@ -41,4 +46,57 @@ public class GrepTest extends TestCase {
             System.setIn(input);
         }
     }
+
+    public void testContext() throws Exception {
+        assertEquals("1\n2\n3\n", grep("1\n2\n3\n4\n5\n6\n7\n8\n9\n", "-C", "1", "2"));
+        assertEquals("2\n3\n--\n8\n9\n", grep("1\n2\n3\n4\n5\n6\n7\n8\n9\n", "-A", "1", "[28]"));
+        assertEquals("2\n3\n4\n", grep("1\n2\n3\n4\n5\n6\n7\n8\n9\n", "-B", "2", "4"));
+        // overlapping groups are merged
+        assertEquals("2\n3\n4\n5\n6\n", grep("1\n2\n3\n4\n5\n6\n7\n8\n9\n", "-C", "1", "[35]"));
+    }
+
+    public void testLineNumbers() throws Exception {
+        assertEquals("     2  b\n     3  c\n", grep("a\nb\nc\n", "-n", "-A", "1", "b"));
+    }
+
+    public void testCount() throws Exception {
+        assertEquals("2\n", grep("foo foo\nbar\nfoo\n", "-c", "foo"));
+        assertEquals("1\n", grep("foo foo\nbar\nfoo\n", "-c", "-v", "foo"));
+    }
+
+    public void testOptions() throws Exception {
+        assertEquals("bar\n", grep("foo\nbar\n", "-v", "foo"));
+        assertEquals("FOO\n", grep("FOO\nbar\n", "-i", "foo"));
+        assertEquals("a foo\n", grep("a foo\nfoobar\n", "-w", "foo|bar"));
+        assertEquals("foo\n", grep("foo\nfoobar\n", "-x", "fo+"));
+    }
+
+    public void testHighlight() throws Exception {
+        String start = Ansi.ansi().bg(Ansi.Color.YELLOW).fg(Ansi.Color.BLACK).toString();
+        String end = Ansi.ansi().reset().toString();
+        assertEquals("a" + start + "$b" + end + "c" + start + "$b" + end + "\n", grep("a$bc$b\n", "--color", "always", "\\$b"));
+    }
+
+    private String grep(String input, String... args) throws Exception {
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            System.setIn(new ByteArrayInputStream(input.getBytes()));
+            System.setOut(new PrintStream(baos));
+            GrepAction grep = new GrepAction();
+            List<Object> params = new ArrayList<Object>(Arrays.asList(args));
+            if (!params.contains("--color")) {
+                params.add(0, "never");
+                params.add(0, "--color");
+            }
+            new DefaultActionPreparator().prepare(grep, null, params);
+            grep.doExecute();
+            System.out.flush();
+            return baos.toString().replace(System.getProperty("line.separator"), "\n");
+        } finally {
+            System.setIn(in);
+            System.setOut(out);
+        }
+    }
 }
@@ -18,11 +18,18 @@
  */
 package org.apache.felix.karaf.shell.commands;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Collections;
+import java.util.Random;
 
 import junit.framework.TestCase;
+import org.apache.felix.gogo.commands.basic.DefaultActionPreparator;
 
 public class SortTest extends TestCase {
 
@@ -57,4 +64,61 @@ public class SortTest extends TestCase {
         assertTrue(Arrays.asList(s1, s2, s0).equals(strings));
     }
 
+    public void testNumericKeys() {
+        SortAction.SortComparator comparator = new SortAction.SortComparator(false, false, false, false, ' ', Arrays.asList("2n"));
+        List<String> strings = Arrays.asList("a 10", "b 9", "c foo", "d -1.5");
+        Collections.sort(strings, comparator);
+        assertEquals(Arrays.asList("d -1.5", "c foo", "b 9", "a 10"), strings);
+    }
+
+    public void testParseSize() {
+        assertEquals(100, SortAction.parseSize("100"));
+        assertEquals(2048, SortAction.parseSize("2k"));
+        assertEquals(32 * 1024 * 1024, SortAction.parseSize("32M"));
+    }
+
+    public void testSortAction() throws Exception {
+        assertEquals("a\nb\nb\nc\n", sort("b\nc\na\nb\n"));
+        assertEquals("a\nb\nc\n", sort("b\nc\na\nb\n", "-u"));
+        assertEquals("c\nb\nb\na\n", sort("b\nc\na\nb\n", "-r"));
+    }
+
+    public void testExternalSort() throws Exception {
+        Random random = new Random(0);
+        List<String> lines = new ArrayList<String>();
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            String line = random.nextInt(1000) + " line " + i;
+            lines.add(line);
+            input.append(line).append('\n');
+        }
+        // a 1k buffer holds a few lines only, so that several merge passes are needed
+        String sorted = sort(input.toString(), "-S", "1k", "-n");
+
+        Collections.sort(lines, new SortAction.SortComparator(false, false, false, true, '\0', null));
+        StringBuilder expected = new StringBuilder();
+        for (String line : lines) {
+            expected.append(line).append('\n');
+        }
+        assertEquals(expected.toString(), sorted);
+    }
+
+    private String sort(String input, String... args) throws Exception {
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            System.setIn(new ByteArrayInputStream(input.getBytes()));
+            System.setOut(new PrintStream(baos));
+            SortAction sort = new SortAction();
+            new DefaultActionPreparator().prepare(sort, null, new ArrayList<Object>(Arrays.asList(args)));
+            sort.doExecute();
+            System.out.flush();
+            return baos.toString().replace(System.getProperty("line.separator"), "\n");
+        } finally {
+            System.setIn(in);
+            System.setOut(out);
+        }
+    }
+
 }
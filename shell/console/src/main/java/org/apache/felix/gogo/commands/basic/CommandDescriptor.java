@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.gogo.commands.basic;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.felix.gogo.commands.Argument;
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+
+/**
+ * The options and arguments of an action class, introspected once per class.
+ *
+ * Descriptors are cached in a weak map keyed by the action class, so that
+ * preparing an action does not need to walk the class hierarchy, read the
+ * annotations and make the fields accessible on each command invocation.
+ * Values are held through a soft reference as they refer to the class
+ * through its fields, which would otherwise prevent the class from being
+ * unloaded.
+ */
+public final class CommandDescriptor {
+
+    private static final Map<Class, SoftReference<CommandDescriptor>> DESCRIPTORS =
+            new WeakHashMap<Class, SoftReference<CommandDescriptor>>();
+
+    private final Command command;
+    private final Map<Option, Field> options;
+    private final Map<Argument, Field> arguments;
+    private final List<Argument> orderedArguments;
+    private final Map<String, Option> optionsByName;
+    private final Map<Field, Type> types;
+
+    /**
+     * Retrieve the descriptor for the given action class.
+     *
+     * @throws IllegalArgumentException if the argument indexes of the class are invalid
+     */
+    public static CommandDescriptor get(Class type) {
+        synchronized (DESCRIPTORS) {
+            SoftReference<CommandDescriptor> ref = DESCRIPTORS.get(type);
+            CommandDescriptor descriptor = ref != null ? ref.get() : null;
+            if (descriptor != null) {
+                return descriptor;
+            }
+        }
+        // introspect outside of the lock, concurrent callers would build equivalent descriptors
+        CommandDescriptor descriptor = new CommandDescriptor(type);
+        synchronized (DESCRIPTORS) {
+            DESCRIPTORS.put(type, new SoftReference<CommandDescriptor>(descriptor));
+        }
+        return descriptor;
+    }
+
+    private CommandDescriptor(Class<?> actionClass) {
+        Map<Option, Field> options = new LinkedHashMap<Option, Field>();
+        Map<Argument, Field> arguments = new LinkedHashMap<Argument, Field>();
+        List<Argument> orderedArguments = new ArrayList<Argument>();
+        Map<String, Option> optionsByName = new HashMap<String, Option>();
+        Map<Field, Type> types = new HashMap<Field, Type>();
+        for (Class type = actionClass; type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                Option option = field.getAnnotation(Option.class);
+                if (option != null) {
+                    options.put(option, field);
+                    addName(optionsByName, option.name(), option);
+                    for (String alias : option.aliases()) {
+                        addName(optionsByName, alias, option);
+                    }
+                }
+                Argument argument = field.getAnnotation(Argument.class);
+                if (argument != null) {
+                    arguments.put(argument, field);
+                    int index = argument.index();
+                    while (orderedArguments.size() <= index) {
+                        orderedArguments.add(null);
+                    }
+                    if (orderedArguments.get(index) != null) {
+                        throw new IllegalArgumentException("Duplicate argument index: " + index);
+                    }
+                    orderedArguments.set(index, argument);
+                }
+                if (option != null || argument != null) {
+                    field.setAccessible(true);
+                    types.put(field, field.getGenericType());
+                }
+            }
+        }
+        // Check indexes are correct
+        for (int i = 0; i < orderedArguments.size(); i++) {
+            if (orderedArguments.get(i) == null) {
+                throw new IllegalArgumentException("Missing argument for index: " + i);
+            }
+        }
+        this.command = actionClass.getAnnotation(Command.class);
+        this.options = Collections.unmodifiableMap(options);
+        this.arguments = Collections.unmodifiableMap(arguments);
+        this.orderedArguments = Collections.unmodifiableList(orderedArguments);
+        this.optionsByName = optionsByName;
+        this.types = types;
+    }
+
+    private static void addName(Map<String, Option> optionsByName, String name, Option option) {
+        // the first declared option wins, subclass fields being introspected first
+        if (!optionsByName.containsKey(name)) {
+            optionsByName.put(name, option);
+        }
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    public Map<Option, Field> getOptions() {
+        return options;
+    }
+
+    public Map<Argument, Field> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Arguments sorted by index.
+     */
+    public List<Argument> getOrderedArguments() {
+        return orderedArguments;
+    }
+
+    /**
+     * Find an option by its name or one of its aliases.
+     */
+    public Option getOption(String name) {
+        return optionsByName.get(name);
+    }
+
+    public Field getField(Option option) {
+        return options.get(option);
+    }
+
+    public Field getField(Argument argument) {
+        return arguments.get(argument);
+    }
+
+    /**
+     * The generic type of an option or argument field.
+     */
+    public Type getType(Field field) {
+        return types.get(field);
+    }
+
+}
@@ -75,36 +75,10 @@ public class DefaultActionPreparator implements ActionPreparator {
 
     public boolean prepare(Action action, CommandSession session, List<Object> params) throws Exception
     {
-        Map<Option, Field> options = new HashMap<Option, Field>();
-        Map<Argument, Field> arguments = new HashMap<Argument, Field>();
-        List<Argument> orderedArguments = new ArrayList<Argument>();
-        // Introspect
-        for (Class type = action.getClass(); type != null; type = type.getSuperclass()) {
-            for (Field field : type.getDeclaredFields()) {
-                Option option = field.getAnnotation(Option.class);
-                if (option != null) {
-                    options.put(option, field);
-                }
-                Argument argument = field.getAnnotation(Argument.class);
-                if (argument != null) {
-                    arguments.put(argument, field);
-                    int index = argument.index();
-                    while (orderedArguments.size() <= index) {
-                        orderedArguments.add(null);
-                    }
-                    if (orderedArguments.get(index) != null) {
-                        throw new IllegalArgumentException("Duplicate argument index: " + index);
-                    }
-                    orderedArguments.set(index, argument);
-                }
-            }
-        }
-        // Check indexes are correct
-        for (int i = 0; i < orderedArguments.size(); i++) {
-            if (orderedArguments.get(i) == null) {
-                throw new IllegalArgumentException("Missing argument for index: " + i);
-            }
-        }
+        CommandDescriptor descriptor = CommandDescriptor.get(action.getClass());
+        Map<Option, Field> options = descriptor.getOptions();
+        Map<Argument, Field> arguments = descriptor.getArguments();
+        List<Argument> orderedArguments = descriptor.getOrderedArguments();
         // Populate
         Map<Option, Object> optionValues = new HashMap<Option, Object>();
         Map<Argument, Object> argumentValues = new HashMap<Argument, Object>();
@@ -113,8 +87,8 @@ public class DefaultActionPreparator implements ActionPreparator {
         for (Iterator<Object> it = params.iterator(); it.hasNext();) {
             Object param = it.next();
             // Check for help
-            if (HELP.name().equals(param) || Arrays.asList(HELP.aliases()).contains(param)) {
-                printUsage(session, action.getClass().getAnnotation(Command.class), options.keySet(), arguments.keySet(), System.out);
+            if (HELP.name().equals(param)) {
+                printUsage(session, descriptor.getCommand(), options.keySet(), arguments.keySet(), System.out);
                 return false;
             }
             if (processOptions && param instanceof String && ((String) param).startsWith("-")) {
@@ -127,13 +101,7 @@ public class DefaultActionPreparator implements ActionPreparator {
                 } else {
                     name = (String) param;
                 }
-                Option option = null;
-                for (Option opt : options.keySet()) {
-                    if (name.equals(opt.name()) || Arrays.binarySearch(opt.aliases(), name) >= 0) {
-                        option = opt;
-                        break;
-                    }
-                }
+                Option option = descriptor.getOption(name);
                 if (option == null) {
                     throw new IllegalArgumentException("Undefined option: " + param);
                 }
@@ -192,14 +160,12 @@ public class DefaultActionPreparator implements ActionPreparator {
         // Convert and inject values
         for (Map.Entry<Option, Object> entry : optionValues.entrySet()) {
             Field field = options.get(entry.getKey());
-            Object value = convert(action, session, entry.getValue(), field.getGenericType());
-            field.setAccessible(true);
+            Object value = convert(action, session, entry.getValue(), descriptor.getType(field));
             field.set(action, value);
         }
         for (Map.Entry<Argument, Object> entry : argumentValues.entrySet()) {
             Field field = arguments.get(entry.getKey());
-            Object value = convert(action, session, entry.getValue(), field.getGenericType());
-            field.setAccessible(true);
+            Object value = convert(action, session, entry.getValue(), descriptor.getType(field));
             field.set(action, value);
         }
         return true;
@@ -54,6 +54,7 @@ public class BlueprintCommand extends AbstractCommand implements CompletableFunc
     protected Converter blueprintConverter;
     protected String actionId;
     protected List<Completer> completers;
+    private ActionPreparator preparator;
 
     public void setBlueprintContainer(BlueprintContainer blueprintContainer) {
         this.blueprintContainer = blueprintContainer;
@@ -77,7 +78,11 @@ public class BlueprintCommand extends AbstractCommand implements CompletableFunc
 
     @Override
     protected ActionPreparator getPreparator() throws Exception {
-        return new BlueprintActionPreparator();
+        // the preparator is stateless, the action metadata being cached per class
+        if (preparator == null) {
+            preparator = new BlueprintActionPreparator();
+        }
+        return preparator;
     }
 
     class BlueprintActionPreparator extends DefaultActionPreparator {
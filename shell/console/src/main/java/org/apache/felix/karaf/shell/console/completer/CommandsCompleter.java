@@ -18,12 +18,14 @@
  */
 package org.apache.felix.karaf.shell.console.completer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.HashSet;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.felix.karaf.shell.console.Completer;
@@ -32,9 +34,27 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.command.CommandProcessor;
 
+/**
+ * Completer for the registered commands.
+ *
+ * Command names are kept in a sorted array, updated when commands are registered
+ * or unregistered, so that completing the first token is a binary search.
+ * The completers of the command arguments are only looked up, once, when the
+ * arguments of that command are completed.
+ */
 public class CommandsCompleter implements Completer {
 
-    private final Map<ServiceReference, Completer> completers = new ConcurrentHashMap<ServiceReference, Completer>();
+    private static final String[] NO_NAMES = new String[0];
+
+    private final ArgumentCompleter.ArgumentDelimiter delimiter = new ArgumentCompleter.WhitespaceArgumentDelimiter();
+
+    // guarded by this
+    private final Map<ServiceReference, CommandEntry> entries = new HashMap<ServiceReference, CommandEntry>();
+    private final Map<String, List<CommandEntry>> entriesByName = new HashMap<String, List<CommandEntry>>();
+
+    // read without locking
+    private final Map<String, CommandEntry> commands = new ConcurrentHashMap<String, CommandEntry>();
+    private volatile String[] names = NO_NAMES;
 
     private BundleContext bundleContext;
 
@@ -42,41 +62,69 @@ public class CommandsCompleter implements Completer {
         this.bundleContext = bundleContext;
     }
 
-    public void register(ServiceReference reference) {
+    public synchronized void register(ServiceReference reference) {
         Set<String> functions = getNames(reference);
-        if (functions != null) {
-            List<Completer> cl = new ArrayList<Completer>();
-            cl.add(new StringsCompleter(functions));
-            try {
-                Object function = bundleContext.getService(reference);
-                if (function instanceof CompletableFunction) {
-                    List<Completer> fcl = ((CompletableFunction) function).getCompleters();
-                    if (fcl != null) {
-                        for (Completer c : fcl) {
-                            cl.add(c == null ? NullCompleter.INSTANCE : c);
-                        }
+        if (functions != null && !entries.containsKey(reference)) {
+            CommandEntry entry = new CommandEntry(reference, functions);
+            entries.put(reference, entry);
+            for (String name : functions) {
+                List<CommandEntry> l = entriesByName.get(name);
+                if (l == null) {
+                    l = new ArrayList<CommandEntry>(1);
+                    entriesByName.put(name, l);
+                    commands.put(name, entry);
+                    addName(name);
+                }
+                l.add(entry);
+            }
+        }
+    }
+
+    public synchronized void unregister(ServiceReference reference) {
+        if (reference != null) {
+            CommandEntry entry = entries.remove(reference);
+            if (entry != null) {
+                for (String name : entry.names) {
+                    List<CommandEntry> l = entriesByName.get(name);
+                    l.remove(entry);
+                    if (l.isEmpty()) {
+                        entriesByName.remove(name);
+                        commands.remove(name);
+                        removeName(name);
                     } else {
-                        cl.add(NullCompleter.INSTANCE);
+                        commands.put(name, l.get(0));
                     }
-                } else {
-                    cl.add(NullCompleter.INSTANCE);
                 }
-            } finally {
-                bundleContext.ungetService(reference);
             }
-            ArgumentCompleter c = new ArgumentCompleter(cl);
-            completers.put(reference, c);
         }
     }
 
-    public void unregister(ServiceReference reference) {
-        if (reference != null) {
-            completers.remove(reference);
+    private void addName(String name) {
+        String[] n = names;
+        int idx = Arrays.binarySearch(n, name);
+        if (idx < 0) {
+            idx = -idx - 1;
+            String[] nn = new String[n.length + 1];
+            System.arraycopy(n, 0, nn, 0, idx);
+            nn[idx] = name;
+            System.arraycopy(n, idx, nn, idx + 1, n.length - idx);
+            names = nn;
+        }
+    }
+
+    private void removeName(String name) {
+        String[] n = names;
+        int idx = Arrays.binarySearch(n, name);
+        if (idx >= 0) {
+            String[] nn = new String[n.length - 1];
+            System.arraycopy(n, 0, nn, 0, idx);
+            System.arraycopy(n, idx + 1, nn, idx, n.length - idx - 1);
+            names = nn;
         }
     }
 
     private Set<String> getNames(ServiceReference reference) {
-        Set<String> names = new HashSet<String>();
+        Set<String> names = new TreeSet<String>();
         Object scope = reference.getProperty(CommandProcessor.COMMAND_SCOPE);
         Object function = reference.getProperty(CommandProcessor.COMMAND_FUNCTION);
         if(scope != null && function != null)
@@ -98,9 +146,84 @@ public class CommandsCompleter implements Completer {
     }
 
     public int complete(String buffer, int cursor, List<String> candidates) {
-        int res =  new AggregateCompleter(completers.values()).complete(buffer, cursor, candidates);
+        ArgumentCompleter.ArgumentList list = delimiter.delimit(buffer, cursor);
+        int argIndex = list.getCursorArgumentIndex();
+        if (argIndex < 0) {
+            return -1;
+        }
+        if (argIndex == 0) {
+            return completeName(list, candidates);
+        }
+        CommandEntry entry = commands.get(list.getArguments()[0]);
+        if (entry == null) {
+            return -1;
+        }
+        int res = entry.getCompleter().complete(buffer, cursor, candidates);
         Collections.sort(candidates);
         return res;
     }
-}
 
+    private int completeName(ArgumentCompleter.ArgumentList list, List<String> candidates) {
+        String prefix = list.getCursorArgument();
+        if (prefix == null) {
+            prefix = "";
+        }
+        String[] n = names;
+        int idx = Arrays.binarySearch(n, prefix);
+        if (idx < 0) {
+            idx = -idx - 1;
+        }
+        int nb = 0;
+        for (int i = idx; i < n.length && n[i].startsWith(prefix); i++, nb++) {
+            candidates.add(n[i]);
+        }
+        if (nb == 0) {
+            return -1;
+        }
+        if (nb == 1) {
+            candidates.set(candidates.size() - 1, candidates.get(candidates.size() - 1) + " ");
+        }
+        return list.getBufferPosition() - list.getArgumentPosition();
+    }
+
+    private class CommandEntry {
+
+        final ServiceReference reference;
+        final Set<String> names;
+        private volatile Completer completer;
+
+        CommandEntry(ServiceReference reference, Set<String> names) {
+            this.reference = reference;
+            this.names = names;
+        }
+
+        Completer getCompleter() {
+            Completer c = completer;
+            if (c == null) {
+                List<Completer> cl = new ArrayList<Completer>();
+                cl.add(new StringsCompleter(names));
+                List<Completer> fcl = null;
+                try {
+                    Object function = bundleContext.getService(reference);
+                    if (function instanceof CompletableFunction) {
+                        fcl = ((CompletableFunction) function).getCompleters();
+                    }
+                } finally {
+                    bundleContext.ungetService(reference);
+                }
+                if (fcl != null) {
+                    for (Completer fc : fcl) {
+                        cl.add(fc == null ? NullCompleter.INSTANCE : fc);
+                    }
+                } else {
+                    cl.add(NullCompleter.INSTANCE);
+                }
+                c = new ArgumentCompleter(cl);
+                completer = c;
+            }
+            return c;
+        }
+
+    }
+
+}
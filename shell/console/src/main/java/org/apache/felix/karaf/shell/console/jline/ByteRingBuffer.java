@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.console.jline;
+
+/**
+ * A bounded circular buffer of bytes between a producer and a consumer thread.
+ *
+ * Bytes are stored in a primitive array and moved with bulk copies, so that
+ * large inputs (such as a script pasted in a terminal) do not have to go
+ * through the buffer one boxed byte at a time.  Writers block while the buffer
+ * is full and readers block while it is empty, both can be interrupted.
+ */
+public class ByteRingBuffer {
+
+    private final byte[] buffer;
+    private int head;
+    private int count;
+    private boolean closed;
+
+    public ByteRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be greater than 0");
+        }
+        buffer = new byte[capacity];
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public synchronized int available() {
+        return count;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Write a single byte, waiting for some space to be available.
+     *
+     * @return <code>false</code> if the buffer has been closed
+     */
+    public synchronized boolean write(int b) throws InterruptedException {
+        while (count == buffer.length && !closed) {
+            wait();
+        }
+        if (closed) {
+            return false;
+        }
+        buffer[(head + count) % buffer.length] = (byte) b;
+        count++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Write all the given bytes, waiting for space to be available as needed.
+     *
+     * @return <code>false</code> if the buffer has been closed
+     */
+    public synchronized boolean write(byte[] b, int off, int len) throws InterruptedException {
+        while (len > 0) {
+            while (count == buffer.length && !closed) {
+                wait();
+            }
+            if (closed) {
+                return false;
+            }
+            int tail = (head + count) % buffer.length;
+            // copy up to the end of the array or the start of the unread data
+            int nb = Math.min(len, tail >= head ? buffer.length - tail : head - tail);
+            nb = Math.min(nb, buffer.length - count);
+            System.arraycopy(b, off, buffer, tail, nb);
+            count += nb;
+            off += nb;
+            len -= nb;
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Read a single byte, waiting for data to be available.
+     *
+     * @return the byte read or <code>-1</code> if the buffer is closed and empty
+     */
+    public synchronized int read() throws InterruptedException {
+        while (count == 0 && !closed) {
+            wait();
+        }
+        if (count == 0) {
+            return -1;
+        }
+        int b = buffer[head] & 0xFF;
+        head = (head + 1) % buffer.length;
+        count--;
+        notifyAll();
+        return b;
+    }
+
+    /**
+     * Read as many bytes as available, up to <code>len</code>.
+     *
+     * @param wait whether to wait for at least one byte to be available
+     * @return the number of bytes read or <code>-1</code> if the buffer is closed and empty
+     */
+    public synchronized int read(byte[] b, int off, int len, boolean wait) throws InterruptedException {
+        while (wait && count == 0 && !closed) {
+            wait();
+        }
+        if (count == 0) {
+            return closed ? -1 : 0;
+        }
+        int nb = Math.min(len, count);
+        int first = Math.min(nb, buffer.length - head);
+        System.arraycopy(buffer, head, b, off, first);
+        if (first < nb) {
+            System.arraycopy(buffer, 0, b, off + first, nb - first);
+        }
+        head = (head + nb) % buffer.length;
+        count -= nb;
+        notifyAll();
+        return nb;
+    }
+
+    /**
+     * Close the buffer: writers are released and readers will
+     * get the remaining bytes followed by an end of stream.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+}
@@ -28,11 +28,15 @@ import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -62,11 +66,16 @@ public class Console implements Runnable
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Console.class);
 
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+    private static final int PIPE_CHUNK_SIZE = 8 * 1024;
+
     private CommandSession session;
     private ConsoleReader reader;
-    private BlockingQueue<Integer> queue;
+    private ByteRingBuffer buffer;
     private boolean interrupt;
     private Thread pipe;
+    private final Object pipeLock = new Object();
+    private Executor executor;
     private boolean running;
     private Runnable closeCallback;
     private Terminal terminal;
@@ -87,7 +96,7 @@ public class Console implements Runnable
         this.in = in;
         this.out = out;
         this.err = err;
-        this.queue = new ArrayBlockingQueue<Integer>(1024);
+        this.buffer = new ByteRingBuffer(INPUT_BUFFER_SIZE);
         this.terminal = term == null ? new UnsupportedTerminal() : term;
         this.consoleInput = new ConsoleInputStream();
         this.session = processor.createSession(this.consoleInput, this.out, this.err);
@@ -118,19 +127,29 @@ public class Console implements Runnable
         if (Boolean.getBoolean("jline.nobell")) {
             reader.setBellEnabled(false);
         }
-        pipe = new Thread(new Pipe());
-        pipe.setName("gogo shell pipe thread");
-        pipe.setDaemon(true);
     }
 
     public CommandSession getSession() {
         return session;
     }
 
+    /**
+     * Set the executor used to run the thread reading the terminal input.
+     * By default, a new daemon thread is created when the console is started.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
     public void close() {
         //System.err.println("Closing");
         running = false;
-        pipe.interrupt();
+        buffer.close();
+        synchronized (pipeLock) {
+            if (pipe != null) {
+                pipe.interrupt();
+            }
+        }
         Thread.interrupted();
     }
 
@@ -138,7 +157,14 @@ public class Console implements Runnable
     {
         thread = Thread.currentThread();
         running = true;
-        pipe.start();
+        if (executor != null) {
+            executor.execute(new Pipe());
+        } else {
+            Thread t = new Thread(new Pipe());
+            t.setName("gogo shell pipe thread");
+            t.setDaemon(true);
+            t.start();
+        }
         Properties props = loadBrandingProperties();
         welcome(props);
         setSessionProperties(props);
@@ -312,35 +338,23 @@ public class Console implements Runnable
 
     private class ConsoleInputStream extends InputStream
     {
-        private int read(boolean wait) throws IOException
+        @Override
+        public int read() throws IOException
         {
             if (!running) {
                 return -1;
             }
             checkInterrupt();
-            Integer i;
-            if (wait) {
-                try {
-                    i = queue.take();
-                } catch (InterruptedException e) {
-                    throw new InterruptedIOException();
-                }
-                checkInterrupt();
-            } else {
-                i = queue.poll();
-            }
-            if (i == null) {
-                return -1;
+            int i;
+            try {
+                i = buffer.read();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
             }
+            checkInterrupt();
             return i;
         }
 
-        @Override
-        public int read() throws IOException
-        {
-            return read(true);
-        }
-
         @Override
         public int read(byte b[], int off, int len) throws IOException
         {
@@ -351,29 +365,44 @@ public class Console implements Runnable
             } else if (len == 0) {
                 return 0;
             }
-
-            int nb = 1;
-            int i = read(true);
-            if (i < 0) {
+            if (!running) {
                 return -1;
             }
-            b[off++] = (byte) i;
-            while (nb < len) {
-                i = read(false);
-                if (i < 0) {
-                    return nb;
-                }
-                b[off++] = (byte) i;
-                nb++;
+            checkInterrupt();
+            int nb;
+            try {
+                nb = buffer.read(b, off, len, true);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
             }
+            checkInterrupt();
             return nb;
         }
+
+        @Override
+        public int available() throws IOException
+        {
+            return buffer.available();
+        }
     }
 
     private class Pipe implements Runnable
     {
+        private final byte[] chunk = new byte[PIPE_CHUNK_SIZE];
+        private int length;
+        // characters decoded by the terminal are encoded back with the platform charset
+        private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(2);
+        // room for a surrogate pair
+        private final int maxBytes = 2 * (int) Math.ceil(encoder.maxBytesPerChar());
+
         public void run()
         {
+            synchronized (pipeLock) {
+                pipe = Thread.currentThread();
+            }
             try {
                 while (running)
                 {
@@ -387,7 +416,8 @@ public class Console implements Runnable
                         }
                         if (c == -1)
                         {
-                            queue.put(c);
+                            flush();
+                            buffer.close();
                             return;
                         }
                         else if (c == 4)
@@ -396,11 +426,18 @@ public class Console implements Runnable
                         }
                         else if (c == 3)
                         {
+                            flush();
                             err.println("^C");
                             reader.getCursorBuffer().clearBuffer();
                             interrupt();
                         }
-                        queue.put(c);
+                        append(c);
+                        // keys typed are handed over immediately, while
+                        // pasted input is accumulated and moved in bulk
+                        if (c == 3 || length > chunk.length - maxBytes || in.available() <= 0)
+                        {
+                            flush();
+                        }
                     }
                     catch (Throwable t) {
                         return;
@@ -410,6 +447,35 @@ public class Console implements Runnable
             finally
             {
                 close();
+                // the thread may be reused by the executor, so make sure
+                // it can not be interrupted by this console anymore
+                synchronized (pipeLock) {
+                    pipe = null;
+                }
+                Thread.interrupted();
+            }
+        }
+
+        private void append(int c)
+        {
+            if (c < 0x80 && chars.position() == 0) {
+                chunk[length++] = (byte) c;
+            } else {
+                chars.put((char) c);
+                chars.flip();
+                ByteBuffer bytes = ByteBuffer.wrap(chunk, length, chunk.length - length);
+                // a high surrogate is kept in the buffer until the low one is appended
+                encoder.encode(chars, bytes, false);
+                length = bytes.position();
+                chars.compact();
+            }
+        }
+
+        private void flush() throws InterruptedException
+        {
+            if (length > 0) {
+                buffer.write(chunk, 0, length);
+                length = 0;
             }
         }
     }
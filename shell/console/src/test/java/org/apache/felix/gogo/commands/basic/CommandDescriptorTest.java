@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.gogo.commands.basic;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.apache.felix.gogo.commands.Action;
+import org.apache.felix.gogo.commands.Argument;
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+import org.osgi.service.command.CommandSession;
+
+public class CommandDescriptorTest extends TestCase {
+
+    public void testDescriptorIsCached() {
+        CommandDescriptor d1 = CommandDescriptor.get(MyAction.class);
+        CommandDescriptor d2 = CommandDescriptor.get(MyAction.class);
+        assertSame(d1, d2);
+        assertEquals("my-action", d1.getCommand().name());
+        assertEquals(2, d1.getOptions().size());
+        assertEquals(2, d1.getOrderedArguments().size());
+        assertEquals("name", d1.getOrderedArguments().get(0).name());
+    }
+
+    public void testUnsortedAliases() throws Exception {
+        CommandDescriptor d = CommandDescriptor.get(MyAction.class);
+        Option option = d.getOption("-v");
+        assertNotNull(option);
+        assertSame(option, d.getOption("--verbose"));
+        assertSame(option, d.getOption("--chatty"));
+        assertNull(d.getOption("--unknown"));
+
+        MyAction action = new MyAction();
+        assertTrue(new DefaultActionPreparator().prepare(action, null, Arrays.<Object>asList("--chatty", "-c", "3", "foo", "1", "2")));
+        assertTrue(action.verbose);
+        assertEquals(3, action.count);
+        assertEquals("foo", action.name);
+        assertEquals(Arrays.asList(1, 2), action.values);
+    }
+
+    public void testInheritedFields() throws Exception {
+        SubAction action = new SubAction();
+        assertTrue(new DefaultActionPreparator().prepare(action, null, Arrays.<Object>asList("-v", "-f", "bar")));
+        assertTrue(action.verbose);
+        assertTrue(action.force);
+        assertEquals("bar", action.name);
+    }
+
+    public void testDuplicateIndex() {
+        try {
+            CommandDescriptor.get(DuplicateIndexAction.class);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Duplicate argument index: 0", e.getMessage());
+        }
+    }
+
+    @Command(scope = "test", name = "my-action", description = "My Action")
+    public static class MyAction implements Action {
+
+        @Option(name = "-v", aliases = { "--verbose", "--chatty" }, description = "Verbose")
+        boolean verbose;
+
+        @Option(name = "-c", aliases = { "--count" }, description = "Count")
+        int count;
+
+        @Argument(index = 0, name = "name", description = "Name")
+        String name;
+
+        @Argument(index = 1, name = "values", description = "Values", multiValued = true)
+        List<Integer> values;
+
+        public Object execute(CommandSession session) throws Exception {
+            return null;
+        }
+    }
+
+    @Command(scope = "test", name = "sub-action", description = "Sub Action")
+    public static class SubAction extends MyAction {
+
+        @Option(name = "-f", description = "Force")
+        boolean force;
+
+    }
+
+    public static class DuplicateIndexAction implements Action {
+
+        @Argument(index = 0, name = "first", description = "First")
+        String first;
+
+        @Argument(index = 0, name = "second", description = "Second")
+        String second;
+
+        public Object execute(CommandSession session) throws Exception {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.console.completer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.apache.felix.karaf.shell.console.CompletableFunction;
+import org.apache.felix.karaf.shell.console.Completer;
+import org.easymock.EasyMock;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.command.CommandProcessor;
+import org.osgi.service.command.CommandSession;
+
+public class CommandsCompleterTest extends TestCase {
+
+    private BundleContext bundleContext;
+    private CommandsCompleter completer;
+
+    protected void setUp() throws Exception {
+        bundleContext = EasyMock.createMock(BundleContext.class);
+        completer = new CommandsCompleter();
+        completer.setBundleContext(bundleContext);
+    }
+
+    public void testCompleteNames() {
+        // completing command names must not get any service
+        EasyMock.replay(bundleContext);
+        completer.register(command("osgi", new String[] { "list", "start", "stop" }));
+        completer.register(command("log", "display"));
+        completer.register(command("shell", "ls"));
+
+        assertEquals(Arrays.asList("osgi:start", "osgi:stop"), complete("osgi:st", 0));
+        assertEquals(Arrays.asList("log:display "), complete("log:", 0));
+        assertEquals(Arrays.asList("log:display", "osgi:list", "osgi:start", "osgi:stop", "shell:ls"), complete("", 0));
+        assertEquals(Collections.emptyList(), complete("foo", -1));
+        assertEquals(Arrays.asList("osgi:list "), complete("  osgi:l", 2));
+        EasyMock.verify(bundleContext);
+    }
+
+    public void testUnregister() {
+        EasyMock.replay(bundleContext);
+        ServiceReference osgi = command("osgi", new String[] { "list", "start" });
+        ServiceReference other = command("osgi", "start");
+        completer.register(osgi);
+        completer.register(other);
+        assertEquals(Arrays.asList("osgi:list", "osgi:start"), complete("osgi:", 0));
+        completer.unregister(osgi);
+        assertEquals(Arrays.asList("osgi:start "), complete("osgi:", 0));
+        completer.unregister(other);
+        assertEquals(Collections.emptyList(), complete("osgi:", -1));
+        EasyMock.verify(bundleContext);
+    }
+
+    public void testCompleteArguments() {
+        ServiceReference list = command("osgi", "list");
+        ServiceReference lists = command("osgi", "lists");
+        ServiceReference display = command("log", "display");
+        // only the matched command is asked for its completers, once
+        expectFunction(list, new StringsCompleter(new String[] { "foo", "bar" }));
+        expectFunction(lists, new StringsCompleter(new String[] { "baz" }));
+        EasyMock.replay(bundleContext);
+        completer.register(list);
+        completer.register(lists);
+        completer.register(display);
+
+        assertEquals(Arrays.asList("bar", "foo"), complete("osgi:list ", 10));
+        assertEquals(Arrays.asList("foo "), complete("osgi:list f", 10));
+        assertEquals(Arrays.asList("baz "), complete("osgi:lists ", 11));
+        assertEquals(Collections.emptyList(), complete("osgi:lis ", -1));
+        complete("osgi:list ", 10);
+        EasyMock.verify(bundleContext);
+    }
+
+    private List<String> complete(String buffer, int expectedPos) {
+        List<String> candidates = new ArrayList<String>();
+        int pos = completer.complete(buffer, buffer.length(), candidates);
+        assertEquals(expectedPos, pos);
+        return candidates;
+    }
+
+    private ServiceReference command(String scope, Object function) {
+        ServiceReference ref = EasyMock.createMock(ServiceReference.class);
+        EasyMock.expect(ref.getProperty(CommandProcessor.COMMAND_SCOPE)).andReturn(scope).anyTimes();
+        EasyMock.expect(ref.getProperty(CommandProcessor.COMMAND_FUNCTION)).andReturn(function).anyTimes();
+        EasyMock.replay(ref);
+        return ref;
+    }
+
+    private void expectFunction(ServiceReference ref, Completer argCompleter) {
+        final List<Completer> completers = Collections.singletonList(argCompleter);
+        EasyMock.expect(bundleContext.getService(ref)).andReturn(new CompletableFunction() {
+            public List<Completer> getCompleters() {
+                return completers;
+            }
+            public Object execute(CommandSession session, List<Object> arguments) throws Exception {
+                return null;
+            }
+        });
+        EasyMock.expect(bundleContext.ungetService(ref)).andReturn(true);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.console.jline;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class ByteRingBufferTest extends TestCase {
+
+    public void testWrapAround() throws Exception {
+        ByteRingBuffer buffer = new ByteRingBuffer(8);
+        byte[] b = new byte[8];
+
+        assertTrue(buffer.write("abcdef".getBytes(), 0, 6));
+        assertEquals(4, buffer.read(b, 0, 4, true));
+        assertEquals("abcd", new String(b, 0, 4));
+
+        // this write wraps around the end of the array
+        assertTrue(buffer.write("ghijkl".getBytes(), 0, 6));
+        assertEquals(8, buffer.available());
+        assertEquals(8, buffer.read(b, 0, 8, true));
+        assertEquals("efghijkl", new String(b, 0, 8));
+        assertEquals(0, buffer.read(b, 0, 8, false));
+    }
+
+    public void testSingleBytes() throws Exception {
+        ByteRingBuffer buffer = new ByteRingBuffer(2);
+        buffer.write(0xFF);
+        buffer.write('a');
+        assertEquals(0xFF, buffer.read());
+        assertEquals('a', buffer.read());
+    }
+
+    public void testClose() throws Exception {
+        ByteRingBuffer buffer = new ByteRingBuffer(8);
+        buffer.write("ab".getBytes(), 0, 2);
+        buffer.close();
+
+        assertFalse(buffer.write('c'));
+        byte[] b = new byte[8];
+        assertEquals(2, buffer.read(b, 0, 8, true));
+        assertEquals(-1, buffer.read(b, 0, 8, true));
+        assertEquals(-1, buffer.read());
+    }
+
+    public void testTransferLargerThanCapacity() throws Exception {
+        final ByteRingBuffer buffer = new ByteRingBuffer(16);
+        final byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    buffer.write(data, 0, data.length);
+                    buffer.close();
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+        };
+        writer.start();
+
+        byte[] read = new byte[data.length];
+        int off = 0;
+        int nb;
+        while ((nb = buffer.read(read, off, read.length - off, true)) > 0) {
+            off += nb;
+        }
+        writer.join();
+        assertEquals(data.length, off);
+        assertTrue(Arrays.equals(data, read));
+    }
+
+    public void testInterruptBlockedReader() throws Exception {
+        final ByteRingBuffer buffer = new ByteRingBuffer(8);
+        final Thread reader = Thread.currentThread();
+        new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                reader.interrupt();
+            }
+        }.start();
+        try {
+            buffer.read();
+            fail("Reader should have been interrupted");
+        } catch (InterruptedException e) {
+            // Expected
+        }
+    }
+
+}
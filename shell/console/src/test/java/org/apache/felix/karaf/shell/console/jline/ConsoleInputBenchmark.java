@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.console.jline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Measures the throughput of pasting a large script through the console input path.
+ *
+ * The producer hands over characters the way the console pipe thread does and
+ * the consumer drains them with bulk reads, like the <code>ConsoleReader</code>.
+ * The previous <code>BlockingQueue&lt;Integer&gt;</code> based path is measured
+ * for comparison.
+ *
+ * Run with: <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.apache.felix.karaf.shell.console.jline.ConsoleInputBenchmark</code>
+ */
+public class ConsoleInputBenchmark {
+
+    private static final int SCRIPT_SIZE = 16 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        byte[] script = createScript();
+        for (int i = 0; i < ITERATIONS; i++) {
+            report("BlockingQueue<Integer>", script.length, queue(script));
+            report("ByteRingBuffer", script.length, ringBuffer(script));
+        }
+    }
+
+    private static byte[] createScript() {
+        byte[] line = "osgi:install -s mvn:org.apache.felix.karaf/sample/1.0\n".getBytes();
+        byte[] script = new byte[SCRIPT_SIZE];
+        for (int i = 0; i < script.length; i++) {
+            script[i] = line[i % line.length];
+        }
+        return script;
+    }
+
+    private static void report(String name, int size, long nanos) {
+        double mb = size / (1024.0 * 1024.0);
+        System.out.println(String.format("%-24s %8.1f MB/s", name, mb / (nanos / 1e9)));
+    }
+
+    private static long queue(final byte[] script) throws Exception {
+        final BlockingQueue<Integer> queue = new ArrayBlockingQueue<Integer>(1024);
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    for (byte b : script) {
+                        queue.put((int) b);
+                    }
+                    queue.put(-1);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+        };
+        long t0 = System.nanoTime();
+        producer.start();
+        byte[] b = new byte[CHUNK_SIZE];
+        int i = queue.take();
+        while (i != -1) {
+            int nb = 0;
+            b[nb++] = (byte) i;
+            Integer next = null;
+            while (nb < b.length && (next = queue.poll()) != null && next != -1) {
+                b[nb++] = (byte) next.intValue();
+            }
+            i = next == null || nb == b.length ? queue.take() : -1;
+        }
+        producer.join();
+        return System.nanoTime() - t0;
+    }
+
+    private static long ringBuffer(final byte[] script) throws Exception {
+        final ByteRingBuffer buffer = new ByteRingBuffer(64 * 1024);
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    for (int off = 0; off < script.length; off += CHUNK_SIZE) {
+                        buffer.write(script, off, Math.min(CHUNK_SIZE, script.length - off));
+                    }
+                    buffer.close();
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+        };
+        long t0 = System.nanoTime();
+        producer.start();
+        byte[] b = new byte[CHUNK_SIZE];
+        while (buffer.read(b, 0, b.length, true) >= 0) {
+            // drain
+        }
+        producer.join();
+        return System.nanoTime() - t0;
+    }
+
+}
@@ -16,10 +16,7 @@
  */
 package org.apache.felix.karaf.shell.log;
 
-import java.util.Dictionary;
-import java.util.Enumeration;
 import java.util.Map;
-import java.util.TreeMap;
 
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.Configuration;
@@ -27,6 +24,7 @@ import org.osgi.service.cm.ConfigurationAdmin;
 import org.apache.felix.karaf.shell.console.OsgiCommandSupport;
 import org.apache.felix.gogo.commands.Argument;
 import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
 
 /**
  * Get the log level for a given logger
@@ -37,46 +35,39 @@ public class GetLogLevel extends OsgiCommandSupport {
     @Argument(index = 0, name = "logger", description = "The name of the logger, ALL or ROOT (default)", required = false, multiValued = false)
     String logger;
 
+    @Option(name = "-a", aliases = { "--all" }, description = "Show the levels of all configured loggers", required = false, multiValued = false)
+    boolean all;
+
     static final String CONFIGURATION_PID  = "org.ops4j.pax.logging";
-    static final String ROOT_LOGGER_PREFIX = "log4j.rootLogger";
-    static final String LOGGER_PREFIX      = "log4j.logger.";
     static final String ALL_LOGGER         = "ALL";
     static final String ROOT_LOGGER        = "ROOT";
 
+    private LogLevelSnapshot snapshot;
+
+    public LogLevelSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(LogLevelSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     protected Object doExecute() throws Exception {
-        ConfigurationAdmin cfgAdmin = getConfigAdmin();
-        Configuration cfg = cfgAdmin.getConfiguration(CONFIGURATION_PID, null);
-        Dictionary props = cfg.getProperties();
+        LogLevelSnapshot.Levels levels = getLevels();
 
         if (ROOT_LOGGER.equalsIgnoreCase(this.logger)) {
             this.logger = null;
         }
-        if (ALL_LOGGER.equalsIgnoreCase(logger)) {
-            String root = getLevel((String) props.get(ROOT_LOGGER_PREFIX));
-            Map<String, String> loggers = new TreeMap<String, String>();
-            for (Enumeration e = props.keys(); e.hasMoreElements();) {
-                String prop = (String) e.nextElement();
-                if (prop.startsWith(LOGGER_PREFIX)) {
-                    String val = getLevel((String) props.get(prop));
-                    loggers.put(prop.substring(LOGGER_PREFIX.length()), val);
-                }
-            }
-            System.out.println("ROOT: " + root);
-            for (String logger : loggers.keySet()) {
-                System.out.println(logger + ": " + loggers.get(logger));
+        if (all || ALL_LOGGER.equalsIgnoreCase(logger)) {
+            System.out.println("ROOT: " + levels.getRootLevel());
+            for (Map.Entry<String, String> entry : levels.getLoggerLevels().entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue());
             }
         } else {
             String logger = this.logger;
             String val;
             for (;;) {
-                String prop;
-                if (logger == null) {
-                    prop = ROOT_LOGGER_PREFIX;
-                } else {
-                    prop = LOGGER_PREFIX + logger;
-                }
-                val = (String) props.get(prop);
-                val = getLevel(val);
+                val = levels.getLevel(logger);
                 if (val != null || logger == null) {
                     break;
                 }
@@ -96,19 +87,12 @@ public class GetLogLevel extends OsgiCommandSupport {
         return null;
     }
 
-    protected String getLevel(String prop) {
-        if (prop == null) {
-            return null;
-        } else {
-            String val = prop.trim();
-            int idx = val.indexOf(",");
-            if (idx == 0) {
-                val = null;
-            } else if (idx > 0) {
-                val = val.substring(0, idx);
-            }
-            return val;
+    protected LogLevelSnapshot.Levels getLevels() throws Exception {
+        if (snapshot != null) {
+            return snapshot.getLevels();
         }
+        Configuration cfg = getConfigAdmin().getConfiguration(CONFIGURATION_PID, null);
+        return LogLevelSnapshot.parse(cfg.getProperties());
     }
 
     protected ConfigurationAdmin getConfigAdmin() {
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.shell.log;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.service.cm.ConfigurationListener;
+
+/**
+ * In-memory view of the log levels defined in the pax-logging configuration.
+ *
+ * The levels are parsed once from the configuration and kept until the
+ * configuration changes, so that reading levels does not need to go through
+ * the configuration admin and re-parse all properties each time.
+ */
+public class LogLevelSnapshot implements ConfigurationListener {
+
+    static final String CONFIGURATION_PID = "org.ops4j.pax.logging";
+
+    private ConfigurationAdmin configurationAdmin;
+    private final AtomicReference<Cached> cached = new AtomicReference<Cached>();
+    private final AtomicInteger generation = new AtomicInteger();
+
+    public ConfigurationAdmin getConfigurationAdmin() {
+        return configurationAdmin;
+    }
+
+    public void setConfigurationAdmin(ConfigurationAdmin configurationAdmin) {
+        this.configurationAdmin = configurationAdmin;
+    }
+
+    public Levels getLevels() throws IOException {
+        Cached c = cached.get();
+        // the cached levels are only used if no change happened since they were parsed
+        if (c != null && c.generation == generation.get()) {
+            return c.levels;
+        }
+        int gen = generation.get();
+        Configuration cfg = configurationAdmin.getConfiguration(CONFIGURATION_PID, null);
+        Levels l = parse(cfg.getProperties());
+        cached.compareAndSet(c, new Cached(gen, l));
+        return l;
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        cached.set(null);
+    }
+
+    public void configurationEvent(ConfigurationEvent event) {
+        if (CONFIGURATION_PID.equals(event.getPid())) {
+            invalidate();
+        }
+    }
+
+    public static Levels parse(Dictionary props) {
+        String root = null;
+        SortedMap<String, String> loggers = new TreeMap<String, String>();
+        if (props != null) {
+            root = getLevel((String) props.get(LogLevelUpdate.ROOT_LOGGER_PREFIX));
+            for (Enumeration e = props.keys(); e.hasMoreElements();) {
+                String prop = (String) e.nextElement();
+                if (prop.startsWith(LogLevelUpdate.LOGGER_PREFIX)) {
+                    String val = getLevel((String) props.get(prop));
+                    loggers.put(prop.substring(LogLevelUpdate.LOGGER_PREFIX.length()), val);
+                }
+            }
+        }
+        return new Levels(root, loggers);
+    }
+
+    static String getLevel(String prop) {
+        if (prop == null) {
+            return null;
+        } else {
+            String val = prop.trim();
+            int idx = val.indexOf(",");
+            if (idx == 0) {
+                val = null;
+            } else if (idx > 0) {
+                val = val.substring(0, idx);
+            }
+            return val;
+        }
+    }
+
+    private static class Cached {
+
+        final int generation;
+        final Levels levels;
+
+        Cached(int generation, Levels levels) {
+            this.generation = generation;
+            this.levels = levels;
+        }
+
+    }
+
+    /**
+     * An immutable set of levels.
+     */
+    public static class Levels {
+
+        private final String root;
+        private final SortedMap<String, String> loggers;
+
+        Levels(String root, SortedMap<String, String> loggers) {
+            this.root = root;
+            this.loggers = Collections.unmodifiableSortedMap(loggers);
+        }
+
+        public String getRootLevel() {
+            return root;
+        }
+
+        /**
+         * Levels explicitly set on loggers, sorted by logger name.
+         * Loggers which only have appenders configured are mapped to <code>null</code>.
+         */
+        public SortedMap<String, String> getLoggerLevels() {
+            return loggers;
+        }
+
+        /**
+         * Level explicitly set on the given logger.
+         *
+         * @param logger the logger name or <code>null</code> for the root logger
+         */
+        public String getLevel(String logger) {
+            return logger == null ? root : loggers.get(logger);
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.shell.log;
+
+import java.io.IOException;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.osgi.service.cm.Configuration;
+
+/**
+ * A set of log level changes applied to the pax-logging configuration at once.
+ *
+ * Each call to {@link Configuration#update(Dictionary)} makes pax-logging reconfigure
+ * log4j completely, so all changes are collected on the configuration properties and
+ * pushed with a single update when {@link #commit()} is called.
+ */
+public class LogLevelUpdate {
+
+    static final String ROOT_LOGGER_PREFIX = "log4j.rootLogger";
+    static final String LOGGER_PREFIX      = "log4j.logger.";
+
+    private final Configuration cfg;
+    private final Dictionary props;
+    private boolean modified;
+
+    public LogLevelUpdate(Configuration cfg) {
+        this.cfg = cfg;
+        Dictionary props = cfg.getProperties();
+        this.props = props != null ? props : new Hashtable();
+    }
+
+    /**
+     * Set the level of the given logger.
+     *
+     * @param logger the logger name or <code>null</code> for the root logger
+     * @param level the level name or {@link Level#DEFAULT} to unset it
+     * @throws IllegalArgumentException if the level is invalid or the root logger would be unset
+     */
+    public void setLevel(String logger, String level) {
+        level = level.toUpperCase();
+        if (Level.isDefault(level) && logger == null) {
+            throw new IllegalArgumentException("Can not unset the ROOT logger");
+        }
+
+        String prop = logger == null ? ROOT_LOGGER_PREFIX : LOGGER_PREFIX + logger;
+        String oldVal = (String) props.get(prop);
+        String val = oldVal;
+        if (Level.isDefault(level)) {
+            if (val != null) {
+                val = val.trim();
+                int idx = val.indexOf(",");
+                if (idx < 0) {
+                    val = null;
+                } else {
+                    val = val.substring(idx);
+                }
+            }
+        } else {
+            if (val == null) {
+                val = level;
+            } else {
+                val = val.trim();
+                int idx = val.indexOf(",");
+                if (idx < 0) {
+                    val = level;
+                } else {
+                    val = level + val.substring(idx);
+                }
+            }
+        }
+        if (val == null) {
+            if (oldVal != null) {
+                props.remove(prop);
+                modified = true;
+            }
+        } else if (!val.equals(oldVal)) {
+            props.put(prop, val);
+            modified = true;
+        }
+    }
+
+    /**
+     * Push all pending changes to the configuration admin.
+     *
+     * @return <code>true</code> if the configuration has been updated
+     */
+    public boolean commit() throws IOException {
+        if (!modified) {
+            return false;
+        }
+        cfg.update(props);
+        modified = false;
+        return true;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.shell.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.karaf.shell.console.OsgiCommandSupport;
+import org.apache.felix.karaf.shell.log.stats.LogStatistics;
+import org.apache.felix.karaf.shell.log.stats.Meter;
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+import org.osgi.framework.Bundle;
+
+/**
+ * Display the number and rates of logging events per level, logger and bundle
+ */
+@Command(scope = "log", name = "stats", description = "Displays logging statistics per level, logger and bundle.")
+public class LogStats extends OsgiCommandSupport {
+
+    @Option(name = "-n", aliases = {}, description = "Number of loggers and bundles to display (default 10)", required = false, multiValued = false)
+    protected int entries = 10;
+
+    protected LogStatistics statistics;
+
+    public LogStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(LogStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    protected Object doExecute() throws Exception {
+        Meter total = statistics.getTotal();
+        System.out.println(String.format("Total: %d events, %.2f/s (1m), %.2f/s (5m)",
+                total.getCount(), total.getOneMinuteRate(), total.getFiveMinuteRate()));
+
+        System.out.println();
+        System.out.println("Levels:");
+        print(snapshot(statistics.getLevels(), false), Integer.MAX_VALUE, "Level");
+
+        System.out.println();
+        System.out.println("Top loggers:");
+        print(snapshot(statistics.getLoggers(), false), entries, "Logger");
+
+        System.out.println();
+        System.out.println("Top bundles:");
+        print(snapshot(statistics.getBundles(), true), entries, "Bundle");
+        return null;
+    }
+
+    protected void print(List<Row> rows, int max, String header) {
+        System.out.println(String.format("%12s %10s %10s   %s", "Count", "1m (/s)", "5m (/s)", header));
+        for (int i = 0; i < rows.size() && i < max; i++) {
+            Row row = rows.get(i);
+            System.out.println(String.format("%12d %10.2f %10.2f   %s", row.count, row.m1, row.m5, row.name));
+        }
+    }
+
+    /**
+     * Read the meters once and sort them by decreasing one minute rate, then by decreasing count
+     */
+    protected List<Row> snapshot(Map<String, Meter> meters, boolean bundles) {
+        List<Row> rows = new ArrayList<Row>();
+        for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+            Meter meter = entry.getValue();
+            String name = bundles ? getBundleName(entry.getKey()) : entry.getKey();
+            rows.add(new Row(name, meter.getCount(), meter.getOneMinuteRate(), meter.getFiveMinuteRate()));
+        }
+        Collections.sort(rows, new Comparator<Row>() {
+            public int compare(Row r1, Row r2) {
+                int c = Double.compare(r2.m1, r1.m1);
+                if (c == 0) {
+                    c = r1.count < r2.count ? 1 : (r1.count == r2.count ? 0 : -1);
+                }
+                return c;
+            }
+        });
+        return rows;
+    }
+
+    protected String getBundleName(String id) {
+        try {
+            Bundle bundle = getBundleContext().getBundle(Long.parseLong(id));
+            if (bundle != null && bundle.getSymbolicName() != null) {
+                return bundle.getSymbolicName() + " (" + id + ")";
+            }
+        } catch (NumberFormatException e) {
+            // Ignore
+        }
+        return id;
+    }
+
+    protected static class Row {
+        final String name;
+        final long count;
+        final double m1;
+        final double m5;
+
+        Row(String name, long count, double m1, double m5) {
+            this.name = name;
+            this.count = count;
+            this.m1 = m1;
+            this.m5 = m5;
+        }
+    }
+
+}
@@ -17,7 +17,7 @@
 package org.apache.felix.karaf.shell.log;
 
 import java.io.IOException;
-import java.util.Dictionary;
+import java.util.List;
 
 import org.apache.felix.karaf.shell.console.OsgiCommandSupport;
 import org.apache.felix.gogo.commands.Argument;
@@ -27,7 +27,7 @@ import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
 
 /**
- * Set the log level for a given logger
+ * Set the log level for the given loggers
  */
 @Command(scope = "log", name = "set", description = "Sets the log level.")
 public class SetLogLevel extends OsgiCommandSupport {
@@ -35,19 +35,23 @@ public class SetLogLevel extends OsgiCommandSupport {
     @Argument(index = 0, name = "level", description = "The log level to set (TRACE, DEBUG, INFO, WARN, ERROR) or DEFAULT to unset", required = true, multiValued = false)
     String level;
 
-    @Argument(index = 1, name = "logger", description = "Logger name or ROOT (default)", required = false, multiValued = false)
-    String logger;
+    @Argument(index = 1, name = "loggers", description = "Logger names or ROOT (default)", required = false, multiValued = true)
+    List<String> loggers;
 
     static final String CONFIGURATION_PID  = "org.ops4j.pax.logging";
-    static final String ROOT_LOGGER_PREFIX = "log4j.rootLogger";
-    static final String LOGGER_PREFIX      = "log4j.logger.";
     static final String ROOT_LOGGER        = "ROOT";
 
+    private LogLevelSnapshot snapshot;
+
+    public LogLevelSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(LogLevelSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     protected Object doExecute() throws Exception {
-        if (ROOT_LOGGER.equalsIgnoreCase(this.logger)) {
-            this.logger = null;
-        }
-        
         // make sure both uppercase and lowercase levels are supported
         level = level.toUpperCase();
         
@@ -57,58 +61,39 @@ public class SetLogLevel extends OsgiCommandSupport {
             System.err.println("level must be set to TRACE, DEBUG, INFO, WARN or ERROR (or DEFAULT to unset it)");
             return null;
         }
-        
-        if (Level.isDefault(level) && logger == null) {
-            System.err.println("Can not unset the ROOT logger");
-            return null;
-        }
 
-        Configuration cfg = getConfiguration();
-        Dictionary props = cfg.getProperties();
-
-        String logger = this.logger;
-        String val;
-        String prop;
-        if (logger == null) {
-            prop = ROOT_LOGGER_PREFIX;
+        String[] names;
+        if (loggers == null || loggers.isEmpty()) {
+            names = new String[] { null };
         } else {
-            prop = LOGGER_PREFIX + logger;
+            names = new String[loggers.size()];
+            for (int i = 0; i < names.length; i++) {
+                String logger = loggers.get(i);
+                names[i] = ROOT_LOGGER.equalsIgnoreCase(logger) ? null : logger;
+            }
         }
-        val = (String) props.get(prop);
+        
         if (Level.isDefault(level)) {
-            if (val != null) {
-                val = val.trim();
-                int idx = val.indexOf(",");
-                if (idx < 0) {
-                    val = null;
-                } else {
-                    val = val.substring(idx);
-                }
-            }
-        } else {
-            if (val == null) {
-                val = level;
-            } else {
-                val = val.trim();
-                int idx = val.indexOf(",");
-                if (idx < 0) {
-                    val = level;
-                } else {
-                    val = level + val.substring(idx);
+            for (String logger : names) {
+                if (logger == null) {
+                    System.err.println("Can not unset the ROOT logger");
+                    return null;
                 }
             }
         }
-        if (val == null) {
-            props.remove(prop);
-        } else {
-            props.put(prop, val);
+
+        // all loggers are changed in a single configuration update
+        LogLevelUpdate update = new LogLevelUpdate(getConfiguration());
+        for (String logger : names) {
+            update.setLevel(logger, level);
+        }
+        if (update.commit() && snapshot != null) {
+            snapshot.invalidate();
         }
-        cfg.update(props);
 
         return null;
     }
     
-    
 
     protected Configuration getConfiguration() throws IOException {
         Configuration cfg = getConfigAdmin().getConfiguration(CONFIGURATION_PID, null);
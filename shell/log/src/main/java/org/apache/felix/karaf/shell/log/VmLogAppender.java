@@ -18,6 +18,7 @@
  */
 package org.apache.felix.karaf.shell.log;
 
+import org.apache.felix.karaf.shell.log.stats.LogStatistics;
 import org.ops4j.pax.logging.spi.PaxAppender;
 import org.ops4j.pax.logging.spi.PaxLoggingEvent;
 
@@ -27,6 +28,7 @@ import org.ops4j.pax.logging.spi.PaxLoggingEvent;
 public class VmLogAppender implements PaxAppender {
 
     protected LruList events;
+    protected LogStatistics statistics;
 
     public LruList getEvents() {
         return events;
@@ -36,7 +38,18 @@ public class VmLogAppender implements PaxAppender {
         this.events = events;
     }
 
+    public LogStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(LogStatistics statistics) {
+        this.statistics = statistics;
+    }
+
     public void doAppend(PaxLoggingEvent event) {
+        if (statistics != null) {
+            statistics.record(event);
+        }
         if (events != null) {
             event.getProperties(); // ensure MDC properties are copied
             events.add(event);
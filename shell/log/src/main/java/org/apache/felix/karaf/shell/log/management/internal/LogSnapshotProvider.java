@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.shell.log.management.internal;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.felix.karaf.management.SnapshotProvider;
+import org.apache.felix.karaf.shell.log.stats.LogStatistics;
+import org.apache.felix.karaf.shell.log.stats.Meter;
+
+/**
+ * Snapshot section with the number of logging events and their rate per second over
+ * the last minute, as <code>count/rate</code>, in total and per level.
+ */
+public class LogSnapshotProvider implements SnapshotProvider {
+
+    private LogStatistics statistics;
+
+    public LogStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(LogStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public String getName() {
+        return "log";
+    }
+
+    public boolean isMetric() {
+        return true;
+    }
+
+    public Map<String, String> getEntries() {
+        Map<String, String> entries = new HashMap<String, String>();
+        entries.put("total", format(statistics.getTotal()));
+        for (Map.Entry<String, Meter> entry : statistics.getLevels().entrySet()) {
+            entries.put(entry.getKey(), format(entry.getValue()));
+        }
+        return entries;
+    }
+
+    private static String format(Meter meter) {
+        return meter.getCount() + "/" + String.format(Locale.ENGLISH, "%.2f", meter.getOneMinuteRate());
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.shell.log.management.internal;
+
+import java.util.Map;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.felix.karaf.shell.log.management.LogStatisticsMBean;
+import org.apache.felix.karaf.shell.log.stats.LogStatistics;
+import org.apache.felix.karaf.shell.log.stats.Meter;
+
+public class LogStatisticsMBeanImpl extends StandardMBean implements LogStatisticsMBean {
+
+    static final CompositeType RATE_TYPE;
+    static final TabularType RATE_TABLE;
+
+    static {
+        RATE_TYPE = createRateType();
+        RATE_TABLE = createRateTableType();
+    }
+
+    private LogStatistics statistics;
+
+    public LogStatisticsMBeanImpl() throws NotCompliantMBeanException {
+        super(LogStatisticsMBean.class);
+    }
+
+    public LogStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(LogStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public long getTotalCount() {
+        return statistics.getTotal().getCount();
+    }
+
+    public double getOneMinuteRate() {
+        return statistics.getTotal().getOneMinuteRate();
+    }
+
+    public double getFiveMinuteRate() {
+        return statistics.getTotal().getFiveMinuteRate();
+    }
+
+    public TabularData getLevels() {
+        return tableFrom(statistics.getLevels());
+    }
+
+    public TabularData getLoggers() {
+        return tableFrom(statistics.getLoggers());
+    }
+
+    public TabularData getBundles() {
+        return tableFrom(statistics.getBundles());
+    }
+
+    static TabularData tableFrom(Map<String, Meter> meters) {
+        TabularDataSupport table = new TabularDataSupport(RATE_TABLE);
+        for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+            Meter meter = entry.getValue();
+            Object[] itemValues = new Object[] {
+                    entry.getKey(), meter.getCount(), meter.getOneMinuteRate(), meter.getFiveMinuteRate() };
+            try {
+                table.put(new CompositeDataSupport(RATE_TYPE, RATE, itemValues));
+            } catch (OpenDataException e) {
+                throw new IllegalStateException("Cannot create rate open data", e);
+            }
+        }
+        return table;
+    }
+
+    private static CompositeType createRateType() {
+        try {
+            String desc = "This type describes the number and rate of logging events";
+            OpenType[] itemTypes = new OpenType[] {
+                    SimpleType.STRING, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.DOUBLE };
+            String[] descriptions = new String[] {
+                    "The name of the level, logger or id of the bundle.",
+                    "The number of events logged.",
+                    "The number of events per second over the last minute.",
+                    "The number of events per second over the last five minutes." };
+            return new CompositeType("LogRate", desc, RATE, descriptions, itemTypes);
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build rate type", e);
+        }
+    }
+
+    private static TabularType createRateTableType() {
+        try {
+            return new TabularType("LogRates", "Table of logging event rates", RATE_TYPE,
+                    new String[] { RATE_NAME });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build rate table type", e);
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.shell.log.stats;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+/**
+ * Keeps track of the number of logging events and their rates,
+ * in total and per level, logger and bundle.
+ *
+ * Once {@link #init()} has been called, the meters are ticked every
+ * {@link Meter#TICK_INTERVAL} milliseconds, and the meters of loggers and
+ * bundles which have not logged anything for <code>evictionDelay</code>
+ * milliseconds are removed.
+ */
+public class LogStatistics {
+
+    /**
+     * MDC key set by pax-logging with the id of the bundle that logged the event
+     */
+    public static final String BUNDLE_ID = "bundle.id";
+
+    private final Meter total = new Meter();
+    private final ConcurrentMap<String, Meter> levels = new ConcurrentHashMap<String, Meter>();
+    private final ConcurrentMap<String, Meter> loggers = new ConcurrentHashMap<String, Meter>();
+    private final ConcurrentMap<String, Meter> bundles = new ConcurrentHashMap<String, Meter>();
+    private long evictionDelay = 30 * 60 * 1000;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Delay in milliseconds after which the meter of an idle logger or bundle is removed,
+     * <code>0</code> to keep all meters
+     */
+    public void setEvictionDelay(long evictionDelay) {
+        this.evictionDelay = evictionDelay;
+    }
+
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "log statistics");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                tick(System.currentTimeMillis());
+            }
+        }, Meter.TICK_INTERVAL, Meter.TICK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    void tick(long now) {
+        total.tickIfNecessary(now);
+        tick(levels, now, false);
+        tick(loggers, now, evictionDelay > 0);
+        tick(bundles, now, evictionDelay > 0);
+    }
+
+    private void tick(ConcurrentMap<String, Meter> meters, long now, boolean evict) {
+        for (Iterator<Map.Entry<String, Meter>> it = meters.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Meter> entry = it.next();
+            Meter meter = entry.getValue();
+            meter.tickIfNecessary(now);
+            if (evict && meter.getIdleTime() >= evictionDelay) {
+                // an event recorded concurrently on the removed meter may be lost, which is acceptable
+                meters.remove(entry.getKey(), meter);
+            }
+        }
+    }
+
+    public void record(PaxLoggingEvent event) {
+        total.mark();
+        meter(levels, event.getLevel().toString()).mark();
+        String logger = event.getLoggerName();
+        if (logger != null) {
+            meter(loggers, logger).mark();
+        }
+        Map properties = event.getProperties();
+        Object bundle = properties != null ? properties.get(BUNDLE_ID) : null;
+        if (bundle != null) {
+            meter(bundles, bundle.toString()).mark();
+        }
+    }
+
+    public Meter getTotal() {
+        return total;
+    }
+
+    public Map<String, Meter> getLevels() {
+        return Collections.unmodifiableMap(levels);
+    }
+
+    public Map<String, Meter> getLoggers() {
+        return Collections.unmodifiableMap(loggers);
+    }
+
+    public Map<String, Meter> getBundles() {
+        return Collections.unmodifiableMap(bundles);
+    }
+
+    private static Meter meter(ConcurrentMap<String, Meter> meters, String key) {
+        Meter meter = meters.get(key);
+        if (meter == null) {
+            Meter newMeter = new Meter();
+            meter = meters.putIfAbsent(key, newMeter);
+            if (meter == null) {
+                meter = newMeter;
+            }
+        }
+        return meter;
+    }
+
+}
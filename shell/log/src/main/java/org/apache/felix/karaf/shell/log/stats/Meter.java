@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.shell.log.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts events and computes their one and five minutes rates as
+ * exponentially weighted moving averages, the same way unix load
+ * averages are computed.
+ *
+ * Recording an event only increments a {@link StripedCounter}: averages
+ * are brought up to date once every tick by {@link #tick()}, which
+ * {@link LogStatistics} calls from a scheduled task so that each tick only
+ * accounts for the events of its own interval.  Reading a rate also
+ * catches up with the ticks that have elapsed, for meters used on their own.
+ */
+public class Meter {
+
+    static final long TICK_INTERVAL = 5000;
+    // after an hour without reading the rates, older ticks have no visible weight
+    private static final long MAX_CATCHUP_TICKS = 720;
+
+    private static final double M1_ALPHA = 1 - Math.exp(-TICK_INTERVAL / 1000.0 / 60.0);
+    private static final double M5_ALPHA = 1 - Math.exp(-TICK_INTERVAL / 1000.0 / 60.0 / 5.0);
+
+    private final StripedCounter count = new StripedCounter();
+    private final AtomicLong lastTick;
+    private long lastCount;
+    private volatile double m1Rate;
+    private volatile double m5Rate;
+    private boolean initialized;
+    private volatile long idleTicks;
+
+    public Meter() {
+        this(System.currentTimeMillis());
+    }
+
+    Meter(long now) {
+        lastTick = new AtomicLong(now);
+    }
+
+    public void mark() {
+        count.increment();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the average number of events per second over the last minute
+     */
+    public double getOneMinuteRate() {
+        return getOneMinuteRate(System.currentTimeMillis());
+    }
+
+    /**
+     * @return the average number of events per second over the last five minutes
+     */
+    public double getFiveMinuteRate() {
+        return getFiveMinuteRate(System.currentTimeMillis());
+    }
+
+    double getOneMinuteRate(long now) {
+        tickIfNecessary(now);
+        return m1Rate;
+    }
+
+    double getFiveMinuteRate(long now) {
+        tickIfNecessary(now);
+        return m5Rate;
+    }
+
+    /**
+     * @return the time in milliseconds since the last tick which recorded an event
+     */
+    public long getIdleTime() {
+        return idleTicks * TICK_INTERVAL;
+    }
+
+    /**
+     * Update the averages if a tick has elapsed.
+     */
+    public void tick() {
+        tickIfNecessary(System.currentTimeMillis());
+    }
+
+    void tickIfNecessary(long now) {
+        long old = lastTick.get();
+        long age = now - old;
+        if (age < TICK_INTERVAL) {
+            return;
+        }
+        long ticks = age / TICK_INTERVAL;
+        if (!lastTick.compareAndSet(old, old + ticks * TICK_INTERVAL)) {
+            // another thread is updating the averages
+            return;
+        }
+        synchronized (this) {
+            long current = count.get();
+            // events are spread evenly over all the elapsed ticks
+            double rate = (current - lastCount) / (ticks * TICK_INTERVAL / 1000.0);
+            idleTicks = current == lastCount ? idleTicks + ticks : 0;
+            lastCount = current;
+            double m1 = m1Rate;
+            double m5 = m5Rate;
+            long i = 0;
+            if (!initialized) {
+                m1 = rate;
+                m5 = rate;
+                initialized = true;
+                i++;
+            }
+            for (long n = Math.min(ticks, MAX_CATCHUP_TICKS); i < n; i++) {
+                m1 += M1_ALPHA * (rate - m1);
+                m5 += M5_ALPHA * (rate - m5);
+            }
+            m1Rate = m1;
+            m5Rate = m5;
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.shell.log;
+
+import java.util.Hashtable;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Test cases for {@link LogLevelSnapshot}
+ */
+@SuppressWarnings("unchecked")
+public class LogLevelSnapshotTest extends TestCase {
+
+    public void testParse() {
+        Hashtable props = new Hashtable();
+        props.put("log4j.rootLogger", "INFO, out, osgi:VmLogAppender");
+        props.put("log4j.logger.org.apache.karaf.test", "DEBUG");
+        props.put("log4j.logger.org.apache.karaf.appender", ", APPENDER1");
+        props.put("log4j.appender.out", "org.apache.log4j.ConsoleAppender");
+
+        LogLevelSnapshot.Levels levels = LogLevelSnapshot.parse(props);
+
+        assertEquals("INFO", levels.getRootLevel());
+        assertEquals("DEBUG", levels.getLevel("org.apache.karaf.test"));
+        assertNull(levels.getLevel("org.apache.karaf.appender"));
+        assertEquals(2, levels.getLoggerLevels().size());
+    }
+
+    public void testCachedUntilConfigurationChanges() throws Exception {
+        Hashtable props = new Hashtable();
+        props.put("log4j.rootLogger", "INFO");
+
+        Configuration cfg = EasyMock.createMock(Configuration.class);
+        EasyMock.expect(cfg.getProperties()).andReturn(props).times(2);
+        ConfigurationAdmin admin = EasyMock.createMock(ConfigurationAdmin.class);
+        EasyMock.expect(admin.getConfiguration(LogLevelSnapshot.CONFIGURATION_PID, null)).andReturn(cfg).times(2);
+        EasyMock.replay(cfg, admin);
+
+        LogLevelSnapshot snapshot = new LogLevelSnapshot();
+        snapshot.setConfigurationAdmin(admin);
+
+        LogLevelSnapshot.Levels levels = snapshot.getLevels();
+        assertSame(levels, snapshot.getLevels());
+
+        props.put("log4j.rootLogger", "WARN");
+        ServiceReference ref = EasyMock.createMock(ServiceReference.class);
+        snapshot.configurationEvent(new ConfigurationEvent(ref, ConfigurationEvent.CM_UPDATED, null, LogLevelSnapshot.CONFIGURATION_PID));
+
+        assertEquals("WARN", snapshot.getLevels().getRootLevel());
+        EasyMock.verify(cfg, admin);
+    }
+
+}
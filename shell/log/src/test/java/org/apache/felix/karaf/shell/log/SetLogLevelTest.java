@@ -19,6 +19,7 @@ package org.apache.felix.karaf.shell.log;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Hashtable;
 
 import junit.framework.TestCase;
@@ -34,11 +35,13 @@ public class SetLogLevelTest extends TestCase {
     
     private static final String ROOT_LOGGER = "log4j.rootLogger";
     private static final String PACKAGE_LOGGER = "log4j.logger.org.apache.karaf.test";
+    private static final String OTHER_LOGGER = "log4j.logger.org.apache.karaf.other";
     private static final PrintStream ORIGINAL_STDERR = System.err;
     
     private SetLogLevel command;
     private Hashtable properties;
     private ByteArrayOutputStream stderr;
+    private Configuration configuration;
 
     @Override
     protected void setUp() throws Exception {
@@ -47,7 +50,7 @@ public class SetLogLevelTest extends TestCase {
         stderr = new ByteArrayOutputStream();
         System.setErr(new PrintStream(stderr));
 
-        final Configuration configuration = EasyMock.createMock(Configuration.class);
+        configuration = EasyMock.createMock(Configuration.class);
         EasyMock.expect(configuration.getProperties()).andReturn(properties);
         configuration.update(properties);
         EasyMock.replay(configuration);
@@ -150,6 +153,28 @@ public class SetLogLevelTest extends TestCase {
                    stderr.toString().contains("Can not unset the ROOT logger"));
     }
     
+    public void testSetMultipleLogLevels() throws Exception {
+        properties.put(PACKAGE_LOGGER, "DEBUG, APPENDER1");
+
+        runCommand("log:set WARN org.apache.karaf.test org.apache.karaf.other ROOT");
+
+        assertEquals("WARN, APPENDER1", properties.get(PACKAGE_LOGGER));
+        assertEquals("WARN", properties.get(OTHER_LOGGER));
+        assertEquals("WARN", properties.get(ROOT_LOGGER));
+        // all changes must be pushed with a single configuration update
+        EasyMock.verify(configuration);
+    }
+
+    public void testUnsetMultipleLogLevelsWithRoot() throws Exception {
+        properties.put(PACKAGE_LOGGER, "DEBUG");
+
+        runCommand("log:set DEFAULT org.apache.karaf.test ROOT");
+
+        assertEquals("DEBUG", properties.get(PACKAGE_LOGGER));
+        assertTrue("Expected an error message on System.err",
+                   stderr.toString().contains("Can not unset the ROOT logger"));
+    }
+
     /*
      * Simulate running the log:set command
      */
@@ -157,8 +182,8 @@ public class SetLogLevelTest extends TestCase {
         String[] parts = commandline.split(" ");
 
         command.level = parts[1];
-        if (parts.length == 3) {
-            command.logger = "org.apache.karaf.test";
+        if (parts.length > 2) {
+            command.loggers = Arrays.asList(parts).subList(2, parts.length);
         }
         
         command.doExecute();
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.karaf.shell.log.stats;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link Meter}
+ */
+public class MeterTest extends TestCase {
+
+    public void testCount() {
+        Meter meter = new Meter();
+        for (int i = 0; i < 100; i++) {
+            meter.mark();
+        }
+        assertEquals(100, meter.getCount());
+    }
+
+    public void testRates() {
+        Meter meter = new Meter(0);
+        for (int i = 0; i < 50; i++) {
+            meter.mark();
+        }
+        // 50 events over a 5 seconds tick
+        assertEquals(10.0, meter.getOneMinuteRate(Meter.TICK_INTERVAL), 0.001);
+        assertEquals(10.0, meter.getFiveMinuteRate(Meter.TICK_INTERVAL), 0.001);
+
+        // no more events: the one minute rate must decay faster than the five minutes one
+        double m1 = meter.getOneMinuteRate(Meter.TICK_INTERVAL * 13);
+        double m5 = meter.getFiveMinuteRate(Meter.TICK_INTERVAL * 13);
+        assertTrue(m1 < 10.0 && m5 < 10.0);
+        assertTrue(m1 < m5);
+    }
+
+    public void testIdleTime() {
+        Meter meter = new Meter(0);
+        meter.mark();
+        meter.tickIfNecessary(Meter.TICK_INTERVAL);
+        assertEquals(0, meter.getIdleTime());
+        meter.tickIfNecessary(Meter.TICK_INTERVAL * 3);
+        assertEquals(Meter.TICK_INTERVAL * 2, meter.getIdleTime());
+        meter.mark();
+        meter.tickIfNecessary(Meter.TICK_INTERVAL * 4);
+        assertEquals(0, meter.getIdleTime());
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.ssh;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import javax.security.auth.login.LoginException;
+
+import org.apache.felix.karaf.jaas.modules.AuthenticationCache;
+import org.apache.sshd.server.PasswordAuthenticator;
+import org.apache.sshd.server.session.ServerSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Password authenticator delegating to a JAAS realm through an {@link AuthenticationCache},
+ * so that successful logins are cached for a short time and failed attempts are
+ * throttled per remote host.
+ */
+public class CachingPasswordAuthenticator implements PasswordAuthenticator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingPasswordAuthenticator.class);
+
+    private AuthenticationCache cache;
+
+    public AuthenticationCache getCache() {
+        return cache;
+    }
+
+    public void setCache(AuthenticationCache cache) {
+        this.cache = cache;
+    }
+
+    public boolean authenticate(String username, String password, ServerSession session) {
+        try {
+            cache.login(username, password, getRemoteHost(session));
+            return true;
+        } catch (LoginException e) {
+            LOGGER.debug("Authentication failed for user {}: {}", username, e.getMessage());
+            return false;
+        }
+    }
+
+    private static String getRemoteHost(ServerSession session) {
+        SocketAddress address = session != null && session.getIoSession() != null
+                                    ? session.getIoSession().getRemoteAddress() : null;
+        if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null) {
+            return ((InetSocketAddress) address).getAddress().getHostAddress();
+        }
+        return address != null ? address.toString() : null;
+    }
+
+}
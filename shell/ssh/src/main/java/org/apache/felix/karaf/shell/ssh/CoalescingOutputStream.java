@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.ssh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers the output sent to a SSH channel so that it is sent in a few large
+ * packets instead of one packet per line.
+ *
+ * The buffer is sent when it is full, when the stream is explicitly flushed
+ * (the console does it after writing the prompt) or at most <code>flushDelay</code>
+ * milliseconds after some data has been buffered, so that output of commands
+ * that never flush still shows up.  Delayed flushes are timed by a scheduler
+ * shared by all sessions, which only signals a writer thread run by the
+ * session's own executor: a slow client never holds up the other sessions.
+ *
+ * Two streams can be paired (output and error streams of the same session):
+ * they then share a lock and the pending data of one stream is always sent
+ * before data written to the other one, which keeps both outputs in order.
+ */
+public class CoalescingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final byte[] buf;
+    private final Writer writer;
+    private CoalescingOutputStream sibling;
+    private int count;
+    private boolean closed;
+
+    /**
+     * @param out the channel stream
+     * @param size the size of the buffer
+     * @param scheduler used to time delayed flushes, if <code>null</code> the stream is flushed on each write
+     * @param flushDelay maximum delay in milliseconds before buffered data is sent
+     */
+    public CoalescingOutputStream(OutputStream out, int size, ScheduledExecutorService scheduler, long flushDelay) {
+        this(out, size, scheduler, flushDelay, null);
+    }
+
+    /**
+     * @param out the channel stream
+     * @param size the size of the buffer
+     * @param scheduler used to time delayed flushes, if <code>null</code> the stream is flushed on each write
+     * @param flushDelay maximum delay in milliseconds before buffered data is sent
+     * @param executor runs the thread sending delayed data, if <code>null</code> a new thread is created
+     */
+    public CoalescingOutputStream(OutputStream out, int size, ScheduledExecutorService scheduler, long flushDelay,
+                                  Executor executor) {
+        this.out = out;
+        this.buf = new byte[size];
+        this.writer = new Writer(scheduler, flushDelay, executor);
+        this.writer.streams = new CoalescingOutputStream[] { this };
+    }
+
+    /**
+     * Create a stream paired with the given one.
+     */
+    public CoalescingOutputStream(OutputStream out, CoalescingOutputStream sibling) {
+        this.out = out;
+        this.buf = new byte[sibling.buf.length];
+        this.writer = sibling.writer;
+        this.sibling = sibling;
+        synchronized (writer) {
+            sibling.sibling = this;
+            writer.streams = new CoalescingOutputStream[] { sibling, this };
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        synchronized (writer) {
+            ensureOpen();
+            drainSibling();
+            if (count == buf.length) {
+                drain();
+            }
+            buf[count++] = (byte) b;
+            bufferWritten();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        synchronized (writer) {
+            ensureOpen();
+            drainSibling();
+            if (len > buf.length - count) {
+                drain();
+            }
+            if (len >= buf.length) {
+                // no need to copy large chunks
+                out.write(b, off, len);
+                out.flush();
+            } else {
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+                bufferWritten();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (writer) {
+            if (!closed) {
+                drainSibling();
+                drain();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writer) {
+            if (!closed) {
+                try {
+                    drainSibling();
+                    drain();
+                } finally {
+                    closed = true;
+                    writer.streamClosed();
+                    out.close();
+                }
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void bufferWritten() throws IOException {
+        if (!writer.schedule()) {
+            drain();
+        }
+    }
+
+    private void drainSibling() throws IOException {
+        if (sibling != null && sibling.count > 0 && !sibling.closed) {
+            sibling.drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+            out.flush();
+        }
+    }
+
+    /**
+     * Sends the buffered data of a pair of streams once the flush delay has elapsed.
+     * It is also the lock of the streams.
+     */
+    private static class Writer implements Runnable {
+
+        private final ScheduledExecutorService scheduler;
+        private final long flushDelay;
+        private final Executor executor;
+        private final Semaphore signal = new Semaphore(0);
+        private final Runnable signalTask = new Runnable() {
+            public void run() {
+                // the shared scheduler never blocks, it only wakes up the writer
+                signal.release();
+            }
+        };
+        private CoalescingOutputStream[] streams;
+        private boolean scheduled;
+        private boolean started;
+        private volatile boolean stopped;
+
+        Writer(ScheduledExecutorService scheduler, long flushDelay, Executor executor) {
+            this.scheduler = scheduler;
+            this.flushDelay = flushDelay;
+            this.executor = executor;
+        }
+
+        /**
+         * Schedule a delayed flush, called with the lock held.
+         *
+         * @return <code>false</code> if the data must be sent right away
+         */
+        boolean schedule() {
+            if (scheduler == null) {
+                return false;
+            }
+            if (scheduled) {
+                return true;
+            }
+            try {
+                if (!started) {
+                    if (executor != null) {
+                        executor.execute(this);
+                    } else {
+                        Thread t = new Thread(this, "ssh output writer");
+                        t.setDaemon(true);
+                        t.start();
+                    }
+                    started = true;
+                }
+                scheduler.schedule(signalTask, flushDelay, TimeUnit.MILLISECONDS);
+                scheduled = true;
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Called with the lock held, the writer stops when all streams are closed.
+         */
+        void streamClosed() {
+            for (CoalescingOutputStream stream : streams) {
+                if (!stream.closed) {
+                    return;
+                }
+            }
+            stopped = true;
+            signal.release();
+        }
+
+        public void run() {
+            while (!stopped) {
+                try {
+                    signal.acquire();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                synchronized (this) {
+                    scheduled = false;
+                    for (CoalescingOutputStream stream : streams) {
+                        if (!stream.closed) {
+                            try {
+                                stream.drain();
+                            } catch (IOException e) {
+                                // Ignore, the session will be closed
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.ssh;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the threads of SSH shell and exec sessions.
+ *
+ * The number of sessions running concurrently can be limited: sessions started
+ * beyond that limit are queued, without holding any thread, and started when a
+ * running session ends.  Threads are either plain threads created per session,
+ * pooled threads reused across sessions, or virtual threads when the JVM
+ * supports them.  Pooled threads require a maximum number of sessions.
+ */
+public class SessionExecutor {
+
+    public static final String THREAD_MODEL_THREAD = "thread";
+    public static final String THREAD_MODEL_POOL = "pool";
+    public static final String THREAD_MODEL_VIRTUAL = "virtual";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionExecutor.class);
+
+    private String threadModel = THREAD_MODEL_THREAD;
+    private int maxSessions;
+    private int maxQueuedSessions;
+    private long poolKeepAlive = 60000;
+
+    private Executor executor;
+    private final AtomicLong ids = new AtomicLong();
+    private final List<SessionInfo> running = new ArrayList<SessionInfo>();
+    private final LinkedList<SessionInfo> queued = new LinkedList<SessionInfo>();
+
+    public String getThreadModel() {
+        return threadModel;
+    }
+
+    public void setThreadModel(String threadModel) {
+        this.threadModel = threadModel;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Maximum number of sessions running concurrently, <code>0</code> for no limit
+     */
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    public int getMaxQueuedSessions() {
+        return maxQueuedSessions;
+    }
+
+    /**
+     * Maximum number of sessions waiting for a running session to end, <code>0</code> for no limit
+     */
+    public void setMaxQueuedSessions(int maxQueuedSessions) {
+        this.maxQueuedSessions = maxQueuedSessions;
+    }
+
+    public long getPoolKeepAlive() {
+        return poolKeepAlive;
+    }
+
+    public void setPoolKeepAlive(long poolKeepAlive) {
+        this.poolKeepAlive = poolKeepAlive;
+    }
+
+    public void init() {
+        ThreadFactory factory = null;
+        if (THREAD_MODEL_VIRTUAL.equals(threadModel)) {
+            factory = createVirtualThreadFactory();
+            if (factory == null) {
+                LOGGER.warn("Virtual threads are not supported by this JVM, using a thread pool instead");
+                threadModel = THREAD_MODEL_POOL;
+            }
+        } else if (!THREAD_MODEL_THREAD.equals(threadModel) && !THREAD_MODEL_POOL.equals(threadModel)) {
+            LOGGER.warn("Unknown thread model '" + threadModel + "', using '" + THREAD_MODEL_THREAD + "'");
+            threadModel = THREAD_MODEL_THREAD;
+        }
+        if (THREAD_MODEL_POOL.equals(threadModel) && maxSessions <= 0) {
+            LOGGER.warn("A thread pool can only be used with a maximum number of sessions, using '"
+                            + THREAD_MODEL_THREAD + "'");
+            threadModel = THREAD_MODEL_THREAD;
+        }
+        if (factory == null) {
+            factory = new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setDaemon(true);
+                    return t;
+                }
+            };
+        }
+        if (THREAD_MODEL_POOL.equals(threadModel)) {
+            // idle threads are reused by the next sessions; the pool only grows with
+            // the threads of the running sessions, whose number is bounded by maxSessions
+            executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, poolKeepAlive, TimeUnit.MILLISECONDS,
+                                              new SynchronousQueue<Runnable>(), factory);
+        } else {
+            final ThreadFactory threadFactory = factory;
+            executor = new Executor() {
+                public void execute(Runnable command) {
+                    threadFactory.newThread(command).start();
+                }
+            };
+        }
+    }
+
+    public void destroy() {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        }
+        synchronized (this) {
+            for (SessionInfo session : queued) {
+                session.reject();
+            }
+            queued.clear();
+        }
+    }
+
+    /**
+     * Create a new session.  Threads can be run for the session using it as an
+     * {@link Executor}, its main task is started with {@link #submit}.
+     *
+     * @param type the type of session
+     * @param user the user owning the session
+     */
+    public SessionInfo createSession(String type, String user) {
+        if (executor == null) {
+            throw new IllegalStateException("Session executor has not been initialized");
+        }
+        return new SessionInfo(ids.incrementAndGet(), type, user);
+    }
+
+    /**
+     * Start the given session, or queue it if too many sessions are already running.
+     *
+     * @param session the session
+     * @param task the main task of the session, the session ends when it returns
+     * @param rejected called instead of the task if the session can not be queued
+     * @param queuedCallback called if the session has been queued, may be <code>null</code>
+     */
+    public void submit(SessionInfo session, Runnable task, Runnable rejected, Runnable queuedCallback) {
+        session.task = task;
+        session.rejected = rejected;
+        boolean start = false;
+        boolean reject = false;
+        synchronized (this) {
+            if (maxSessions <= 0 || running.size() < maxSessions) {
+                running.add(session);
+                start = true;
+            } else if (maxQueuedSessions <= 0 || queued.size() < maxQueuedSessions) {
+                queued.add(session);
+            } else {
+                reject = true;
+            }
+        }
+        if (start) {
+            session.start();
+        } else if (reject) {
+            LOGGER.warn("Rejecting " + session.type + " session for user " + session.user + ": too many sessions");
+            session.reject();
+        } else if (queuedCallback != null) {
+            queuedCallback.run();
+        }
+    }
+
+    /**
+     * Remove the given session if it is still waiting to be started, e.g. because
+     * the client has disconnected.  Running sessions are not affected.
+     *
+     * @return <code>true</code> if the session was queued and has been removed
+     */
+    public boolean cancel(SessionInfo session) {
+        synchronized (this) {
+            if (!queued.remove(session)) {
+                return false;
+            }
+        }
+        session.state = SessionInfo.STATE_ENDED;
+        return true;
+    }
+
+    public synchronized List<SessionInfo> getSessions() {
+        List<SessionInfo> sessions = new ArrayList<SessionInfo>(running.size() + queued.size());
+        sessions.addAll(running);
+        sessions.addAll(queued);
+        return Collections.unmodifiableList(sessions);
+    }
+
+    protected void ended(SessionInfo session) {
+        SessionInfo next = null;
+        synchronized (this) {
+            running.remove(session);
+            if (!queued.isEmpty() && (maxSessions <= 0 || running.size() < maxSessions)) {
+                next = queued.removeFirst();
+                running.add(next);
+            }
+        }
+        if (next != null) {
+            next.start();
+        }
+    }
+
+    /**
+     * Lookup <code>Thread.ofVirtual().factory()</code>, available on recent JVMs only.
+     */
+    protected static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(ofVirtual.invoke(null));
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * A session run by this executor.  Each session is also an {@link Executor}
+     * that can be used to run additional threads accounted to the session.
+     */
+    public class SessionInfo implements Executor {
+
+        public static final String STATE_QUEUED = "Queued";
+        public static final String STATE_RUNNING = "Running";
+        public static final String STATE_ENDED = "Ended";
+
+        private final long id;
+        private final String type;
+        private final String user;
+        private final long created;
+        private Runnable task;
+        private Runnable rejected;
+        private volatile long started;
+        private volatile String state = STATE_QUEUED;
+        private final AtomicInteger activeThreads = new AtomicInteger();
+        private final AtomicInteger totalThreads = new AtomicInteger();
+
+        SessionInfo(long id, String type, String user) {
+            this.id = id;
+            this.type = type;
+            this.user = user;
+            this.created = System.currentTimeMillis();
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getStarted() {
+            return started;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        public int getActiveThreads() {
+            return activeThreads.get();
+        }
+
+        public int getTotalThreads() {
+            return totalThreads.get();
+        }
+
+        public void execute(final Runnable command) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    runAccounted(command, "ssh session " + id + " thread");
+                }
+            });
+        }
+
+        void start() {
+            started = System.currentTimeMillis();
+            state = STATE_RUNNING;
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            runAccounted(task, "ssh " + type + " session " + id);
+                        } finally {
+                            state = STATE_ENDED;
+                            ended(SessionInfo.this);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the executor has been shut down: release the slot of this session
+                reject();
+                ended(this);
+            }
+        }
+
+        void reject() {
+            state = STATE_ENDED;
+            rejected.run();
+        }
+
+        private void runAccounted(Runnable command, String name) {
+            Thread thread = Thread.currentThread();
+            String oldName = thread.getName();
+            activeThreads.incrementAndGet();
+            totalThreads.incrementAndGet();
+            try {
+                thread.setName(name);
+                command.run();
+            } finally {
+                activeThreads.decrementAndGet();
+                thread.setName(oldName);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.felix.karaf.shell.ssh;
+
+import java.util.List;
+
+import org.apache.felix.karaf.shell.console.OsgiCommandSupport;
+import org.apache.felix.gogo.commands.Command;
+
+/**
+ * List the sessions of the SSH server with their threads.
+ */
+@Command(scope = "ssh", name = "sessions", description = "Lists the SSH sessions and their threads")
+public class SessionsAction extends OsgiCommandSupport
+{
+    private SessionExecutor sessionExecutor;
+
+    public void setSessionExecutor(SessionExecutor sessionExecutor) {
+        this.sessionExecutor = sessionExecutor;
+    }
+
+    protected Object doExecute() throws Exception {
+        List<SessionExecutor.SessionInfo> sessions = sessionExecutor.getSessions();
+        System.out.println("Thread model: " + sessionExecutor.getThreadModel()
+                + ", max sessions: " + (sessionExecutor.getMaxSessions() > 0 ? Integer.toString(sessionExecutor.getMaxSessions()) : "unlimited"));
+        System.out.println(String.format("%6s %-6s %-16s %-8s %8s %8s %10s",
+                "Id", "Type", "User", "State", "Threads", "Total", "Age (s)"));
+        long now = System.currentTimeMillis();
+        int threads = 0;
+        for (SessionExecutor.SessionInfo session : sessions) {
+            threads += session.getActiveThreads();
+            System.out.println(String.format("%6d %-6s %-16s %-8s %8d %8d %10d",
+                    session.getId(),
+                    session.getType(),
+                    session.getUser() != null ? session.getUser() : "",
+                    session.getState(),
+                    session.getActiveThreads(),
+                    session.getTotalThreads(),
+                    (now - session.getCreated()) / 1000));
+        }
+        System.out.println(sessions.size() + " session(s), " + threads + " active thread(s)");
+        return null;
+    }
+}
@@ -34,11 +34,16 @@ import org.osgi.service.command.CommandSession;
 public class ShellCommandFactory implements CommandFactory {
 
     private CommandProcessor commandProcessor;
+    private SessionExecutor sessionExecutor;
 
     public void setCommandProcessor(CommandProcessor commandProcessor) {
         this.commandProcessor = commandProcessor;
     }
 
+    public void setSessionExecutor(SessionExecutor sessionExecutor) {
+        this.sessionExecutor = sessionExecutor;
+    }
+
     public Command createCommand(String command) {
         return new ShellCommand(command);
     }
@@ -50,6 +55,7 @@ public class ShellCommandFactory implements CommandFactory {
         private OutputStream out;
         private OutputStream err;
         private ExitCallback callback;
+        private SessionExecutor.SessionInfo sessionInfo;
 
         public ShellCommand(String command) {
             this.command = command;
@@ -72,18 +78,50 @@ public class ShellCommandFactory implements CommandFactory {
         }
 
         public void start(final Environment env) throws IOException {
-            try {
-                CommandSession session = commandProcessor.createSession(in, new PrintStream(out), new PrintStream(err));
-                session.execute(command);
-            } catch (Exception e) {
-                throw (IOException) new IOException("Unable to start shell").initCause(e);
-            } finally {
-                close(in, out, err);
-                callback.onExit(0);
+            if (sessionExecutor == null) {
+                try {
+                    execute();
+                } catch (Exception e) {
+                    throw (IOException) new IOException("Unable to start shell").initCause(e);
+                } finally {
+                    close(in, out, err);
+                    callback.onExit(0);
+                }
+                return;
             }
+            sessionInfo = sessionExecutor.createSession("exec", env.getEnv().get("USER"));
+            sessionExecutor.submit(sessionInfo,
+                new Runnable() {
+                    public void run() {
+                        try {
+                            execute();
+                        } catch (Exception e) {
+                            new PrintStream(err, true).println("Error executing command: " + e.getMessage());
+                        } finally {
+                            close(in, out, err);
+                            callback.onExit(0);
+                        }
+                    }
+                },
+                new Runnable() {
+                    public void run() {
+                        new PrintStream(err, true).println("Too many sessions, please try again later.");
+                        close(in, out, err);
+                        callback.onExit(1);
+                    }
+                },
+                null);
+        }
+
+        private void execute() throws Exception {
+            CommandSession session = commandProcessor.createSession(in, new PrintStream(out), new PrintStream(err));
+            session.execute(command);
         }
 
         public void destroy() {
+            if (sessionInfo != null) {
+                sessionExecutor.cancel(sessionInfo);
+            }
 		}
 
     }
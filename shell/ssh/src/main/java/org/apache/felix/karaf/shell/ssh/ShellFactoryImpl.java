@@ -29,6 +29,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 
 import jline.Terminal;
 import org.apache.felix.karaf.shell.console.Completer;
@@ -53,15 +56,61 @@ public class ShellFactoryImpl implements Factory<Command>
 {
     private CommandProcessor commandProcessor;
     private List<Completer> completers;
+    private SessionExecutor sessionExecutor;
+    private int outputBufferSize = 8192;
+    private long outputFlushDelay = 10;
+    private int outputFlushThreads = 2;
+    private ScheduledExecutorService flusher;
 
     public void setCommandProcessor(CommandProcessor commandProcessor) {
         this.commandProcessor = commandProcessor;
     }
 
+    public void setSessionExecutor(SessionExecutor sessionExecutor) {
+        this.sessionExecutor = sessionExecutor;
+    }
+
     public void setCompleters(List<Completer> completers) {
         this.completers = completers;
     }
 
+    /**
+     * Size of the buffer used for the output of each session, <code>0</code> to disable buffering
+     */
+    public void setOutputBufferSize(int outputBufferSize) {
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    /**
+     * Maximum delay in milliseconds before buffered output is sent to the client
+     */
+    public void setOutputFlushDelay(long outputFlushDelay) {
+        this.outputFlushDelay = outputFlushDelay;
+    }
+
+    public void setOutputFlushThreads(int outputFlushThreads) {
+        this.outputFlushThreads = outputFlushThreads;
+    }
+
+    public void init() {
+        if (outputBufferSize > 0 && outputFlushDelay > 0) {
+            flusher = new ScheduledThreadPoolExecutor(outputFlushThreads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ssh output flusher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+    }
+
     public Command create() {
         return new ShellImpl();
     }
@@ -76,8 +125,14 @@ public class ShellFactoryImpl implements Factory<Command>
 
         private ExitCallback callback;
 
+        private PrintStream consoleOut;
+
+        private PrintStream consoleErr;
+
         private boolean closed;
 
+        private SessionExecutor.SessionInfo sessionInfo;
+
         public void setInputStream(final InputStream in) {
             this.in = in;
         }
@@ -97,10 +152,25 @@ public class ShellFactoryImpl implements Factory<Command>
         public void start(final Environment env) throws IOException {
             try {
                 final Terminal terminal = new SshTerminal(env);
-                Console console = new Console(commandProcessor,
+                if (sessionExecutor != null) {
+                    sessionInfo = sessionExecutor.createSession("shell", env.getEnv().get("USER"));
+                }
+                if (outputBufferSize > 0) {
+                    // output is buffered and sent when the console flushes it after the prompt,
+                    // so the print streams must not flush on each new line
+                    CoalescingOutputStream bufOut = new CoalescingOutputStream(out, outputBufferSize, flusher,
+                                                                               outputFlushDelay, sessionInfo);
+                    CoalescingOutputStream bufErr = new CoalescingOutputStream(err, bufOut);
+                    consoleOut = new PrintStream(new LfToCrLfFilterOutputStream(bufOut), false);
+                    consoleErr = new PrintStream(new LfToCrLfFilterOutputStream(bufErr), false);
+                } else {
+                    consoleOut = new PrintStream(new LfToCrLfFilterOutputStream(out), true);
+                    consoleErr = new PrintStream(new LfToCrLfFilterOutputStream(err), true);
+                }
+                final Console console = new Console(commandProcessor,
                                               in,
-                                              new PrintStream(new LfToCrLfFilterOutputStream(out), true),
-                                              new PrintStream(new LfToCrLfFilterOutputStream(err), true),
+                                              consoleOut,
+                                              consoleErr,
                                               terminal,
                                               new AggregateCompleter(completers),
                                               new Runnable() {
@@ -122,15 +192,48 @@ public class ShellFactoryImpl implements Factory<Command>
                     }
                 }, Signal.WINCH);
                 session.put(".jline.terminal", terminal);
-                new Thread(console).start();
+                if (sessionInfo != null) {
+                    console.setExecutor(sessionInfo);
+                    sessionExecutor.submit(sessionInfo, console,
+                        new Runnable() {
+                            public void run() {
+                                message("Too many sessions, please try again later.");
+                                destroy();
+                            }
+                        },
+                        new Runnable() {
+                            public void run() {
+                                message("Too many sessions, waiting for a session to end...");
+                            }
+                        });
+                } else {
+                    new Thread(console).start();
+                }
             } catch (Exception e) {
                 throw (IOException) new IOException("Unable to start shell").initCause(e);
             }
         }
 
+        private void message(String msg) {
+            try {
+                out.write((msg + "\r\n").getBytes());
+                out.flush();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+
         public void destroy() {
             if (!closed) {
                 closed = true;
+                if (sessionInfo != null) {
+                    sessionExecutor.cancel(sessionInfo);
+                }
+                if (consoleOut != null) {
+                    // also stops the thread sending delayed output
+                    consoleOut.close();
+                    consoleErr.close();
+                }
                 ShellFactoryImpl.close(in, out, err);
                 callback.onExit(0);
             }
@@ -166,7 +269,9 @@ public class ShellFactoryImpl implements Factory<Command>
     }
 
     // TODO: remove this class when sshd use lf->crlf conversion by default
-    public class LfToCrLfFilterOutputStream extends FilterOutputStream {
+    public static class LfToCrLfFilterOutputStream extends FilterOutputStream {
+
+        private static final byte[] CRLF = { '\r', '\n' };
 
         private boolean lastWasCr;
 
@@ -177,14 +282,35 @@ public class ShellFactoryImpl implements Factory<Command>
         @Override
         public void write(int b) throws IOException {
             if (!lastWasCr && b == '\n') {
-                out.write('\r');
-                out.write('\n');
+                out.write(CRLF);
             } else {
                 out.write(b);
             }
             lastWasCr = b == '\r';
         }
 
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // write the slices between line feeds in one call
+            int start = off;
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\n' && !(i > off ? b[i - 1] == '\r' : lastWasCr)) {
+                    if (i > start) {
+                        out.write(b, start, i - start);
+                    }
+                    out.write(CRLF);
+                    start = i + 1;
+                }
+            }
+            if (end > start) {
+                out.write(b, start, end - start);
+            }
+            if (len > 0) {
+                lastWasCr = b[end - 1] == '\r';
+            }
+        }
+
     }
 
 
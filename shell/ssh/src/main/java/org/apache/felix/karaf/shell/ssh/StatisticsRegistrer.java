@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.ssh;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers the statistics MBean of the SSH server in each bound MBeanServer,
+ * so that the SSH server does not depend on the management bundle.
+ */
+public class StatisticsRegistrer {
+
+    private Object mbean;
+
+    private ObjectName objectName;
+
+    private MBeanServer mbeanServer;
+
+    public void setMbean(Object mbean) {
+        this.mbean = mbean;
+    }
+
+    public void setObjectName(String objectName) throws JMException {
+        this.objectName = new ObjectName(objectName);
+    }
+
+    public synchronized void registerMBeanServer(MBeanServer mbeanServer) throws JMException {
+        if (this.mbeanServer != mbeanServer) {
+            unregister();
+            if (mbeanServer != null) {
+                mbeanServer.registerMBean(mbean, objectName);
+                this.mbeanServer = mbeanServer;
+            }
+        }
+    }
+
+    public synchronized void unregisterMBeanServer(MBeanServer mbeanServer) throws JMException {
+        unregister();
+    }
+
+    public synchronized void destroy() throws JMException {
+        unregister();
+    }
+
+    private void unregister() throws JMException {
+        if (mbeanServer != null) {
+            try {
+                mbeanServer.unregisterMBean(objectName);
+            } catch (InstanceNotFoundException e) {
+                // already gone
+            }
+            mbeanServer = null;
+        }
+    }
+
+}
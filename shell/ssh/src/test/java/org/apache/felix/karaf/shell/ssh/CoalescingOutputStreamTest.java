@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class CoalescingOutputStreamTest extends TestCase {
+
+    public void testLfToCrLf() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream os = new ShellFactoryImpl.LfToCrLfFilterOutputStream(baos);
+        os.write("a\nb\r\nc\r".getBytes());
+        os.write("\nd\n\n".getBytes());
+        os.write('e');
+        os.write('\n');
+        assertEquals("a\r\nb\r\nc\r\nd\r\n\r\ne\r\n", baos.toString());
+    }
+
+    public void testCoalesceUntilFlush() throws Exception {
+        CountingOutputStream channel = new CountingOutputStream();
+        CoalescingOutputStream os = new CoalescingOutputStream(channel, 64, null, 0);
+        os.write("line 1\r\n".getBytes());
+        // without scheduler, each write is sent
+        assertEquals(1, channel.flushes);
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        try {
+            channel = new CountingOutputStream();
+            os = new CoalescingOutputStream(channel, 64, scheduler, 60000);
+            for (int i = 0; i < 5; i++) {
+                os.write(("line " + i + "\r\n").getBytes());
+            }
+            assertEquals(0, channel.flushes);
+            os.flush();
+            assertEquals(1, channel.flushes);
+            assertEquals(40, channel.data.size());
+
+            // a full buffer is sent right away
+            os.write(new byte[100]);
+            assertEquals(2, channel.flushes);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    public void testDelayedFlush() throws Exception {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        try {
+            CountingOutputStream channel = new CountingOutputStream();
+            CoalescingOutputStream os = new CoalescingOutputStream(channel, 64, scheduler, 10);
+            os.write("prompt> ".getBytes());
+            for (int i = 0; i < 100 && channel.flushes == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals("prompt> ", channel.data.toString());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    public void testPairedStreamsKeepOrder() throws Exception {
+        ByteArrayOutputStream both = new ByteArrayOutputStream();
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        try {
+            CoalescingOutputStream out = new CoalescingOutputStream(new TaggingOutputStream(both, "out:"), 64, scheduler, 60000);
+            CoalescingOutputStream err = new CoalescingOutputStream(new TaggingOutputStream(both, "err:"), out);
+            out.write("1".getBytes());
+            out.write("2".getBytes());
+            err.write("3".getBytes());
+            out.write("4".getBytes());
+            out.flush();
+            assertEquals("out:12err:3out:4", both.toString());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    public void testStalledClientDoesNotDelayOthers() throws Exception {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            CoalescingOutputStream stalled = new CoalescingOutputStream(new OutputStream() {
+                public void write(int b) throws IOException {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException();
+                    }
+                }
+            }, 64, scheduler, 1);
+            stalled.write("blocked".getBytes());
+            Thread.sleep(50);
+
+            CountingOutputStream channel = new CountingOutputStream();
+            CoalescingOutputStream os = new CoalescingOutputStream(channel, 64, scheduler, 1);
+            os.write("prompt> ".getBytes());
+            for (int i = 0; i < 100 && channel.flushes == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals("prompt> ", channel.data.toString());
+            os.close();
+        } finally {
+            release.countDown();
+            scheduler.shutdown();
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int flushes;
+
+        public void write(int b) throws IOException {
+            data.write(b);
+        }
+
+        public void flush() {
+            flushes++;
+        }
+    }
+
+    private static class TaggingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final String tag;
+
+        TaggingOutputStream(OutputStream out, String tag) {
+            this.out = out;
+            this.tag = tag;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(tag.getBytes());
+            out.write(b, off, len);
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.ssh;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+public class SessionExecutorTest extends TestCase {
+
+    public void testQueueExcessSessions() throws Exception {
+        SessionExecutor executor = new SessionExecutor();
+        executor.setThreadModel(SessionExecutor.THREAD_MODEL_POOL);
+        executor.setMaxSessions(1);
+        executor.setMaxQueuedSessions(1);
+        executor.init();
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch secondRan = new CountDownLatch(1);
+            final AtomicBoolean queued = new AtomicBoolean();
+            final AtomicBoolean rejected = new AtomicBoolean();
+
+            SessionExecutor.SessionInfo first = executor.createSession("shell", "karaf");
+            executor.submit(first, new Await(release), new Flag(rejected), null);
+            SessionExecutor.SessionInfo second = executor.createSession("shell", "karaf");
+            executor.submit(second, new Count(secondRan), new Flag(rejected), new Flag(queued));
+            SessionExecutor.SessionInfo third = executor.createSession("exec", "karaf");
+            executor.submit(third, new Count(new CountDownLatch(1)), new Flag(rejected), null);
+
+            assertTrue(queued.get());
+            assertTrue(rejected.get());
+            assertEquals(SessionExecutor.SessionInfo.STATE_QUEUED, second.getState());
+            assertEquals(2, executor.getSessions().size());
+
+            release.countDown();
+            assertTrue(secondRan.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    public void testThreadAccounting() throws Exception {
+        SessionExecutor executor = new SessionExecutor();
+        executor.init();
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch started = new CountDownLatch(2);
+            final SessionExecutor.SessionInfo session = executor.createSession("shell", "karaf");
+            executor.submit(session, new Runnable() {
+                public void run() {
+                    session.execute(new Runnable() {
+                        public void run() {
+                            started.countDown();
+                            awaitQuietly(release);
+                        }
+                    });
+                    started.countDown();
+                    awaitQuietly(release);
+                }
+            }, new Flag(new AtomicBoolean()), null);
+
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(2, session.getActiveThreads());
+            assertEquals(2, session.getTotalThreads());
+            release.countDown();
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    public void testPoolRequiresSessionLimit() throws Exception {
+        SessionExecutor executor = new SessionExecutor();
+        executor.setThreadModel(SessionExecutor.THREAD_MODEL_POOL);
+        executor.init();
+        try {
+            assertEquals(SessionExecutor.THREAD_MODEL_THREAD, executor.getThreadModel());
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    public void testCancelQueuedSession() throws Exception {
+        SessionExecutor executor = new SessionExecutor();
+        executor.setMaxSessions(1);
+        executor.init();
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final AtomicBoolean ran = new AtomicBoolean();
+            SessionExecutor.SessionInfo first = executor.createSession("shell", "karaf");
+            executor.submit(first, new Await(release), new Flag(new AtomicBoolean()), null);
+            SessionExecutor.SessionInfo second = executor.createSession("shell", "karaf");
+            executor.submit(second, new Flag(ran), new Flag(new AtomicBoolean()), null);
+
+            assertTrue(executor.cancel(second));
+            assertEquals(SessionExecutor.SessionInfo.STATE_ENDED, second.getState());
+            assertEquals(1, executor.getSessions().size());
+            assertFalse(executor.cancel(first));
+            release.countDown();
+            Thread.sleep(100);
+            assertFalse(ran.get());
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    public void testRejectedAfterDestroy() throws Exception {
+        SessionExecutor executor = new SessionExecutor();
+        executor.setThreadModel(SessionExecutor.THREAD_MODEL_POOL);
+        executor.setMaxSessions(1);
+        executor.init();
+        executor.destroy();
+
+        AtomicBoolean rejected = new AtomicBoolean();
+        SessionExecutor.SessionInfo session = executor.createSession("shell", "karaf");
+        executor.submit(session, new Count(new CountDownLatch(1)), new Flag(rejected), null);
+        assertTrue(rejected.get());
+        assertEquals(SessionExecutor.SessionInfo.STATE_ENDED, session.getState());
+        assertEquals(0, executor.getSessions().size());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // Ignore
+        }
+    }
+
+    private static class Await implements Runnable {
+        private final CountDownLatch latch;
+        Await(CountDownLatch latch) {
+            this.latch = latch;
+        }
+        public void run() {
+            awaitQuietly(latch);
+        }
+    }
+
+    private static class Count implements Runnable {
+        private final CountDownLatch latch;
+        Count(CountDownLatch latch) {
+            this.latch = latch;
+        }
+        public void run() {
+            latch.countDown();
+        }
+    }
+
+    private static class Flag implements Runnable {
+        private final AtomicBoolean flag;
+        Flag(AtomicBoolean flag) {
+            this.flag = flag;
+        }
+        public void run() {
+            flag.set(true);
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.apache.sshd.ClientChannel;
+import org.apache.sshd.ClientSession;
+import org.apache.sshd.SshClient;
+import org.apache.sshd.SshServer;
+import org.apache.sshd.client.future.ConnectFuture;
+import org.apache.sshd.common.Factory;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.PasswordAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+
+/**
+ * Measures the throughput of a large command output (such as <code>osgi:list</code>
+ * or <code>log:display</code>) sent to a client over a loopback SSH connection.
+ *
+ * The output path of the shell (line feed translation and coalescing buffer) is
+ * compared with the previous one, which translated line feeds one byte at a time
+ * and flushed the channel after each line.
+ *
+ * Run with: <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.apache.felix.karaf.shell.ssh.SshOutputBenchmark</code>
+ */
+public class SshOutputBenchmark {
+
+    private static final int LINES = 100000;
+    private static final String LINE = "[  42] [Active     ] [Created     ] [   60] Apache Felix Karaf :: Shell SSH (1.7.0.SNAPSHOT)";
+    private static final int ITERATIONS = 5;
+
+    private static final ScheduledThreadPoolExecutor FLUSHER = new ScheduledThreadPoolExecutor(1);
+
+    public static void main(String[] args) throws Exception {
+        int port;
+        ServerSocket s = new ServerSocket(0);
+        try {
+            port = s.getLocalPort();
+        } finally {
+            s.close();
+        }
+
+        final boolean[] buffered = new boolean[1];
+        SshServer server = SshServer.setUpDefaultServer();
+        server.setPort(port);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator(new PasswordAuthenticator() {
+            public boolean authenticate(String username, String password, ServerSession session) {
+                return true;
+            }
+        });
+        server.setShellFactory(new Factory<Command>() {
+            public Command create() {
+                return new OutputCommand(buffered[0]);
+            }
+        });
+        server.start();
+
+        SshClient client = SshClient.setUpDefaultClient();
+        client.start();
+        try {
+            for (int i = 0; i < ITERATIONS; i++) {
+                buffered[0] = false;
+                report("per line flush", run(client, port));
+                buffered[0] = true;
+                report("coalesced", run(client, port));
+            }
+        } finally {
+            client.stop();
+            server.stop();
+            FLUSHER.shutdown();
+        }
+    }
+
+    private static void report(String name, long nanos) {
+        double mb = (LINE.length() + 2) * (double) LINES / (1024.0 * 1024.0);
+        System.out.println(String.format("%-16s %8.1f MB/s %8d ms", name, mb / (nanos / 1e9), nanos / 1000000));
+    }
+
+    private static long run(SshClient client, int port) throws Exception {
+        ConnectFuture future = client.connect("localhost", port);
+        future.await();
+        ClientSession session = future.getSession();
+        try {
+            session.authPassword("karaf", "karaf");
+            session.waitFor(ClientSession.WAIT_AUTH | ClientSession.CLOSED | ClientSession.AUTHED, 0);
+            ClientChannel channel = session.createChannel("shell");
+            channel.setIn(new ByteArrayInputStream(new byte[0]));
+            CountingOutputStream out = new CountingOutputStream();
+            channel.setOut(out);
+            channel.setErr(new CountingOutputStream());
+            long t0 = System.nanoTime();
+            channel.open();
+            channel.waitFor(ClientChannel.CLOSED, 0);
+            long t1 = System.nanoTime();
+            if (out.count < (long) LINES * (LINE.length() + 2)) {
+                throw new IllegalStateException("Missing output: " + out.count + " bytes received");
+            }
+            return t1 - t0;
+        } finally {
+            session.close(false);
+        }
+    }
+
+    private static class OutputCommand implements Command {
+
+        private final boolean buffered;
+        private OutputStream out;
+        private OutputStream err;
+        private ExitCallback callback;
+
+        OutputCommand(boolean buffered) {
+            this.buffered = buffered;
+        }
+
+        public void setInputStream(InputStream in) {
+        }
+
+        public void setOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        public void setErrorStream(OutputStream err) {
+            this.err = err;
+        }
+
+        public void setExitCallback(ExitCallback callback) {
+            this.callback = callback;
+        }
+
+        public void start(Environment env) throws IOException {
+            final PrintStream ps;
+            if (buffered) {
+                ps = new PrintStream(new ShellFactoryImpl.LfToCrLfFilterOutputStream(
+                        new CoalescingOutputStream(out, 8192, FLUSHER, 10)), false);
+            } else {
+                ps = new PrintStream(new PerByteLfToCrLfFilterOutputStream(out), true);
+            }
+            new Thread() {
+                public void run() {
+                    for (int i = 0; i < LINES; i++) {
+                        ps.println(LINE);
+                    }
+                    ps.flush();
+                    try {
+                        out.close();
+                        err.close();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                    callback.onExit(0);
+                }
+            }.start();
+        }
+
+        public void destroy() {
+        }
+    }
+
+    /**
+     * The translating stream as it was before, only overriding write(int)
+     */
+    private static class PerByteLfToCrLfFilterOutputStream extends FilterOutputStream {
+
+        private boolean lastWasCr;
+
+        PerByteLfToCrLfFilterOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public void write(int b) throws IOException {
+            if (!lastWasCr && b == '\n') {
+                out.write('\r');
+                out.write('\n');
+            } else {
+                out.write(b);
+            }
+            lastWasCr = b == '\r';
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        public void write(int b) {
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+}
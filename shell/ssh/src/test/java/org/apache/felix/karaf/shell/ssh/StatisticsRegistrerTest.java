@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.karaf.shell.ssh;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+public class StatisticsRegistrerTest extends TestCase {
+
+    public interface CounterMBean {
+        int getValue();
+    }
+
+    public static class Counter implements CounterMBean {
+        public int getValue() {
+            return 1;
+        }
+    }
+
+    public void testRegistration() throws Exception {
+        ObjectName name = new ObjectName("org.apache.felix.karaf:type=authentication,name=test,service=ssh");
+        MBeanServer first = MBeanServerFactory.newMBeanServer();
+        MBeanServer second = MBeanServerFactory.newMBeanServer();
+        StatisticsRegistrer registrer = new StatisticsRegistrer();
+        registrer.setMbean(new Counter());
+        registrer.setObjectName(name.toString());
+
+        registrer.registerMBeanServer(first);
+        assertEquals(1, first.getAttribute(name, "Value"));
+        // binding the same server again does nothing
+        registrer.registerMBeanServer(first);
+        assertTrue(first.isRegistered(name));
+
+        registrer.registerMBeanServer(second);
+        assertFalse(first.isRegistered(name));
+        assertTrue(second.isRegistered(name));
+
+        registrer.unregisterMBeanServer(second);
+        assertFalse(second.isRegistered(name));
+
+        registrer.registerMBeanServer(first);
+        registrer.destroy();
+        assertFalse(first.isRegistered(name));
+    }
+
+}
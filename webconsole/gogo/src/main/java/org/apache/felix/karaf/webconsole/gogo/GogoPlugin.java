@@ -22,7 +22,6 @@
 
 package org.apache.felix.karaf.webconsole.gogo;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -31,14 +30,24 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.net.URL;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -65,6 +74,13 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
     public static final int TERM_WIDTH = 120;
     public static final int TERM_HEIGHT = 39;
 
+    private static final int GZIP_THRESHOLD = 1024;
+
+    // time to wait for the output of the keys sent by the client
+    private static final long KEYS_TIMEOUT = 10;
+    // time to wait for a modification of the screen when the client is only polling
+    private static final long POLL_TIMEOUT = 10000;
+
     private Log log = LogFactory.getLog(GogoPlugin.class);
 
     private BundleContext bundleContext;
@@ -73,6 +89,20 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
 
     private List<Completer> completers;
 
+    private long idleTimeout = 30 * 60 * 1000L;
+
+    private int maxSessions = 10;
+
+    private final Set<SessionTerminal> sessions = new HashSet<SessionTerminal>();
+
+    private final AtomicLong createdSessions = new AtomicLong();
+
+    private final AtomicLong reapedSessions = new AtomicLong();
+
+    private final AtomicLong rejectedSessions = new AtomicLong();
+
+    private ScheduledExecutorService reaper;
+
     public void setBundleContext(BundleContext bundleContext)
     {
         this.bundleContext = bundleContext;
@@ -88,6 +118,55 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
         this.completers = completers;
     }
 
+    /**
+     * Time in milliseconds after which a terminal which did not receive any request is closed,
+     * <code>0</code> to keep terminals until their http session ends
+     */
+    public void setIdleTimeout(long idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Maximum number of terminals opened at the same time, <code>0</code> for no limit
+     */
+    public void setMaxSessions(int maxSessions)
+    {
+        this.maxSessions = maxSessions;
+    }
+
+    //
+    // Metrics
+    //
+
+    public int getActiveSessions()
+    {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    public long getCreatedSessions()
+    {
+        return createdSessions.get();
+    }
+
+    /**
+     * Number of terminals closed because they were idle or their http session ended
+     */
+    public long getReapedSessions()
+    {
+        return reapedSessions.get();
+    }
+
+    /**
+     * Number of terminals which could not be created because too many were opened
+     */
+    public long getRejectedSessions()
+    {
+        return rejectedSessions.get();
+    }
+
     /*
     * Blueprint lifecycle callback methods
     */
@@ -95,15 +174,80 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
     public void start()
     {
         super.activate( bundleContext );
+        if (idleTimeout > 0) {
+            reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "gogo web console reaper");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            long period = Math.max(1000, Math.min(idleTimeout / 2, 60 * 1000L));
+            reaper.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    reap();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
         this.log.info( LABEL + " plugin activated" );
     }
 
     public void stop()
     {
+        if (reaper != null) {
+            reaper.shutdownNow();
+            reaper = null;
+        }
+        for (SessionTerminal st : getSessions()) {
+            st.close();
+        }
         this.log.info( LABEL + " plugin deactivated" );
         super.deactivate();
     }
 
+    private SessionTerminal[] getSessions()
+    {
+        synchronized (sessions) {
+            return sessions.toArray(new SessionTerminal[sessions.size()]);
+        }
+    }
+
+    /**
+     * Close the terminals which did not receive any request for longer than the idle timeout.
+     */
+    void reap()
+    {
+        long now = System.currentTimeMillis();
+        for (SessionTerminal st : getSessions()) {
+            if (now - st.getLastAccess() > idleTimeout) {
+                if (st.close()) {
+                    reapedSessions.incrementAndGet();
+                    this.log.info( "Closed idle web console terminal (" + getActiveSessions() + " active, "
+                                    + reapedSessions.get() + " reaped)" );
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a new terminal unless the maximum number of terminals is reached.
+     *
+     * @return the new terminal or <code>null</code>
+     */
+    private SessionTerminal createSessionTerminal() throws IOException
+    {
+        synchronized (sessions) {
+            if (maxSessions > 0 && sessions.size() >= maxSessions) {
+                rejectedSessions.incrementAndGet();
+                return null;
+            }
+            SessionTerminal st = new SessionTerminal();
+            sessions.add(st);
+            createdSessions.incrementAndGet();
+            return st;
+        }
+    }
+
     //
     // AbstractWebConsolePlugin interface
     //
@@ -127,6 +271,10 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
         pw.println( "<link href=\"" + appRoot + "/gogo/res/ui/gogo.css\" rel=\"stylesheet\" type=\"text/css\" />" );
         pw.println( "<script src=\"" + appRoot + "/gogo/res/ui/gogo.js\" type=\"text/javascript\"></script>" );
         pw.println( "<div id='console'><div id='term'></div></div>" );
+        pw.println( "<div id='sessions'>Terminals: " + getActiveSessions() + " active"
+                        + (maxSessions > 0 ? " (max " + maxSessions + ")" : "")
+                        + ", " + getCreatedSessions() + " created, " + getReapedSessions() + " reaped, "
+                        + getRejectedSessions() + " rejected</div>" );
         pw.println( "<script type=\"text/javascript\"><!--" );
         pw.println( "window.onload = function() { gogo.Terminal(document.getElementById(\"term\"), " + TERM_WIDTH + ", " + TERM_HEIGHT + "); }" );
         pw.println( "--></script>" );
@@ -164,40 +312,62 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         String encoding = request.getHeader("Accept-Encoding");
         boolean supportsGzip = (encoding != null && encoding.toLowerCase().indexOf("gzip") > -1);
+        // version of the screen known by the client
+        long since = 0;
+        String s = request.getParameter("s");
+        if (s != null && s.length() > 0) {
+            try {
+                since = Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                // send the whole screen
+            }
+        }
+        String f = request.getParameter("f");
+        if (f != null && f.length() > 0) {
+            since = 0;
+        }
         SessionTerminal st = (SessionTerminal) request.getSession(true).getAttribute("terminal");
         if (st == null || st.isClosed()) {
-            st = new SessionTerminal();
+            st = createSessionTerminal();
+            if (st == null) {
+                this.log.warn( "Maximum number of web console terminals reached (" + maxSessions + ")" );
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many web console terminals");
+                return;
+            }
             request.getSession().setAttribute("terminal", st);
+            since = 0;
         }
         String str = request.getParameter("k");
-        String f = request.getParameter("f");
-        String dump = st.handle(str, f != null && f.length() > 0);
+        String dump = st.handle(str, since);
         if (dump != null) {
-            if (supportsGzip) {
+            byte[] data = dump.getBytes("UTF-8");
+            response.setContentType("text/plain; charset=UTF-8");
+            // only changed rows are sent, most responses are too small to be worth compressing
+            if (supportsGzip && data.length > GZIP_THRESHOLD) {
                 response.setHeader("Content-Encoding", "gzip");
-                response.setHeader("Content-Type", "text/html");
                 try {
                     GZIPOutputStream gzos =  new GZIPOutputStream(response.getOutputStream());
-                    gzos.write(dump.getBytes());
+                    gzos.write(data);
                     gzos.close();
                 } catch (IOException ie) {
                     // handle the error here
                     ie.printStackTrace();
                 }
             } else {
-                response.getOutputStream().write(dump.getBytes());
+                response.getOutputStream().write(data);
             }
         }
     }
 
 
-    public class SessionTerminal implements Runnable {
+    public class SessionTerminal implements Runnable, HttpSessionBindingListener {
 
         private Terminal terminal;
         private Console console;
         private PipedOutputStream in;
         private PipedInputStream out;
-        private boolean closed;
+        private volatile boolean closed;
+        private volatile long lastAccess = System.currentTimeMillis();
 
         public SessionTerminal() throws IOException {
             try {
@@ -214,7 +384,11 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
                                       pipedOut,
                                       new WebTerminal(TERM_WIDTH, TERM_HEIGHT),
                                       new AggregateCompleter(completers),
-                                      null);
+                                      new Runnable() {
+                                          public void run() {
+                                              close();
+                                          }
+                                      });
                 CommandSession session = console.getSession();
                 session.put("APPLICATION", System.getProperty("karaf.name", "root"));
                 session.put("USER", "karaf");
@@ -235,53 +409,98 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
             return closed;
         }
 
-        public String handle(String str, boolean forceDump) throws IOException {
+        public long getLastAccess() {
+            return lastAccess;
+        }
+
+        /**
+         * Stop the console and release the pipes and threads of this terminal.
+         *
+         * @return <code>true</code> if the terminal was not already closed
+         */
+        public boolean close() {
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                closed = true;
+            }
+            synchronized (sessions) {
+                sessions.remove(this);
+            }
+            console.close();
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            return true;
+        }
+
+        public void valueBound(HttpSessionBindingEvent event) {
+        }
+
+        public void valueUnbound(HttpSessionBindingEvent event) {
+            // the http session has expired or the terminal has been replaced
+            if (close()) {
+                reapedSessions.incrementAndGet();
+            }
+        }
+
+        public String handle(String str, long since) throws IOException {
+            lastAccess = System.currentTimeMillis();
+            boolean keys = str != null && str.length() > 0;
             try {
-                if (str != null && str.length() > 0) {
+                if (keys) {
                     String d = terminal.pipe(str);
-                    for (byte b : d.getBytes()) {
-                        in.write(b);
-                    }
+                    in.write(d.getBytes());
                     in.flush();
                 }
             } catch (IOException e) {
-                closed = true;
+                close();
                 throw e;
             }
             try {
-                return terminal.dump(10, forceDump);
+                // requests without keys are long polls which only return when the screen changes
+                return terminal.dump(keys ? KEYS_TIMEOUT : POLL_TIMEOUT, since);
             } catch (InterruptedException e) {
                 throw new InterruptedIOException(e.toString());
+            } finally {
+                lastAccess = System.currentTimeMillis();
             }
         }
 
         public void run() {
             try {
+                // a single reader keeps the decoder state between reads so that
+                // characters split across two chunks are decoded correctly
+                Reader r = new InputStreamReader(out);
+                char[] buf = new char[8192];
                 for (;;) {
-                    byte[] buf = new byte[8192];
-                    int l = out.read(buf);
-                    InputStreamReader r = new InputStreamReader(new ByteArrayInputStream(buf, 0, l));
-                    StringBuilder sb = new StringBuilder();
-                    for (;;) {
-                        int c = r.read();
-                        if (c == -1) {
-                            break;
-                        }
-                        sb.append((char) c);
+                    int l = r.read(buf);
+                    if (l == -1) {
+                        break;
                     }
-                    if (sb.length() > 0) {
-                        terminal.write(sb.toString());
+                    if (l > 0) {
+                        terminal.write(new String(buf, 0, l));
                     }
                     String s = terminal.read();
                     if (s != null && s.length() > 0) {
-                        for (byte b : s.getBytes()) {
-                            in.write(b);
-                        }
+                        in.write(s.getBytes());
+                        in.flush();
                     }
                 }
             } catch (IOException e) {
-                closed = true;
-                e.printStackTrace();
+                if (!closed) {
+                    e.printStackTrace();
+                }
+            } finally {
+                close();
             }
         }
 
@@ -99,6 +99,16 @@ public class Terminal {
 
     private AtomicBoolean dirty = new AtomicBoolean(true);
 
+    // Row level dirty tracking: rows modified since the last dump and the
+    // version at which each row has last been modified
+    private boolean[] dirty_rows;
+    private long[] row_versions;
+    private long version;
+    private int dumped_cx = -1;
+    private int dumped_cy = -1;
+    private boolean dumped_cursor;
+    private boolean dumped_inverse;
+
     public Terminal() {
         this(80, 24);
     }
@@ -176,6 +186,9 @@ public class Terminal {
         Arrays.fill(screen, attr | 0x0020);
         screen2 = new int[width * height];
         Arrays.fill(screen2, attr | 0x0020);
+        dirty_rows = new boolean[height];
+        row_versions = new long[height];
+        setDirty(0, height);
         // Scroll parameters
         scroll_area_y0 = 0;
         scroll_area_y1 = height;
@@ -260,7 +273,9 @@ public class Terminal {
 
     private void poke(int y, int x, int[] s) {
         System.arraycopy(s, 0, screen, width * y + x, s.length);
-        setDirty();
+        if (s.length > 0) {
+            setDirty(y, (width * y + x + s.length - 1) / width + 1);
+        }
     }
 
     private void fill(int y0, int x0, int y1, int x1, int c) {
@@ -268,7 +283,9 @@ public class Terminal {
         int d1 = width * (y1 - 1) + x1;
         if (d0 <= d1) {
             Arrays.fill(screen, width * y0 + x0,  width * (y1 - 1) + x1, c);
-            setDirty();
+            if (d0 < d1) {
+                setDirty(y0, (d1 - 1) / width + 1);
+            }
         }
     }
 
@@ -580,6 +597,7 @@ public class Terminal {
                 // Alternate screen mode
                 if ((state && !vt100_mode_alt_screen) || (!state && vt100_mode_alt_screen)) {
                     int[] s = screen; screen = screen2; screen2 = s;
+                    setDirty(0, height);
                     Map<String, Object> map = vt100_saved; vt100_saved = vt100_saved2; vt100_saved = map;
                 }
                 vt100_mode_alt_screen = state;
@@ -1309,6 +1327,49 @@ public class Terminal {
         notifyAll();
     }
 
+    private void setDirty(int y0, int y1) {
+        for (int y = Math.max(0, y0); y < Math.min(height, y1); y++) {
+            dirty_rows[y] = true;
+        }
+        setDirty();
+    }
+
+    /**
+     * Assign a new version to the rows modified since the last call,
+     * including the rows where the cursor was and now is.
+     */
+    private void update_versions() {
+        int cx = Math.min(this.cx, width - 1);
+        int cy = this.cy;
+        if (cx != dumped_cx || cy != dumped_cy || vt100_mode_cursor != dumped_cursor) {
+            if (dumped_cy >= 0 && dumped_cy < height) {
+                dirty_rows[dumped_cy] = true;
+            }
+            if (cy >= 0 && cy < height) {
+                dirty_rows[cy] = true;
+            }
+        }
+        if (vt100_mode_inverse != dumped_inverse) {
+            Arrays.fill(dirty_rows, true);
+        }
+        dumped_cx = cx;
+        dumped_cy = cy;
+        dumped_cursor = vt100_mode_cursor;
+        dumped_inverse = vt100_mode_inverse;
+        dirty.set(false);
+        boolean changed = false;
+        for (int y = 0; y < height; y++) {
+            if (dirty_rows[y]) {
+                if (!changed) {
+                    version++;
+                    changed = true;
+                }
+                row_versions[y] = version;
+                dirty_rows[y] = false;
+            }
+        }
+    }
+
     //
     // External interface
     //
@@ -1330,79 +1391,79 @@ public class Terminal {
     }
 
     public synchronized String pipe(String d) {
-        String o = "";
+        StringBuilder o = new StringBuilder();
         for (char c : d.toCharArray()) {
             if (vt100_keyfilter_escape) {
                 vt100_keyfilter_escape = false;
                 if (vt100_mode_cursorkey) {
                     switch (c) {
-                        case '~': o += "~"; break;
-                        case 'A': o += "\u001bOA"; break;
-                        case 'B': o += "\u001bOB"; break;
-                        case 'C': o += "\u001bOC"; break;
-                        case 'D': o += "\u001bOD"; break;
-                        case 'F': o += "\u001bOF"; break;
-                        case 'H': o += "\u001bOH"; break;
-                        case '1': o += "\u001b[5~"; break;
-                        case '2': o += "\u001b[6~"; break;
-                        case '3': o += "\u001b[2~"; break;
-                        case '4': o += "\u001b[3~"; break;
-                        case 'a': o += "\u001bOP"; break;
-                        case 'b': o += "\u001bOQ"; break;
-                        case 'c': o += "\u001bOR"; break;
-                        case 'd': o += "\u001bOS"; break;
-                        case 'e': o += "\u001b[15~"; break;
-                        case 'f': o += "\u001b[17~"; break;
-                        case 'g': o += "\u001b[18~"; break;
-                        case 'h': o += "\u001b[19~"; break;
-                        case 'i': o += "\u001b[20~"; break;
-                        case 'j': o += "\u001b[21~"; break;
-                        case 'k': o += "\u001b[23~"; break;
-                        case 'l': o += "\u001b[24~"; break;
+                        case '~': o.append("~"); break;
+                        case 'A': o.append("\u001bOA"); break;
+                        case 'B': o.append("\u001bOB"); break;
+                        case 'C': o.append("\u001bOC"); break;
+                        case 'D': o.append("\u001bOD"); break;
+                        case 'F': o.append("\u001bOF"); break;
+                        case 'H': o.append("\u001bOH"); break;
+                        case '1': o.append("\u001b[5~"); break;
+                        case '2': o.append("\u001b[6~"); break;
+                        case '3': o.append("\u001b[2~"); break;
+                        case '4': o.append("\u001b[3~"); break;
+                        case 'a': o.append("\u001bOP"); break;
+                        case 'b': o.append("\u001bOQ"); break;
+                        case 'c': o.append("\u001bOR"); break;
+                        case 'd': o.append("\u001bOS"); break;
+                        case 'e': o.append("\u001b[15~"); break;
+                        case 'f': o.append("\u001b[17~"); break;
+                        case 'g': o.append("\u001b[18~"); break;
+                        case 'h': o.append("\u001b[19~"); break;
+                        case 'i': o.append("\u001b[20~"); break;
+                        case 'j': o.append("\u001b[21~"); break;
+                        case 'k': o.append("\u001b[23~"); break;
+                        case 'l': o.append("\u001b[24~"); break;
                     }
                 } else {
                     switch (c) {
-                        case '~': o += "~"; break;
-                        case 'A': o += "\u001b[A"; break;
-                        case 'B': o += "\u001b[B"; break;
-                        case 'C': o += "\u001b[C"; break;
-                        case 'D': o += "\u001b[D"; break;
-                        case 'F': o += "\u001b[F"; break;
-                        case 'H': o += "\u001b[H"; break;
-                        case '1': o += "\u001b[5~"; break;
-                        case '2': o += "\u001b[6~"; break;
-                        case '3': o += "\u001b[2~"; break;
-                        case '4': o += "\u001b[3~"; break;
-                        case 'a': o += "\u001bOP"; break;
-                        case 'b': o += "\u001bOQ"; break;
-                        case 'c': o += "\u001bOR"; break;
-                        case 'd': o += "\u001bOS"; break;
-                        case 'e': o += "\u001b[15~"; break;
-                        case 'f': o += "\u001b[17~"; break;
-                        case 'g': o += "\u001b[18~"; break;
-                        case 'h': o += "\u001b[19~"; break;
-                        case 'i': o += "\u001b[20~"; break;
-                        case 'j': o += "\u001b[21~"; break;
-                        case 'k': o += "\u001b[23~"; break;
-                        case 'l': o += "\u001b[24~"; break;
+                        case '~': o.append("~"); break;
+                        case 'A': o.append("\u001b[A"); break;
+                        case 'B': o.append("\u001b[B"); break;
+                        case 'C': o.append("\u001b[C"); break;
+                        case 'D': o.append("\u001b[D"); break;
+                        case 'F': o.append("\u001b[F"); break;
+                        case 'H': o.append("\u001b[H"); break;
+                        case '1': o.append("\u001b[5~"); break;
+                        case '2': o.append("\u001b[6~"); break;
+                        case '3': o.append("\u001b[2~"); break;
+                        case '4': o.append("\u001b[3~"); break;
+                        case 'a': o.append("\u001bOP"); break;
+                        case 'b': o.append("\u001bOQ"); break;
+                        case 'c': o.append("\u001bOR"); break;
+                        case 'd': o.append("\u001bOS"); break;
+                        case 'e': o.append("\u001b[15~"); break;
+                        case 'f': o.append("\u001b[17~"); break;
+                        case 'g': o.append("\u001b[18~"); break;
+                        case 'h': o.append("\u001b[19~"); break;
+                        case 'i': o.append("\u001b[20~"); break;
+                        case 'j': o.append("\u001b[21~"); break;
+                        case 'k': o.append("\u001b[23~"); break;
+                        case 'l': o.append("\u001b[24~"); break;
                     }
                 }
             } else if (c == '~') {
                 vt100_keyfilter_escape = true;
             } else if (c == 127) {
                 if (vt100_mode_backspace) {
-                    o += (char) 8;
+                    o.append((char) 8);
                 } else {
-                    o += (char) 127;
+                    o.append((char) 127);
                 }
             } else {
-                o += c;
+                o.append(c);
                 if (vt100_mode_lfnewline && c == 13) {
-                    o += (char) 10;
+                    o.append((char) 10);
                 }
             }
         }
-        return o;
+        return o.toString();
     }
 
     public synchronized boolean write(String d) {
@@ -1421,72 +1482,107 @@ public class Terminal {
         return true;
     }
 
-    public synchronized String dump(long timeout, boolean forceDump) throws InterruptedException {
-        if (!dirty.get() && timeout > 0) {
-            wait(timeout);
+    /**
+     * Current version of the screen, incremented each time a dump finds modified rows.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Render the rows modified since the given version.
+     *
+     * The first line of the result contains the new version and the screen height,
+     * each following line contains a row index and the html rendering of that row.
+     * All rows are rendered if <code>since</code> is not a version previously returned.
+     *
+     * @param timeout maximum time in milliseconds to wait for a modification if there is none yet
+     * @param since the version of the screen known by the client, or 0
+     * @return the modified rows or <code>null</code> if there is none
+     */
+    public synchronized String dump(long timeout, long since) throws InterruptedException {
+        if (timeout > 0 && since == version) {
+            long end = System.currentTimeMillis() + timeout;
+            while (!dirty.get()) {
+                long delay = end - System.currentTimeMillis();
+                if (delay <= 0) {
+                    break;
+                }
+                wait(delay);
+            }
         }
-        if (dirty.compareAndSet(true, false) || forceDump) {
-            StringBuilder sb = new StringBuilder();
-            int prev_attr = -1;
-            int cx = Math.min(this.cx, width - 1);
-            int cy = this.cy;
-            sb.append("<div><pre class='term'>");
-            for (int y = 0; y < height; y++) {
-                int wx = 0;
-                for (int x = 0; x < width; x++) {
-                    int d = screen[y * width + x];
-                    int c = d & 0xffff;
-                    int a = d >> 16;
-                    if (cy == y && cx == x && vt100_mode_cursor) {
-                        a = a & 0xfff0 | 0x000c;
-                    }
-                    if (a != prev_attr) {
-                        if (prev_attr != -1) {
-                            sb.append("</span>");
-                        }
-                        int bg = a & 0x000f;
-                        int fg = (a & 0x00f0) >> 4;
-                        boolean inv = (a & 0x0200) != 0;
-                        boolean inv2 = vt100_mode_inverse;
-                        if (inv && !inv2 || inv2 && !inv) {
-                            int i = fg; fg = bg; bg = i;
-                        }
-                        if ((a & 0x0400) != 0) {
-                            fg = 0x0c;
-                        }
-                        String ul;
-                        if ((a & 0x0100) != 0) {
-                            ul = " ul";
-                        } else {
-                            ul = "";
-                        }
-                        String b;
-                        if ((a & 0x0800) != 0) {
-                            b = " b";
-                        } else {
-                            b = "";
-                        }
-                        sb.append("<span class='f").append(fg).append(" b").append(bg).append(ul).append(b).append("'>");
-                        prev_attr = a;
-                    }
-                    switch (c) {
-                        case '&': sb.append("&amp;"); break;
-                        case '<': sb.append("&lt;"); break;
-                        case '>': sb.append("&gt;"); break;
-                        default:
-                            wx += utf8_charwidth(c);
-                            if (wx <= width) {
-                                sb.append((char) c);
-                            }
-                            break;
-                    }
+        if (dirty.get()) {
+            update_versions();
+        }
+        boolean full = since <= 0 || since > version;
+        if (!full && since == version) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(version).append(' ').append(height).append('\n');
+        for (int y = 0; y < height; y++) {
+            if (full || row_versions[y] > since) {
+                sb.append(y).append(' ');
+                dump_row(sb, y);
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private void dump_row(StringBuilder sb, int y) {
+        int prev_attr = -1;
+        int cx = Math.min(this.cx, width - 1);
+        int cy = this.cy;
+        int wx = 0;
+        for (int x = 0; x < width; x++) {
+            int d = screen[y * width + x];
+            int c = d & 0xffff;
+            int a = d >> 16;
+            if (cy == y && cx == x && vt100_mode_cursor) {
+                a = a & 0xfff0 | 0x000c;
+            }
+            if (a != prev_attr) {
+                if (prev_attr != -1) {
+                    sb.append("</span>");
+                }
+                int bg = a & 0x000f;
+                int fg = (a & 0x00f0) >> 4;
+                boolean inv = (a & 0x0200) != 0;
+                boolean inv2 = vt100_mode_inverse;
+                if (inv && !inv2 || inv2 && !inv) {
+                    int i = fg; fg = bg; bg = i;
                 }
-                sb.append("\n");
+                if ((a & 0x0400) != 0) {
+                    fg = 0x0c;
+                }
+                sb.append("<span class='f").append(fg).append(" b").append(bg);
+                if ((a & 0x0100) != 0) {
+                    sb.append(" ul");
+                }
+                if ((a & 0x0800) != 0) {
+                    sb.append(" b");
+                }
+                sb.append("'>");
+                prev_attr = a;
             }
-            sb.append("</span></pre></div>");
-            return sb.toString();
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '\n':
+                case '\r': sb.append(' '); break;
+                default:
+                    wx += utf8_charwidth(c);
+                    if (wx <= width) {
+                        sb.append((char) c);
+                    }
+                    break;
+            }
+        }
+        if (prev_attr != -1) {
+            sb.append("</span>");
         }
-        return null;
     }
 
     public String toString() {
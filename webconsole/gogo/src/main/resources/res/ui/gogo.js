@@ -32,13 +32,18 @@ gogo.Terminal_ctor = function(div, width, height) {
    var error_timeout;
    var keybuf = [];
    var sending = 0;
-   var rmax = 1;
-   var force = 1;
+   // set when the pending request is a long poll without keys
+   var polling = 0;
+   var request = null;
+   // version of the screen currently displayed
+   var version = 0;
+   var rows = [];
 
    var dstat = document.createElement('pre');
    var sled = document.createElement('span');
    var sdebug = document.createElement('span');
    var dterm = document.createElement('div');
+   var pterm = document.createElement('pre');
 
    function debug(s) {
        sdebug.innerHTML = s;
@@ -49,50 +54,86 @@ gogo.Terminal_ctor = function(div, width, height) {
        debug("Connection lost timeout ts:" + ((new Date).getTime()));
    }
 
-   function update() {
-       if (sending == 0) {
-           sending = 1;
-           sled.className = 'on';
-           var r = new XMLHttpRequest();
-           var send = "";
-           while (keybuf.length > 0) {
-               send += keybuf.pop();
+   // Apply the rows sent by the server: the first line contains the
+   // new version and the screen height, then one line per modified row
+   // with the row index and its html content
+   function render(text) {
+       var lines = text.split("\n");
+       var header = lines[0].split(" ");
+       var height = parseInt(header[1]);
+       if (rows.length != height) {
+           while (pterm.firstChild) {
+               pterm.removeChild(pterm.firstChild);
+           }
+           rows = [];
+           for (var y = 0; y < height; y++) {
+               var row = document.createElement('div');
+               pterm.appendChild(row);
+               rows.push(row);
            }
-           var query = query1 + send;
-           if (force) {
-               query = query + "&f=1";
-               force = 0;
+       }
+       for (var i = 1; i < lines.length; i++) {
+           var sep = lines[i].indexOf(" ");
+           if (sep > 0) {
+               var y = parseInt(lines[i].substring(0, sep));
+               if (y >= 0 && y < rows.length) {
+                   rows[y].innerHTML = lines[i].substring(sep + 1);
+               }
            }
-           r.open("POST", "gogo", true);
-           r.setRequestHeader('Content-Type', 'application/x-www-form-urlencoded');
-           r.onreadystatechange = function () {
-               if (r.readyState == 4) {
-                   if (r.status == 200) {
-                       window.clearTimeout(error_timeout);
-                       if (r.responseText.length > 0) {
-                           dterm.innerHTML = r.responseText;
-                           rmax = 100;
-                       } else {
-                           rmax *= 2;
-                           if (rmax > 2000)
-                               rmax = 2000;
-                       }
-                       sending=0;
-                       sled.className = 'off';
-                       timeout = window.setTimeout(update, rmax);
-                   } else {
-                       debug("Connection error status:" + r.status);
+       }
+       version = header[0];
+   }
+
+   function update() {
+       if (sending != 0) {
+           if (polling == 0 || keybuf.length == 0) {
+               return;
+           }
+           // the pending request is a long poll which does not carry any key:
+           // drop it so that the keys are sent right away
+           var p = request;
+           request = null;
+           p.onreadystatechange = function () {};
+           p.abort();
+           window.clearTimeout(error_timeout);
+       }
+       sending = 1;
+       sled.className = 'on';
+       var r = new XMLHttpRequest();
+       var send = "";
+       while (keybuf.length > 0) {
+           send += keybuf.pop();
+       }
+       polling = send.length == 0 ? 1 : 0;
+       request = r;
+       var query = query1 + send + "&s=" + version;
+       r.open("POST", "gogo", true);
+       r.setRequestHeader('Content-Type', 'application/x-www-form-urlencoded');
+       r.onreadystatechange = function () {
+           if (r.readyState == 4 && request == r) {
+               if (r.status == 200) {
+                   window.clearTimeout(error_timeout);
+                   if (r.responseText.length > 0) {
+                       render(r.responseText);
                    }
+                   request = null;
+                   sending = 0;
+                   sled.className = 'off';
+                   // the server holds polls until the screen changes, so poll again at once
+                   timeout = window.setTimeout(update, 1);
+               } else {
+                   debug("Connection error status:" + r.status);
                }
            }
-           error_timeout = window.setTimeout(error, 5000);
-           r.send(query);
        }
+       // polls are held by the server for up to 10 seconds
+       error_timeout = window.setTimeout(error, polling ? 15000 : 5000);
+       r.send(query);
    }
 
    function queue(s) {
        keybuf.unshift(s);
-       if (sending == 0) {
+       if (sending == 0 || polling) {
            window.clearTimeout(timeout);
            timeout = window.setTimeout(update, 1);
        }
@@ -229,6 +270,8 @@ gogo.Terminal_ctor = function(div, width, height) {
        dstat.className = 'stat';
        div.appendChild(dstat);
        var d = document.createElement('div');
+       pterm.className = 'term';
+       dterm.appendChild(pterm);
        d.appendChild(dterm);
        div.appendChild(d);
        document.onkeypress = keypress;